@@ -0,0 +1,629 @@
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <poll.h>
+#include <pthread.h>
+#include <signal.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <string.h>
+#include <time.h>
+#include <unistd.h>
+#include <termios.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/ioctl.h>
+#include <sys/syscall.h>
+#include <sys/uio.h>
+#include <linux/serial.h>
+#include <jni.h>
+
+#define NATIVE_METHOD(name) Java_tech_yaog_netty_serialportandroid_Native_##name
+
+#ifndef IOV_MAX
+#define IOV_MAX 1024
+#endif
+
+#ifndef TIOCSRS485
+#define TIOCSRS485 0x542F
+#endif
+
+#ifndef TIOCSERGETLSR
+#define TIOCSERGETLSR 0x5459
+#endif
+
+#ifndef TIOCSER_TEMT
+#define TIOCSER_TEMT 0x01
+#endif
+
+#ifndef SER_RS485_RX_DURING_TX
+#define SER_RS485_RX_DURING_TX (1 << 4)
+#endif
+
+static jmethodID positionMethod = NULL;
+static jmethodID limitMethod = NULL;
+
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {
+    JNIEnv* env;
+    jclass bufferClass;
+    if ((*vm)->GetEnv(vm, (void**) &env, JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+    bufferClass = (*env)->FindClass(env, "java/nio/Buffer");
+    if (bufferClass == NULL) {
+        return JNI_ERR;
+    }
+    positionMethod = (*env)->GetMethodID(env, bufferClass, "position", "()I");
+    limitMethod = (*env)->GetMethodID(env, bufferClass, "limit", "()I");
+    if (positionMethod == NULL || limitMethod == NULL) {
+        return JNI_ERR;
+    }
+    return JNI_VERSION_1_6;
+}
+
+static void throwIOException(JNIEnv* env, const char* what, int err) {
+    char message[256];
+    jclass cls = (*env)->FindClass(env, "java/io/IOException");
+    if (cls == NULL) {
+        return;
+    }
+    snprintf(message, sizeof(message), "%s failed: %s", what, strerror(err));
+    (*env)->ThrowNew(env, cls, message);
+}
+
+static void* bufferAddress(JNIEnv* env, jobject buffer, const char* what) {
+    void* address = (*env)->GetDirectBufferAddress(env, buffer);
+    if (address == NULL) {
+        jclass cls = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        if (cls != NULL) {
+            (*env)->ThrowNew(env, cls, what);
+        }
+    }
+    return address;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(getFd)(JNIEnv* env, jclass clazz, jobject fileDescriptor) {
+    jclass cls = (*env)->GetObjectClass(env, fileDescriptor);
+    // Android names the field "descriptor", OpenJDK "fd".
+    jfieldID field = (*env)->GetFieldID(env, cls, "descriptor", "I");
+    if (field == NULL) {
+        (*env)->ExceptionClear(env);
+        field = (*env)->GetFieldID(env, cls, "fd", "I");
+        if (field == NULL) {
+            return -1;
+        }
+    }
+    return (*env)->GetIntField(env, fileDescriptor, field);
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(setNonBlocking)(JNIEnv* env, jclass clazz, jint fd) {
+    int flags = fcntl(fd, F_GETFL);
+    if (flags == -1 || fcntl(fd, F_SETFL, flags | O_NONBLOCK) == -1) {
+        throwIOException(env, "fcntl", errno);
+    }
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(read)(JNIEnv* env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char* address = bufferAddress(env, buffer, "read requires a direct buffer");
+    ssize_t res;
+    if (address == NULL) {
+        return -1;
+    }
+    do {
+        res = read(fd, address + pos, (size_t) (limit - pos));
+    } while (res == -1 && errno == EINTR);
+    if (res >= 0) {
+        return (jint) res;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "read", errno);
+    return -1;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(write)(JNIEnv* env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char* address = bufferAddress(env, buffer, "write requires a direct buffer");
+    ssize_t res;
+    if (address == NULL) {
+        return -1;
+    }
+    do {
+        res = write(fd, address + pos, (size_t) (limit - pos));
+    } while (res == -1 && errno == EINTR);
+    if (res >= 0) {
+        return (jint) res;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "write", errno);
+    return -1;
+}
+
+JNIEXPORT jlong JNICALL NATIVE_METHOD(writev)(JNIEnv* env, jclass clazz, jint fd, jobjectArray buffers, jint offset, jint length) {
+    struct iovec iov[IOV_MAX];
+    ssize_t res;
+    int i;
+    if (length > IOV_MAX) {
+        length = IOV_MAX;
+    }
+    for (i = 0; i < length; i++) {
+        jobject buffer = (*env)->GetObjectArrayElement(env, buffers, offset + i);
+        char* address = bufferAddress(env, buffer, "writev requires direct buffers");
+        jint pos;
+        jint limit;
+        if (address == NULL) {
+            return -1;
+        }
+        pos = (*env)->CallIntMethod(env, buffer, positionMethod);
+        limit = (*env)->CallIntMethod(env, buffer, limitMethod);
+        iov[i].iov_base = address + pos;
+        iov[i].iov_len = (size_t) (limit - pos);
+        (*env)->DeleteLocalRef(env, buffer);
+    }
+    do {
+        res = writev(fd, iov, length);
+    } while (res == -1 && errno == EINTR);
+    if (res >= 0) {
+        return (jlong) res;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "writev", errno);
+    return -1;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(poll)(JNIEnv* env, jclass clazz, jint fd, jint events, jlong timeoutNanos) {
+    struct pollfd pfd;
+    struct timespec ts;
+    int res;
+    pfd.fd = fd;
+    pfd.events = (short) events;
+    pfd.revents = 0;
+    ts.tv_sec = (time_t) (timeoutNanos / 1000000000L);
+    ts.tv_nsec = (long) (timeoutNanos % 1000000000L);
+    // ppoll(2) through syscall(2), the libc wrapper is missing below API level 21.
+    res = (int) syscall(__NR_ppoll, &pfd, 1, timeoutNanos < 0 ? NULL : &ts, NULL, 0);
+    if (res == -1) {
+        if (errno == EINTR) {
+            return 0;
+        }
+        throwIOException(env, "ppoll", errno);
+        return -1;
+    }
+    return res == 0 ? 0 : pfd.revents;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(dup)(JNIEnv* env, jclass clazz, jint fd) {
+    int res = fcntl(fd, F_DUPFD_CLOEXEC, 0);
+    if (res == -1) {
+        throwIOException(env, "fcntl F_DUPFD_CLOEXEC", errno);
+    }
+    return res;
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(close)(JNIEnv* env, jclass clazz, jint fd) {
+    if (close(fd) == -1 && errno != EINTR) {
+        throwIOException(env, "close", errno);
+    }
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(eventFd)(JNIEnv* env, jclass clazz) {
+    int fd = eventfd(0, 0);
+    if (fd == -1) {
+        throwIOException(env, "eventfd", errno);
+        return -1;
+    }
+    fcntl(fd, F_SETFL, fcntl(fd, F_GETFL) | O_NONBLOCK);
+    fcntl(fd, F_SETFD, FD_CLOEXEC);
+    return fd;
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(eventFdWrite)(JNIEnv* env, jclass clazz, jint fd, jlong value) {
+    uint64_t val = (uint64_t) value;
+    if (write(fd, &val, sizeof(val)) == -1 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_write", errno);
+    }
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(eventFdRead)(JNIEnv* env, jclass clazz, jint fd) {
+    uint64_t val;
+    if (read(fd, &val, sizeof(val)) == -1 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_read", errno);
+    }
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(epollCreate)(JNIEnv* env, jclass clazz) {
+    int fd = epoll_create(64);
+    if (fd == -1) {
+        throwIOException(env, "epoll_create", errno);
+        return -1;
+    }
+    fcntl(fd, F_SETFD, FD_CLOEXEC);
+    return fd;
+}
+
+static void epollCtl(JNIEnv* env, jint efd, int op, jint fd, jint flags) {
+    struct epoll_event ev;
+    memset(&ev, 0, sizeof(ev));
+    ev.events = (uint32_t) flags;
+    ev.data.fd = fd;
+    if (epoll_ctl(efd, op, fd, &ev) == -1) {
+        throwIOException(env, "epoll_ctl", errno);
+    }
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(epollCtlAdd)(JNIEnv* env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, efd, EPOLL_CTL_ADD, fd, flags);
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(epollCtlMod)(JNIEnv* env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, efd, EPOLL_CTL_MOD, fd, flags);
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(epollCtlDel)(JNIEnv* env, jclass clazz, jint efd, jint fd) {
+    epollCtl(env, efd, EPOLL_CTL_DEL, fd, 0);
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(timerFd)(JNIEnv* env, jclass clazz) {
+    int fd = (int) syscall(__NR_timerfd_create, CLOCK_MONOTONIC, 0);
+    if (fd == -1) {
+        throwIOException(env, "timerfd_create", errno);
+        return -1;
+    }
+    fcntl(fd, F_SETFL, fcntl(fd, F_GETFL) | O_NONBLOCK);
+    fcntl(fd, F_SETFD, FD_CLOEXEC);
+    return fd;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(epollWait)(JNIEnv* env, jclass clazz, jint efd, jlongArray events, jint timerFd, jlong timeoutNanos) {
+    struct epoll_event ev[64];
+    struct itimerspec ts;
+    jlong packed[64];
+    jint max = (*env)->GetArrayLength(env, events);
+    int timeoutMillis = 0;
+    int res;
+    int i;
+    if (max > 64) {
+        max = 64;
+    }
+    if (timeoutNanos > 0) {
+        // Arm the timerfd instead of passing a millisecond timeout, so scheduled tasks run with
+        // sub-millisecond precision.
+        memset(&ts, 0, sizeof(ts));
+        ts.it_value.tv_sec = (time_t) (timeoutNanos / 1000000000L);
+        ts.it_value.tv_nsec = (long) (timeoutNanos % 1000000000L);
+        if (syscall(__NR_timerfd_settime, timerFd, 0, &ts, NULL) == -1) {
+            throwIOException(env, "timerfd_settime", errno);
+            return -1;
+        }
+        timeoutMillis = -1;
+    }
+    do {
+        res = epoll_wait(efd, ev, max, timeoutMillis);
+    } while (res == -1 && errno == EINTR && timeoutMillis == 0);
+    if (timeoutMillis == -1) {
+        // Disarm it again, woken up earlier it would fire during a later wait for nothing.
+        int err = errno;
+        memset(&ts, 0, sizeof(ts));
+        syscall(__NR_timerfd_settime, timerFd, 0, &ts, NULL);
+        errno = err;
+    }
+    if (res == -1) {
+        if (errno == EINTR) {
+            return 0;
+        }
+        throwIOException(env, "epoll_wait", errno);
+        return -1;
+    }
+    for (i = 0; i < res; i++) {
+        packed[i] = ((jlong) ev[i].data.fd << 32) | (jlong) ev[i].events;
+    }
+    (*env)->SetLongArrayRegion(env, events, 0, res, packed);
+    return res;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(openPtyMaster)(JNIEnv* env, jclass clazz) {
+    struct termios tio;
+    int unlock = 0;
+    // Through /dev/ptmx and ioctl(2), posix_openpt(3) and friends are missing below API level 21.
+    int fd = open("/dev/ptmx", O_RDWR | O_NOCTTY | O_NONBLOCK | O_CLOEXEC);
+    if (fd == -1) {
+        throwIOException(env, "open /dev/ptmx", errno);
+        return -1;
+    }
+    if (ioctl(fd, TIOCSPTLCK, &unlock) == -1 || tcgetattr(fd, &tio) == -1) {
+        throwIOException(env, "pty setup", errno);
+        close(fd);
+        return -1;
+    }
+    // Raw 8N1 without echo, and reads return at once like on the serial devices.
+    tio.c_iflag &= ~(IGNBRK | BRKINT | PARMRK | ISTRIP | INLCR | IGNCR | ICRNL | IXON);
+    tio.c_oflag &= ~OPOST;
+    tio.c_lflag &= ~(ECHO | ECHONL | ICANON | ISIG | IEXTEN);
+    tio.c_cflag &= ~(CSIZE | PARENB);
+    tio.c_cflag |= CS8;
+    tio.c_cc[VMIN] = 0;
+    tio.c_cc[VTIME] = 0;
+    if (tcsetattr(fd, TCSANOW, &tio) == -1) {
+        throwIOException(env, "tcsetattr", errno);
+        close(fd);
+        return -1;
+    }
+    return fd;
+}
+
+JNIEXPORT jstring JNICALL NATIVE_METHOD(ptsName)(JNIEnv* env, jclass clazz, jint fd) {
+    char name[32];
+    unsigned int n;
+    if (ioctl(fd, TIOCGPTN, &n) == -1) {
+        throwIOException(env, "ioctl TIOCGPTN", errno);
+        return NULL;
+    }
+    snprintf(name, sizeof(name), "/dev/pts/%u", n);
+    return (*env)->NewStringUTF(env, name);
+}
+
+static const struct {
+    jint rate;
+    speed_t speed;
+} speeds[] = {
+    {50, B50}, {75, B75}, {110, B110}, {134, B134}, {150, B150}, {200, B200}, {300, B300},
+    {600, B600}, {1200, B1200}, {1800, B1800}, {2400, B2400}, {4800, B4800}, {9600, B9600},
+    {19200, B19200}, {38400, B38400}, {57600, B57600}, {115200, B115200}, {230400, B230400},
+    {460800, B460800}, {500000, B500000}, {576000, B576000}, {921600, B921600},
+    {1000000, B1000000}, {1152000, B1152000}, {1500000, B1500000}, {2000000, B2000000},
+    {2500000, B2500000}, {3000000, B3000000}, {3500000, B3500000}, {4000000, B4000000}
+};
+
+JNIEXPORT void JNICALL NATIVE_METHOD(setLineSettings)(JNIEnv* env, jclass clazz, jint fd, jint baudrate, jint dataBits, jint parity, jint stopBits) {
+    static const tcflag_t sizes[] = {CS5, CS6, CS7, CS8};
+    static const tcflag_t parities[] = {0, PARENB | PARODD, PARENB, PARENB | CMSPAR};
+    struct termios tio;
+    speed_t speed = B0;
+    size_t i;
+    for (i = 0; i < sizeof(speeds) / sizeof(speeds[0]); i++) {
+        if (speeds[i].rate == baudrate) {
+            speed = speeds[i].speed;
+            break;
+        }
+    }
+    if (speed == B0 || dataBits < 5 || dataBits > 8 || parity < 0 || parity > 3) {
+        throwIOException(env, "line settings", EINVAL);
+        return;
+    }
+    if (tcgetattr(fd, &tio) == -1) {
+        throwIOException(env, "tcgetattr", errno);
+        return;
+    }
+    cfsetispeed(&tio, speed);
+    cfsetospeed(&tio, speed);
+    tio.c_cflag &= ~(CSIZE | CSTOPB | PARENB | PARODD | CMSPAR);
+    tio.c_cflag |= sizes[dataBits - 5] | parities[parity] | (stopBits == 2 ? CSTOPB : 0);
+    // TCSADRAIN: what was written before still goes out with the old settings.
+    if (tcsetattr(fd, TCSADRAIN, &tio) == -1) {
+        throwIOException(env, "tcsetattr", errno);
+    }
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(setFlowControl)(JNIEnv* env, jclass clazz, jint fd, jboolean rtsCts, jboolean xoff) {
+    struct termios tio;
+    if (tcgetattr(fd, &tio) == -1) {
+        throwIOException(env, "tcgetattr", errno);
+        return;
+    }
+    // IXON stays off, received XON/XOFF are handled by the channel.
+    tio.c_iflag &= ~(IXON | IXOFF | IXANY);
+    tio.c_cflag &= ~CRTSCTS;
+    if (rtsCts) {
+        tio.c_cflag |= CRTSCTS;
+    }
+    if (xoff) {
+        tio.c_iflag |= IXOFF;
+        tio.c_cc[VSTART] = 0x11;
+        tio.c_cc[VSTOP] = 0x13;
+    }
+    if (tcsetattr(fd, TCSANOW, &tio) == -1) {
+        throwIOException(env, "tcsetattr", errno);
+    }
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(inputQueue)(JNIEnv* env, jclass clazz, jint fd) {
+    int queued;
+    if (ioctl(fd, FIONREAD, &queued) == -1) {
+        throwIOException(env, "ioctl FIONREAD", errno);
+        return -1;
+    }
+    return queued;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(outputQueue)(JNIEnv* env, jclass clazz, jint fd) {
+    int queued;
+    if (ioctl(fd, TIOCOUTQ, &queued) == -1) {
+        throwIOException(env, "ioctl TIOCOUTQ", errno);
+        return -1;
+    }
+    return queued;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(transmitterEmpty)(JNIEnv* env, jclass clazz, jint fd) {
+    unsigned int lsr;
+    if (ioctl(fd, TIOCSERGETLSR, &lsr) == 0) {
+        return (lsr & TIOCSER_TEMT) ? 1 : 0;
+    }
+    // Only UART drivers report their line status, USB adapters and pseudo terminals do not.
+    if (errno == ENOTTY || errno == EINVAL) {
+        return -1;
+    }
+    throwIOException(env, "ioctl TIOCSERGETLSR", errno);
+    return -1;
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(drain)(JNIEnv* env, jclass clazz, jint fd) {
+    int res;
+    do {
+        res = tcdrain(fd);
+    } while (res == -1 && errno == EINTR);
+    if (res == -1) {
+        throwIOException(env, "tcdrain", errno);
+    }
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(flushInput)(JNIEnv* env, jclass clazz, jint fd) {
+    if (tcflush(fd, TCIFLUSH) == -1) {
+        throwIOException(env, "tcflush", errno);
+    }
+}
+
+JNIEXPORT jboolean JNICALL NATIVE_METHOD(setRs485)(JNIEnv* env, jclass clazz, jint fd, jboolean rxDuringTx, jint delayBeforeSendMillis, jint delayAfterSendMillis) {
+    struct serial_rs485 rs485;
+    memset(&rs485, 0, sizeof(rs485));
+    rs485.flags = SER_RS485_ENABLED | SER_RS485_RTS_ON_SEND | (rxDuringTx ? SER_RS485_RX_DURING_TX : 0);
+    rs485.delay_rts_before_send = (__u32) delayBeforeSendMillis;
+    rs485.delay_rts_after_send = (__u32) delayAfterSendMillis;
+    if (ioctl(fd, TIOCSRS485, &rs485) == 0) {
+        return JNI_TRUE;
+    }
+    // Drivers without RS-485 support reject the ioctl one way or another.
+    if (errno == ENOTTY || errno == EINVAL) {
+        return JNI_FALSE;
+    }
+    throwIOException(env, "ioctl TIOCSRS485", errno);
+    return JNI_FALSE;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(getBaudrate)(JNIEnv* env, jclass clazz, jint fd) {
+    struct termios tio;
+    speed_t speed;
+    size_t i;
+    if (tcgetattr(fd, &tio) == -1) {
+        throwIOException(env, "tcgetattr", errno);
+        return -1;
+    }
+    speed = cfgetospeed(&tio);
+    for (i = 0; i < sizeof(speeds) / sizeof(speeds[0]); i++) {
+        if (speeds[i].speed == speed) {
+            return speeds[i].rate;
+        }
+    }
+    return 0;
+}
+
+// The modem lines as passed to and from Java, the bit of each is 1 << ordinal of SerialPortModemLine.
+static const int modemLines[] = {TIOCM_DTR, TIOCM_RTS, TIOCM_CTS, TIOCM_DSR, TIOCM_CD, TIOCM_RNG};
+
+static int toModemBits(jint lines) {
+    int bits = 0;
+    size_t i;
+    for (i = 0; i < sizeof(modemLines) / sizeof(modemLines[0]); i++) {
+        if (lines & (1 << i)) {
+            bits |= modemLines[i];
+        }
+    }
+    return bits;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(getModemLines)(JNIEnv* env, jclass clazz, jint fd) {
+    int bits;
+    jint lines = 0;
+    size_t i;
+    if (ioctl(fd, TIOCMGET, &bits) == -1) {
+        throwIOException(env, "ioctl TIOCMGET", errno);
+        return 0;
+    }
+    for (i = 0; i < sizeof(modemLines) / sizeof(modemLines[0]); i++) {
+        if (bits & modemLines[i]) {
+            lines |= 1 << i;
+        }
+    }
+    return lines;
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(setModemLines)(JNIEnv* env, jclass clazz, jint fd, jint set, jint clear) {
+    int bits = toModemBits(set);
+    if (bits != 0 && ioctl(fd, TIOCMBIS, &bits) == -1) {
+        throwIOException(env, "ioctl TIOCMBIS", errno);
+        return;
+    }
+    bits = toModemBits(clear);
+    if (bits != 0 && ioctl(fd, TIOCMBIC, &bits) == -1) {
+        throwIOException(env, "ioctl TIOCMBIC", errno);
+    }
+}
+
+static struct sigaction previousWakeupAction;
+
+static void wakeupSignal(int signal, siginfo_t* info, void* context) {
+    // The signal is shared with the rest of the process, whoever handled it before still does.
+    if (previousWakeupAction.sa_flags & SA_SIGINFO) {
+        previousWakeupAction.sa_sigaction(signal, info, context);
+    } else if (previousWakeupAction.sa_handler != SIG_DFL && previousWakeupAction.sa_handler != SIG_IGN) {
+        previousWakeupAction.sa_handler(signal);
+    }
+}
+
+static void installWakeupHandler(void) {
+    struct sigaction action;
+    memset(&action, 0, sizeof(action));
+    action.sa_sigaction = wakeupSignal;
+    // No SA_RESTART, the signal has to make a blocked ioctl(2) fail with EINTR.
+    action.sa_flags = SA_SIGINFO;
+    sigemptyset(&action.sa_mask);
+    sigaction(SIGURG, &action, &previousWakeupAction);
+}
+
+static pthread_once_t wakeupHandlerOnce = PTHREAD_ONCE_INIT;
+
+JNIEXPORT jboolean JNICALL NATIVE_METHOD(waitModemLines)(JNIEnv* env, jclass clazz, jint fd, jint lines) {
+    pthread_once(&wakeupHandlerOnce, installWakeupHandler);
+    if (ioctl(fd, TIOCMIWAIT, (unsigned long) toModemBits(lines)) == 0) {
+        return JNI_TRUE;
+    }
+    if (errno != EINTR) {
+        throwIOException(env, "ioctl TIOCMIWAIT", errno);
+    }
+    return JNI_FALSE;
+}
+
+JNIEXPORT jlong JNICALL NATIVE_METHOD(currentThread)(JNIEnv* env, jclass clazz) {
+    pthread_once(&wakeupHandlerOnce, installWakeupHandler);
+    return (jlong) pthread_self();
+}
+
+JNIEXPORT void JNICALL NATIVE_METHOD(wakeUp)(JNIEnv* env, jclass clazz, jlong thread) {
+    pthread_kill((pthread_t) thread, SIGURG);
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(epollin)(JNIEnv* env, jclass clazz) {
+    return EPOLLIN;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(epollout)(JNIEnv* env, jclass clazz) {
+    return EPOLLOUT;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(epollhup)(JNIEnv* env, jclass clazz) {
+    return EPOLLHUP;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(epollerr)(JNIEnv* env, jclass clazz) {
+    return EPOLLERR;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(pollin)(JNIEnv* env, jclass clazz) {
+    return POLLIN;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(pollhup)(JNIEnv* env, jclass clazz) {
+    return POLLHUP;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(pollerr)(JNIEnv* env, jclass clazz) {
+    return POLLERR;
+}
+
+JNIEXPORT jint JNICALL NATIVE_METHOD(pollout)(JNIEnv* env, jclass clazz) {
+    return POLLOUT;
+}
@@ -16,6 +16,7 @@
 package tech.yaog.netty.serialportandroid;
 
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultChannelConfig;
 import io.netty.channel.MessageSizeEstimator;
@@ -25,13 +26,27 @@ import io.netty.channel.WriteBufferWaterMark;
 
 import java.util.Map;
 
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.AUTO_RECONNECT;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.BAUD_RATE;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.DATA_BITS;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.DIRECT_BUFFER;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.DTR;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.FLOW_CONTROL;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.IDLE_GAP_MICROS;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.MAX_BYTES_PER_GATHERING_WRITE;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.MODEM_LINE_EVENTS;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.PARITY_BIT;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.READ_TIMEOUT;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RECONNECT_MAX_DELAY;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RECONNECT_MIN_DELAY;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RS485;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RS485_DELAY_AFTER_SEND;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RS485_DELAY_BEFORE_SEND;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RS485_ECHO;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RTS;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.STOP_BITS;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.TRANSMIT_COMPLETE;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.TRANSMIT_QUEUE_MICROS;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.WAIT_TIME;
 
 /**
@@ -50,15 +65,33 @@ final class DefaultSerialPortChannelConfig extends DefaultChannelConfig implemen
     private volatile Paritybit paritybit = Paritybit.NONE;
     private volatile int waitTime;
     private volatile int readTimeout = 1000;
-
-    DefaultSerialPortChannelConfig(SerialPortChannel channel) {
+    private volatile boolean directBuffer;
+    private volatile int maxBytesPerGatheringWrite = 4096;
+    private volatile int idleGapMicros;
+    private volatile boolean autoReconnect;
+    private volatile int reconnectMinDelayMillis = 10;
+    private volatile int reconnectMaxDelayMillis = 1000;
+    private volatile boolean modemLineEvents;
+    private volatile FlowControl flowControl = FlowControl.NONE;
+    private volatile boolean transmitComplete;
+    private volatile int transmitQueueMicros;
+    private volatile boolean rs485;
+    private volatile int rs485DelayBeforeSendBits;
+    private volatile int rs485DelayAfterSendBits;
+    private volatile boolean rs485Echo;
+
+    DefaultSerialPortChannelConfig(Channel channel) {
         super(channel);
         setAllocator(new PreferHeapByteBufAllocator(getAllocator()));
     }
 
     @Override
     public Map<ChannelOption<?>, Object> getOptions() {
-        return getOptions(super.getOptions(), BAUD_RATE, DTR, RTS, STOP_BITS, DATA_BITS, PARITY_BIT, WAIT_TIME);
+        return getOptions(super.getOptions(), BAUD_RATE, DTR, RTS, STOP_BITS, DATA_BITS, PARITY_BIT, WAIT_TIME,
+                READ_TIMEOUT, DIRECT_BUFFER, MAX_BYTES_PER_GATHERING_WRITE, IDLE_GAP_MICROS, AUTO_RECONNECT,
+                RECONNECT_MIN_DELAY, RECONNECT_MAX_DELAY, MODEM_LINE_EVENTS, FLOW_CONTROL,
+                TRANSMIT_COMPLETE, TRANSMIT_QUEUE_MICROS, RS485, RS485_DELAY_BEFORE_SEND, RS485_DELAY_AFTER_SEND,
+                RS485_ECHO);
     }
 
     @SuppressWarnings("unchecked")
@@ -88,6 +121,48 @@ final class DefaultSerialPortChannelConfig extends DefaultChannelConfig implemen
         if (option == READ_TIMEOUT) {
             return (T) Integer.valueOf(getReadTimeout());
         }
+        if (option == DIRECT_BUFFER) {
+            return (T) Boolean.valueOf(isDirectBuffer());
+        }
+        if (option == MAX_BYTES_PER_GATHERING_WRITE) {
+            return (T) Integer.valueOf(getMaxBytesPerGatheringWrite());
+        }
+        if (option == IDLE_GAP_MICROS) {
+            return (T) Integer.valueOf(getIdleGapMicros());
+        }
+        if (option == AUTO_RECONNECT) {
+            return (T) Boolean.valueOf(isAutoReconnect());
+        }
+        if (option == RECONNECT_MIN_DELAY) {
+            return (T) Integer.valueOf(getReconnectMinDelayMillis());
+        }
+        if (option == RECONNECT_MAX_DELAY) {
+            return (T) Integer.valueOf(getReconnectMaxDelayMillis());
+        }
+        if (option == MODEM_LINE_EVENTS) {
+            return (T) Boolean.valueOf(isModemLineEvents());
+        }
+        if (option == FLOW_CONTROL) {
+            return (T) getFlowControl();
+        }
+        if (option == TRANSMIT_COMPLETE) {
+            return (T) Boolean.valueOf(isTransmitComplete());
+        }
+        if (option == TRANSMIT_QUEUE_MICROS) {
+            return (T) Integer.valueOf(getTransmitQueueMicros());
+        }
+        if (option == RS485) {
+            return (T) Boolean.valueOf(isRs485());
+        }
+        if (option == RS485_DELAY_BEFORE_SEND) {
+            return (T) Integer.valueOf(getRs485DelayBeforeSendBits());
+        }
+        if (option == RS485_DELAY_AFTER_SEND) {
+            return (T) Integer.valueOf(getRs485DelayAfterSendBits());
+        }
+        if (option == RS485_ECHO) {
+            return (T) Boolean.valueOf(isRs485Echo());
+        }
         return super.getOption(option);
     }
 
@@ -111,6 +186,34 @@ final class DefaultSerialPortChannelConfig extends DefaultChannelConfig implemen
             setWaitTimeMillis((Integer) value);
         } else if (option == READ_TIMEOUT) {
             setReadTimeout((Integer) value);
+        } else if (option == DIRECT_BUFFER) {
+            setDirectBuffer((Boolean) value);
+        } else if (option == MAX_BYTES_PER_GATHERING_WRITE) {
+            setMaxBytesPerGatheringWrite((Integer) value);
+        } else if (option == IDLE_GAP_MICROS) {
+            setIdleGapMicros((Integer) value);
+        } else if (option == AUTO_RECONNECT) {
+            setAutoReconnect((Boolean) value);
+        } else if (option == RECONNECT_MIN_DELAY) {
+            setReconnectMinDelayMillis((Integer) value);
+        } else if (option == RECONNECT_MAX_DELAY) {
+            setReconnectMaxDelayMillis((Integer) value);
+        } else if (option == MODEM_LINE_EVENTS) {
+            setModemLineEvents((Boolean) value);
+        } else if (option == FLOW_CONTROL) {
+            setFlowControl((FlowControl) value);
+        } else if (option == TRANSMIT_COMPLETE) {
+            setTransmitComplete((Boolean) value);
+        } else if (option == TRANSMIT_QUEUE_MICROS) {
+            setTransmitQueueMicros((Integer) value);
+        } else if (option == RS485) {
+            setRs485((Boolean) value);
+        } else if (option == RS485_DELAY_BEFORE_SEND) {
+            setRs485DelayBeforeSendBits((Integer) value);
+        } else if (option == RS485_DELAY_AFTER_SEND) {
+            setRs485DelayAfterSendBits((Integer) value);
+        } else if (option == RS485_ECHO) {
+            setRs485Echo((Boolean) value);
         } else {
             return super.setOption(option, value);
         }
@@ -120,25 +223,51 @@ final class DefaultSerialPortChannelConfig extends DefaultChannelConfig implemen
     @Override
     public SerialPortChannelConfig setBaudrate(final int baudrate) {
         this.baudrate = baudrate;
+        lineSettingsChanged();
         return this;
     }
 
     @Override
     public SerialPortChannelConfig setStopbits(final Stopbits stopbits) {
         this.stopbits = stopbits;
+        lineSettingsChanged();
         return this;
     }
 
     @Override
     public SerialPortChannelConfig setDatabits(final Databits databits) {
         this.databits = databits;
+        lineSettingsChanged();
         return this;
     }
 
     @Override
     public SerialPortChannelConfig setParitybit(final Paritybit paritybit) {
         this.paritybit = paritybit;
-        return  this;
+        lineSettingsChanged();
+        return this;
+    }
+
+    /**
+     * Hands the new line settings to an active channel, which applies them in order with its writes.
+     */
+    private void lineSettingsChanged() {
+        if (channel instanceof SerialPortChannel) {
+            ((SerialPortChannel) channel).lineSettingsChanged(new LineSettings(this));
+        } else if (channel instanceof EpollSerialPortChannel) {
+            ((EpollSerialPortChannel) channel).lineSettingsChanged(new LineSettings(this));
+        }
+    }
+
+    /**
+     * Hands a changed output line to an active channel, which raises or drops it at once.
+     */
+    private void modemLineChanged(SerialPortModemLine line, boolean raised) {
+        if (channel instanceof SerialPortChannel) {
+            ((SerialPortChannel) channel).modemLineChanged(line, raised);
+        } else if (channel instanceof EpollSerialPortChannel) {
+            ((EpollSerialPortChannel) channel).modemLineChanged(line, raised);
+        }
     }
 
     @Override
@@ -169,6 +298,7 @@ final class DefaultSerialPortChannelConfig extends DefaultChannelConfig implemen
     @Override
     public SerialPortChannelConfig setDtr(final boolean dtr) {
         this.dtr = dtr;
+        modemLineChanged(SerialPortModemLine.DTR, dtr);
         return this;
     }
 
@@ -180,6 +310,7 @@ final class DefaultSerialPortChannelConfig extends DefaultChannelConfig implemen
     @Override
     public SerialPortChannelConfig setRts(final boolean rts) {
         this.rts = rts;
+        modemLineChanged(SerialPortModemLine.RTS, rts);
         return this;
     }
 
@@ -211,6 +342,184 @@ final class DefaultSerialPortChannelConfig extends DefaultChannelConfig implemen
         return readTimeout;
     }
 
+    @Override
+    public SerialPortChannelConfig setDirectBuffer(boolean directBuffer) {
+        this.directBuffer = directBuffer;
+        return this;
+    }
+
+    @Override
+    public boolean isDirectBuffer() {
+        return directBuffer;
+    }
+
+    @Override
+    public SerialPortChannelConfig setMaxBytesPerGatheringWrite(int maxBytesPerGatheringWrite) {
+        if (maxBytesPerGatheringWrite < 0) {
+            throw new IllegalArgumentException("maxBytesPerGatheringWrite must be >= 0");
+        }
+        this.maxBytesPerGatheringWrite = maxBytesPerGatheringWrite;
+        return this;
+    }
+
+    @Override
+    public int getMaxBytesPerGatheringWrite() {
+        return maxBytesPerGatheringWrite;
+    }
+
+    @Override
+    public SerialPortChannelConfig setIdleGapMicros(int idleGapMicros) {
+        if (idleGapMicros < 0) {
+            throw new IllegalArgumentException("idleGapMicros must be >= 0");
+        }
+        this.idleGapMicros = idleGapMicros;
+        return this;
+    }
+
+    @Override
+    public int getIdleGapMicros() {
+        return idleGapMicros;
+    }
+
+    @Override
+    public SerialPortChannelConfig setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+        return this;
+    }
+
+    @Override
+    public boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    @Override
+    public SerialPortChannelConfig setReconnectMinDelayMillis(int reconnectMinDelayMillis) {
+        if (reconnectMinDelayMillis <= 0) {
+            throw new IllegalArgumentException("reconnectMinDelayMillis must be > 0");
+        }
+        this.reconnectMinDelayMillis = reconnectMinDelayMillis;
+        return this;
+    }
+
+    @Override
+    public int getReconnectMinDelayMillis() {
+        return reconnectMinDelayMillis;
+    }
+
+    @Override
+    public SerialPortChannelConfig setReconnectMaxDelayMillis(int reconnectMaxDelayMillis) {
+        if (reconnectMaxDelayMillis <= 0) {
+            throw new IllegalArgumentException("reconnectMaxDelayMillis must be > 0");
+        }
+        this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+        return this;
+    }
+
+    @Override
+    public int getReconnectMaxDelayMillis() {
+        return reconnectMaxDelayMillis;
+    }
+
+    @Override
+    public SerialPortChannelConfig setModemLineEvents(boolean modemLineEvents) {
+        this.modemLineEvents = modemLineEvents;
+        return this;
+    }
+
+    @Override
+    public boolean isModemLineEvents() {
+        return modemLineEvents;
+    }
+
+    @Override
+    public SerialPortChannelConfig setFlowControl(FlowControl flowControl) {
+        if (flowControl == null) {
+            throw new NullPointerException("flowControl");
+        }
+        this.flowControl = flowControl;
+        return this;
+    }
+
+    @Override
+    public FlowControl getFlowControl() {
+        return flowControl;
+    }
+
+    @Override
+    public SerialPortChannelConfig setTransmitComplete(boolean transmitComplete) {
+        this.transmitComplete = transmitComplete;
+        return this;
+    }
+
+    @Override
+    public boolean isTransmitComplete() {
+        return transmitComplete;
+    }
+
+    @Override
+    public SerialPortChannelConfig setTransmitQueueMicros(int transmitQueueMicros) {
+        if (transmitQueueMicros < 0) {
+            throw new IllegalArgumentException("transmitQueueMicros must be >= 0");
+        }
+        this.transmitQueueMicros = transmitQueueMicros;
+        return this;
+    }
+
+    @Override
+    public int getTransmitQueueMicros() {
+        return transmitQueueMicros;
+    }
+
+    @Override
+    public SerialPortChannelConfig setRs485(boolean rs485) {
+        this.rs485 = rs485;
+        return this;
+    }
+
+    @Override
+    public boolean isRs485() {
+        return rs485;
+    }
+
+    @Override
+    public SerialPortChannelConfig setRs485DelayBeforeSendBits(int rs485DelayBeforeSendBits) {
+        if (rs485DelayBeforeSendBits < 0) {
+            throw new IllegalArgumentException("rs485DelayBeforeSendBits must be >= 0");
+        }
+        this.rs485DelayBeforeSendBits = rs485DelayBeforeSendBits;
+        return this;
+    }
+
+    @Override
+    public int getRs485DelayBeforeSendBits() {
+        return rs485DelayBeforeSendBits;
+    }
+
+    @Override
+    public SerialPortChannelConfig setRs485DelayAfterSendBits(int rs485DelayAfterSendBits) {
+        if (rs485DelayAfterSendBits < 0) {
+            throw new IllegalArgumentException("rs485DelayAfterSendBits must be >= 0");
+        }
+        this.rs485DelayAfterSendBits = rs485DelayAfterSendBits;
+        return this;
+    }
+
+    @Override
+    public int getRs485DelayAfterSendBits() {
+        return rs485DelayAfterSendBits;
+    }
+
+    @Override
+    public SerialPortChannelConfig setRs485Echo(boolean rs485Echo) {
+        this.rs485Echo = rs485Echo;
+        return this;
+    }
+
+    @Override
+    public boolean isRs485Echo() {
+        return rs485Echo;
+    }
+
     @Override
     public SerialPortChannelConfig setConnectTimeoutMillis(int connectTimeoutMillis) {
         super.setConnectTimeoutMillis(connectTimeoutMillis);
@@ -0,0 +1,843 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.EventLoop;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import tech.yaog.hardwares.serialport.SerialPort;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeUnit;
+
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.WAIT_TIME;
+
+/**
+ * A non-blocking channel to a serial device. The tty descriptor is registered with the epoll of an
+ * {@link EpollSerialPortEventLoopGroup} and read and written only when the kernel reports it ready,
+ * so one event loop thread can serve many ports. Accepts the same options as {@link SerialPortChannel}.
+ */
+public class EpollSerialPortChannel extends AbstractChannel {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(EpollSerialPortChannel.class);
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+    private static final SerialPortDeviceAddress LOCAL_ADDRESS = new SerialPortDeviceAddress("localhost");
+    private static final int MAX_GATHERED_BUFFERS = 1024;
+    private static final int FLOW_CONTROL_WRITABILITY = 1;
+    private static final String EXPECTED_TYPES = " (expected: " + StringUtil.simpleClassName(ByteBuf.class) + ')';
+
+    private final SerialPortChannelConfig config;
+    private final SerialPortChannelMetrics metrics;
+    private final ReconnectBackoff backoff;
+    private final TransmitPacer pacer;
+    private final HalfDuplex halfDuplex;
+    private final QueuedLineSettings lineSettings = new QueuedLineSettings();
+
+    private volatile boolean open = true;
+    private volatile boolean active;
+    private volatile SerialPortDeviceAddress deviceAddress;
+    private volatile SerialPort serialPort;
+    private ModemLineWatcher modemLineWatcher;
+    private boolean hardwareFlowControl;
+    private boolean softwareFlowControl;
+    private boolean transmitStopped;
+    private final ModemLineWatcher.Listener modemLineListener = new ModemLineWatcher.Listener() {
+        @Override
+        public void modemLinesChanged(SerialPortModemLinesEvent event) {
+            if (hardwareFlowControl && event.hasChanged(SerialPortModemLine.CTS)) {
+                flowControlled(!event.isSet(SerialPortModemLine.CTS));
+            }
+            if (config().isModemLineEvents()) {
+                pipeline().fireUserEventTriggered(event);
+            }
+        }
+    };
+    private boolean readPending;
+    private boolean idleGapPending;
+    private boolean idleCheckScheduled;
+    private long lastReadNanos;
+    private final Runnable idleCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            idleCheckScheduled = false;
+            checkIdleGap();
+        }
+    };
+    private boolean deviceLost;
+    private int lineSettingsApplied;
+    // Written but not confirmed as transmitted yet, still in the outbound buffer.
+    private long unconfirmedBytes;
+    private boolean transmitCheckScheduled;
+    private final Runnable transmitCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            transmitCheckScheduled = false;
+            checkTransmitted();
+        }
+    };
+    private final Runnable reconnectTask = new Runnable() {
+        @Override
+        public void run() {
+            reconnect();
+        }
+    };
+
+    int fd = -1;
+    int flags;
+
+    public EpollSerialPortChannel() {
+        super(null);
+
+        config = new DefaultSerialPortChannelConfig(this);
+        metrics = new SerialPortChannelMetrics(this);
+        backoff = new ReconnectBackoff(config);
+        pacer = new TransmitPacer(config);
+        halfDuplex = new HalfDuplex(config);
+    }
+
+    @Override
+    public SerialPortChannelConfig config() {
+        return config;
+    }
+
+    /**
+     * @return the transport counters of this channel
+     */
+    public SerialPortChannelMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof EpollSerialPortEventLoop;
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new EpollSerialPortUnsafe();
+    }
+
+    protected void doConnect(SocketAddress remoteAddress, SocketAddress localAddress) throws Exception {
+        deviceAddress = (SerialPortDeviceAddress) remoteAddress;
+    }
+
+    /**
+     * Sets up the channel for the freshly opened {@code serialPort} and adds it to the epoll. The port
+     * is closed again if that fails.
+     */
+    private void portOpened(SerialPort serialPort) throws IOException {
+        this.serialPort = serialPort;
+        boolean success = false;
+        try {
+            InputStream in = serialPort.getInputStream();
+            if (!(in instanceof FileInputStream)) {
+                throw new IOException("unsupported serial port stream: " + StringUtil.simpleClassName(in));
+            }
+            fd = Native.getFd(((FileInputStream) in).getFD());
+            Native.setNonBlocking(fd);
+            ((EpollSerialPortEventLoop) eventLoop()).add(this);
+            SerialPortChannelConfig.FlowControl flowControl = config().getFlowControl();
+            if (flowControl != SerialPortChannelConfig.FlowControl.NONE) {
+                Native.setFlowControl(fd, flowControl == SerialPortChannelConfig.FlowControl.RTS_CTS,
+                        flowControl == SerialPortChannelConfig.FlowControl.XON_XOFF);
+            }
+            hardwareFlowControl = flowControl == SerialPortChannelConfig.FlowControl.RTS_CTS;
+            softwareFlowControl = flowControl == SerialPortChannelConfig.FlowControl.XON_XOFF;
+            setTransmitStopped(hardwareFlowControl && !isCtsRaised(fd));
+            halfDuplex.open(fd);
+            if (config().isModemLineEvents() || hardwareFlowControl) {
+                modemLineWatcher = new ModemLineWatcher(this, fd, modemLineListener);
+                modemLineWatcher.start();
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                try {
+                    ((EpollSerialPortEventLoop) eventLoop()).remove(this);
+                } catch (IOException e) {
+                    logger.debug("Failed to remove serial device {} from epoll", deviceAddress, e);
+                }
+                closePort();
+            }
+        }
+    }
+
+    private static boolean isCtsRaised(int fd) {
+        try {
+            return SerialPortModemLine.CTS.isSet(Native.getModemLines(fd));
+        } catch (IOException e) {
+            // No modem lines, nothing holds us back.
+            return true;
+        }
+    }
+
+    /**
+     * Holds back or resumes the writes when the device signals so.
+     */
+    private void flowControlled(boolean stopped) {
+        if (stopped != transmitStopped) {
+            setTransmitStopped(stopped);
+            if (!stopped) {
+                ((EpollSerialPortUnsafe) unsafe()).flush0();
+            }
+        }
+    }
+
+    private void setTransmitStopped(boolean stopped) {
+        transmitStopped = stopped;
+        ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+        if (buffer != null) {
+            buffer.setUserDefinedWritability(FLOW_CONTROL_WRITABILITY, !stopped);
+        }
+    }
+
+    private void closePort() {
+        fd = -1;
+        if (modemLineWatcher != null) {
+            modemLineWatcher.stop();
+            modemLineWatcher = null;
+        }
+        if (serialPort != null) {
+            serialPort.close();
+            serialPort = null;
+        }
+    }
+
+    /**
+     * Closes the port after the device went away and schedules the first attempt to reopen it. The
+     * channel stays active, writes are queued in the meantime.
+     */
+    void deviceLost(Throwable cause) {
+        logger.debug("Lost serial device {}", deviceAddress, cause);
+        deviceLost = true;
+        idleGapPending = false;
+        // Written before the device went away, as good as it gets.
+        confirmTransmitted();
+        try {
+            ((EpollSerialPortEventLoop) eventLoop()).remove(this);
+        } catch (IOException e) {
+            logger.debug("Failed to remove serial device {} from epoll", deviceAddress, e);
+        }
+        closePort();
+        // Nothing can be written until the device is back, a new descriptor starts out writable.
+        flags &= ~Native.EPOLLOUT;
+        eventLoop().schedule(reconnectTask, backoff.nextDelayMillis(), TimeUnit.MILLISECONDS);
+        pipeline().fireUserEventTriggered(SerialPortDeviceEvent.LOST);
+    }
+
+    private void reconnect() {
+        if (!deviceLost || !isOpen()) {
+            return;
+        }
+        if (!ReconnectBackoff.exists(deviceAddress)) {
+            eventLoop().schedule(reconnectTask, backoff.nextDelayMillis(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        // Off the event loop, a device which hangs while reopened must not hold up the other ports.
+        SerialPortOpener.openAsync(this, deviceAddress, config(), new SerialPortOpener.Callback() {
+            @Override
+            public void opened(SerialPort serialPort) {
+                if (!isOpen()) {
+                    serialPort.close();
+                    return;
+                }
+                try {
+                    portOpened(serialPort);
+                    deviceLost = false;
+                    backoff.reset();
+                    metrics.recordReconnect();
+                    pipeline().fireUserEventTriggered(SerialPortDeviceEvent.RESTORED);
+                    ((EpollSerialPortUnsafe) unsafe()).flush0();
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+                logger.debug("Failed to reopen serial device {}", deviceAddress, cause);
+                if (isOpen()) {
+                    eventLoop().schedule(reconnectTask, backoff.nextDelayMillis(), TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+    }
+
+    @Override
+    public SerialPortDeviceAddress localAddress() {
+        return (SerialPortDeviceAddress) super.localAddress();
+    }
+
+    @Override
+    public SerialPortDeviceAddress remoteAddress() {
+        return (SerialPortDeviceAddress) super.remoteAddress();
+    }
+
+    @Override
+    protected SerialPortDeviceAddress localAddress0() {
+        return LOCAL_ADDRESS;
+    }
+
+    @Override
+    protected SerialPortDeviceAddress remoteAddress0() {
+        return deviceAddress;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doDisconnect() throws Exception {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        open = false;
+        active = false;
+        try {
+            doDeregister();
+        } finally {
+            closePort();
+        }
+    }
+
+    /**
+     * Raises or drops an output line at once.
+     */
+    void modemLineChanged(final SerialPortModemLine line, final boolean raised) {
+        if (!isActive()) {
+            // Applied when the port is opened.
+            return;
+        }
+        if (eventLoop().inEventLoop()) {
+            applyModemLine(line, raised);
+        } else {
+            eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    applyModemLine(line, raised);
+                }
+            });
+        }
+    }
+
+    private void applyModemLine(SerialPortModemLine line, boolean raised) {
+        if (fd == -1) {
+            // Applied when the port is (re)opened.
+            return;
+        }
+        try {
+            Native.setModemLines(fd, raised ? line.mask() : 0, raised ? 0 : line.mask());
+        } catch (IOException e) {
+            pipeline().fireExceptionCaught(e);
+        }
+    }
+
+    /**
+     * Reads the modem lines of the port. Can be called from any thread.
+     *
+     * @return the state of the lines, see {@link SerialPortModemLine#mask()}
+     * @throws IOException if the port is not open
+     */
+    public int modemLines() throws IOException {
+        SerialPort serialPort = this.serialPort;
+        if (serialPort == null) {
+            throw new IOException("serial port not open");
+        }
+        return Native.getModemLines(Native.getFd(((FileInputStream) serialPort.getInputStream()).getFD()));
+    }
+
+    @Override
+    protected void doDeregister() throws Exception {
+        if (fd != -1 && isRegistered()) {
+            ((EpollSerialPortEventLoop) eventLoop()).remove(this);
+        }
+    }
+
+    @Override
+    protected void doBeginRead() throws Exception {
+        readPending = true;
+        setFlag(Native.EPOLLIN);
+    }
+
+    /**
+     * Queues changed line settings behind the writes so far. They are applied once everything before
+     * them was handed to the tty, which then transmits its buffer with the old settings first. Writes
+     * which were not flushed yet are not flushed for them, the settings go out with the next flush.
+     */
+    void lineSettingsChanged(final LineSettings settings) {
+        if (!isActive()) {
+            // Applied when the port is opened.
+            return;
+        }
+        if (eventLoop().inEventLoop()) {
+            writeLineSettings(settings);
+        } else {
+            eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeLineSettings(settings);
+                }
+            });
+        }
+    }
+
+    private void writeLineSettings(LineSettings settings) {
+        ChannelOutboundBuffer in = unsafe().outboundBuffer();
+        if (isActive() && in != null) {
+            lineSettings.add(in, settings, voidPromise());
+            if (flushLineSettings(in)) {
+                ((EpollSerialPortUnsafe) unsafe()).flush0();
+            }
+        }
+    }
+
+    /**
+     * Flushes the queued line settings if no unflushed write comes before them, see
+     * {@link QueuedLineSettings}.
+     */
+    private boolean flushLineSettings(ChannelOutboundBuffer in) {
+        int flushed = lineSettings.flush(in);
+        // Not among the messages doWrite() started with.
+        lineSettingsApplied -= flushed;
+        return flushed > 0;
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) msg;
+            if (buf.isDirect() && buf.nioBufferCount() == 1) {
+                return buf;
+            }
+            ByteBuf direct = alloc().directBuffer(buf.readableBytes());
+            direct.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+            ReferenceCountUtil.safeRelease(buf);
+            return direct;
+        }
+
+        throw new UnsupportedOperationException(
+                "unsupported message type: " + StringUtil.simpleClassName(msg) + EXPECTED_TYPES);
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        if (deviceLost) {
+            // Stays queued until the device is back.
+            return;
+        }
+        if (transmitCheckScheduled) {
+            // Continued by the check.
+            return;
+        }
+        if (transmitStopped) {
+            // Stays queued until the device lets us send again, there is no point in waiting for EPOLLOUT.
+            clearFlag(Native.EPOLLOUT);
+            return;
+        }
+        int messages = in.size();
+        lineSettingsApplied = 0;
+        try {
+            doWrite0(in);
+        } catch (IOException e) {
+            if (!config().isAutoReconnect() || !isOpen()) {
+                throw e;
+            }
+            deviceLost(e);
+        } finally {
+            metrics.recordMessagesWritten(messages - in.size() - lineSettingsApplied);
+        }
+    }
+
+    private void doWrite0(ChannelOutboundBuffer in) throws Exception {
+        final int maxBytesPerGatheringWrite = config().getMaxBytesPerGatheringWrite();
+        final int maxCount = maxBytesPerGatheringWrite == 0 ? 1 : MAX_GATHERED_BUFFERS;
+        final long maxBytes = maxBytesPerGatheringWrite == 0 ? Long.MAX_VALUE : maxBytesPerGatheringWrite;
+        for (;;) {
+            Object msg = in.current();
+            if (msg == null) {
+                if (flushLineSettings(in)) {
+                    continue;
+                }
+                clearFlag(Native.EPOLLOUT);
+                if (halfDuplex.isTransmitting()) {
+                    // Turns the bus around once the tty transmitted the rest.
+                    scheduleTransmitCheck(pacer.drainNanos(Native.outputQueue(fd), 0));
+                }
+                return;
+            }
+            if (msg instanceof LineSettings) {
+                lineSettingsApplied++;
+                try {
+                    ((LineSettings) msg).apply(fd);
+                    in.remove();
+                } catch (IOException e) {
+                    in.remove(e);
+                }
+                lineSettings.removed();
+                continue;
+            }
+            long allowance = pacer.allowance(fd);
+            if (allowance == 0) {
+                // The tty holds enough, continue once it transmitted some of it.
+                clearFlag(Native.EPOLLOUT);
+                scheduleTransmitCheck(pacer.drainNanos(pacer.queueLimit(), pacer.queueLimit() - 1));
+                return;
+            }
+            long beginTransmitNanos = halfDuplex.beginTransmitNanos(fd);
+            if (beginTransmitNanos > 0) {
+                // The transceiver does not drive the bus yet, continue once it does.
+                clearFlag(Native.EPOLLOUT);
+                scheduleTransmitCheck(beginTransmitNanos);
+                return;
+            }
+            ByteBuffer[] nioBuffers = in.nioBuffers(maxCount, Math.min(maxBytes, allowance));
+            int nioBufferCount = in.nioBufferCount();
+            if (nioBufferCount == 0) {
+                // Empty buffer.
+                in.remove();
+                continue;
+            }
+            long expected = Math.min(in.nioBufferSize(), allowance);
+            long start = System.nanoTime();
+            long written;
+            if (nioBufferCount == 1) {
+                // Only a single buffer can exceed the limit passed to nioBuffers().
+                ByteBuffer nioBuffer = nioBuffers[0];
+                written = Native.write(fd, nioBuffer, nioBuffer.position(), nioBuffer.position() + (int) expected);
+            } else {
+                written = Native.writev(fd, nioBuffers, 0, nioBufferCount);
+            }
+            metrics.recordWrite(written, System.nanoTime() - start);
+            pacer.written();
+            halfDuplex.transmitted(written);
+            // The outbound buffer caches the NIO buffers and expects their positions to be moved.
+            SerialPortOutputStream.advance(nioBuffers, 0, nioBufferCount, written);
+            if (config().isTransmitComplete()) {
+                // Completed once the tty transmitted it, nothing more is written until then.
+                unconfirmedBytes = written;
+                clearFlag(Native.EPOLLOUT);
+                scheduleTransmitCheck(pacer.drainNanos(written, 0));
+                return;
+            }
+            in.removeBytes(written);
+            if (written < expected) {
+                // The tty buffer is full, continue once epoll reports the descriptor writable.
+                setFlag(Native.EPOLLOUT);
+                return;
+            }
+        }
+    }
+
+    private void scheduleTransmitCheck(long delayNanos) {
+        if (!transmitCheckScheduled) {
+            transmitCheckScheduled = true;
+            eventLoop().schedule(transmitCheckTask, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Completes the unconfirmed writes once the tty transmitted them, or resumes writing once it
+     * holds less than {@link SerialPortChannelConfig#getTransmitQueueMicros()}. Drops RTS of an
+     * RS-485 transceiver once everything was transmitted. Nothing here blocks the event loop, each
+     * wait is another scheduled check.
+     */
+    private void checkTransmitted() {
+        if (fd == -1) {
+            return;
+        }
+        try {
+            ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+            boolean turnAround = halfDuplex.isTransmitting() && (buffer == null || buffer.isEmpty());
+            long remaining = unconfirmedBytes > 0 || turnAround ? 0 : pacer.queueLimit() - 1;
+            int queued = Native.outputQueue(fd);
+            if (queued > remaining) {
+                scheduleTransmitCheck(pacer.drainNanos(queued, remaining));
+                return;
+            }
+            if (unconfirmedBytes > 0 || turnAround) {
+                // Only the hardware FIFO of the UART is left, a few characters at most, which tcdrain(3)
+                // would wait for on the event loop.
+                long transmitterNanos = pacer.transmitterNanos(fd);
+                if (transmitterNanos > 0) {
+                    scheduleTransmitCheck(transmitterNanos);
+                    return;
+                }
+                confirmTransmitted();
+            }
+            if (turnAround) {
+                long endTransmitNanos = halfDuplex.endTransmitNanos(fd);
+                if (endTransmitNanos > 0) {
+                    scheduleTransmitCheck(endTransmitNanos);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (config().isAutoReconnect()) {
+                deviceLost(e);
+            } else {
+                pipeline().fireExceptionCaught(e);
+                unsafe().close(voidPromise());
+            }
+            return;
+        }
+        ((EpollSerialPortUnsafe) unsafe()).flush0();
+    }
+
+    private void confirmTransmitted() {
+        ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+        if (buffer != null && unconfirmedBytes > 0) {
+            int messages = buffer.size();
+            buffer.removeBytes(unconfirmedBytes);
+            metrics.recordMessagesWritten(messages - buffer.size());
+            flushLineSettings(buffer);
+        }
+        unconfirmedBytes = 0;
+    }
+
+    private void checkIdleGap() {
+        if (!idleGapPending || !isActive()) {
+            return;
+        }
+        long idleGapNanos = TimeUnit.MICROSECONDS.toNanos(config().getIdleGapMicros());
+        long remaining = lastReadNanos + idleGapNanos - System.nanoTime();
+        if (idleGapNanos > 0 && remaining > 0) {
+            if (!idleCheckScheduled) {
+                idleCheckScheduled = true;
+                eventLoop().schedule(idleCheckTask, remaining, TimeUnit.NANOSECONDS);
+            }
+            return;
+        }
+        idleGapPending = false;
+        if (idleGapNanos > 0) {
+            pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        }
+    }
+
+    void setFlag(int flag) throws IOException {
+        if ((flags & flag) == 0) {
+            flags |= flag;
+            modifyEvents();
+        }
+    }
+
+    void clearFlag(int flag) throws IOException {
+        if ((flags & flag) != 0) {
+            flags &= ~flag;
+            modifyEvents();
+        }
+    }
+
+    private void modifyEvents() throws IOException {
+        if (fd != -1 && isRegistered()) {
+            ((EpollSerialPortEventLoop) eventLoop()).modify(this);
+        }
+    }
+
+    final class EpollSerialPortUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(
+                final SocketAddress remoteAddress,
+                final SocketAddress localAddress, final ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+
+            try {
+                final boolean wasActive = isActive();
+                doConnect(remoteAddress, localAddress);
+
+                int waitTime = config().getOption(WAIT_TIME);
+                if (waitTime > 0) {
+                    eventLoop().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            open(wasActive, promise);
+                        }
+                   }, waitTime, TimeUnit.MILLISECONDS);
+                } else {
+                    open(wasActive, promise);
+                }
+            } catch (Throwable t) {
+                safeSetFailure(promise, t);
+                closeIfClosed();
+            }
+        }
+
+        /**
+         * Opens the device off the event loop and activates the channel once it is open.
+         */
+        private void open(final boolean wasActive, final ChannelPromise promise) {
+            SerialPortOpener.openAsync(EpollSerialPortChannel.this, deviceAddress, config(),
+                    new SerialPortOpener.Callback() {
+                @Override
+                public void opened(SerialPort serialPort) {
+                    if (!isOpen()) {
+                        // Closed in the meantime.
+                        serialPort.close();
+                        safeSetFailure(promise, new ClosedChannelException());
+                        return;
+                    }
+                    try {
+                        portOpened(serialPort);
+                        active = true;
+                        safeSetSuccess(promise);
+                        if (!wasActive && isActive()) {
+                            pipeline().fireChannelActive();
+                        }
+                    } catch (Throwable t) {
+                        safeSetFailure(promise, t);
+                        closeIfClosed();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable cause) {
+                    safeSetFailure(promise, cause);
+                    if (cause instanceof ConnectTimeoutException) {
+                        close(voidPromise());
+                    } else {
+                        closeIfClosed();
+                    }
+                }
+            });
+        }
+
+        @Override
+        protected void flush0() {
+            // Wait for EPOLLOUT if the tty buffer was full, writing now would only fail again.
+            if ((flags & Native.EPOLLOUT) != 0 || deviceLost || transmitCheckScheduled) {
+                return;
+            }
+            super.flush0();
+        }
+
+        void epollReady(int ev) {
+            metrics.recordWakeup(0);
+            if ((ev & (Native.EPOLLIN | Native.EPOLLERR | Native.EPOLLHUP)) != 0) {
+                epollInReady();
+            }
+            if ((ev & Native.EPOLLOUT) != 0 && isOpen() && !deviceLost) {
+                super.flush0();
+            }
+            if ((ev & Native.EPOLLHUP) != 0 && isOpen() && !deviceLost) {
+                if (config().isAutoReconnect()) {
+                    deviceLost(null);
+                } else {
+                    close(voidPromise());
+                }
+            }
+        }
+
+        private void epollInReady() {
+            final SerialPortChannelConfig config = config();
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config);
+
+            ByteBuf buf = null;
+            boolean readData = false;
+            try {
+                if (allocHandle instanceof SerialPortRecvByteBufAllocator.SerialHandle) {
+                    ((SerialPortRecvByteBufAllocator.SerialHandle) allocHandle).available(Native.inputQueue(fd));
+                }
+                do {
+                    buf = alloc().directBuffer(allocHandle.guess());
+                    allocHandle.attemptedBytesRead(buf.writableBytes());
+                    ByteBuffer nioBuffer = buf.internalNioBuffer(buf.writerIndex(), buf.writableBytes());
+                    long start = System.nanoTime();
+                    int localRead = Native.read(fd, nioBuffer, nioBuffer.position(), nioBuffer.limit());
+                    metrics.recordRead(localRead, System.nanoTime() - start);
+                    allocHandle.lastBytesRead(localRead);
+                    if (localRead <= 0) {
+                        buf.release();
+                        buf = null;
+                        break;
+                    }
+                    buf.writerIndex(buf.writerIndex() + localRead);
+                    halfDuplex.stripEcho(buf, buf.writerIndex() - localRead);
+                    if (softwareFlowControl) {
+                        byte control = SoftwareFlowControl.strip(buf, buf.readerIndex());
+                        if (control != 0) {
+                            flowControlled(control == SoftwareFlowControl.XOFF);
+                        }
+                    }
+                    if (!buf.isReadable()) {
+                        buf.release();
+                        buf = null;
+                        continue;
+                    }
+                    allocHandle.incMessagesRead(1);
+                    readPending = false;
+                    readData = true;
+                    metrics.recordMessageRead();
+                    pipeline.fireChannelRead(buf);
+                    buf = null;
+                } while (allocHandle.continueReading());
+
+                allocHandle.readComplete();
+                pipeline.fireChannelReadComplete();
+
+                if (readData && config.getIdleGapMicros() > 0) {
+                    lastReadNanos = System.nanoTime();
+                    idleGapPending = true;
+                    checkIdleGap();
+                }
+            } catch (Throwable t) {
+                if (buf != null) {
+                    buf.release();
+                }
+                allocHandle.readComplete();
+                pipeline.fireChannelReadComplete();
+                if (t instanceof IOException && config.isAutoReconnect() && isOpen()) {
+                    deviceLost(t);
+                    return;
+                }
+                pipeline.fireExceptionCaught(t);
+                if (t instanceof IOException) {
+                    close(voidPromise());
+                }
+            } finally {
+                if (!readPending && !config.isAutoRead() && isOpen()) {
+                    try {
+                        clearFlag(Native.EPOLLIN);
+                    } catch (IOException e) {
+                        pipeline.fireExceptionCaught(e);
+                        close(voidPromise());
+                    }
+                }
+            }
+        }
+    }
+}
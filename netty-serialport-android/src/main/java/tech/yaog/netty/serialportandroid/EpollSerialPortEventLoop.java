@@ -0,0 +1,176 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SingleThreadEventLoop;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Event loop that multiplexes the tty descriptors of its {@link EpollSerialPortChannel}s with epoll
+ * and is woken up through an eventfd when tasks are submitted from other threads.
+ */
+final class EpollSerialPortEventLoop extends SingleThreadEventLoop {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(EpollSerialPortEventLoop.class);
+
+    private static final AtomicIntegerFieldUpdater<EpollSerialPortEventLoop> WAKEN_UP_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(EpollSerialPortEventLoop.class, "wakenUp");
+
+    private final IntObjectMap<EpollSerialPortChannel> channels = new IntObjectHashMap<EpollSerialPortChannel>(16);
+    private final long[] events = new long[64];
+    private final int epollFd;
+    private final int eventFd;
+    private final int timerFd;
+
+    @SuppressWarnings("unused")
+    private volatile int wakenUp;
+
+    EpollSerialPortEventLoop(EventLoopGroup parent, Executor executor) throws IOException {
+        super(parent, executor, false);
+        Native.ensureAvailability();
+        epollFd = Native.epollCreate();
+        int eventFd = -1;
+        int timerFd = -1;
+        try {
+            eventFd = Native.eventFd();
+            Native.epollCtlAdd(epollFd, eventFd, Native.EPOLLIN);
+            timerFd = Native.timerFd();
+            Native.epollCtlAdd(epollFd, timerFd, Native.EPOLLIN);
+        } catch (IOException e) {
+            if (timerFd != -1) {
+                Native.close(timerFd);
+            }
+            if (eventFd != -1) {
+                Native.close(eventFd);
+            }
+            Native.close(epollFd);
+            throw e;
+        }
+        this.eventFd = eventFd;
+        this.timerFd = timerFd;
+    }
+
+    void add(EpollSerialPortChannel ch) throws IOException {
+        assert inEventLoop();
+        Native.epollCtlAdd(epollFd, ch.fd, ch.flags);
+        channels.put(ch.fd, ch);
+    }
+
+    void modify(EpollSerialPortChannel ch) throws IOException {
+        assert inEventLoop();
+        Native.epollCtlMod(epollFd, ch.fd, ch.flags);
+    }
+
+    void remove(EpollSerialPortChannel ch) throws IOException {
+        assert inEventLoop();
+        if (channels.remove(ch.fd) != null) {
+            Native.epollCtlDel(epollFd, ch.fd);
+        }
+    }
+
+    @Override
+    protected void wakeup(boolean inEventLoop) {
+        if (!inEventLoop && WAKEN_UP_UPDATER.compareAndSet(this, 0, 1)) {
+            try {
+                Native.eventFdWrite(eventFd, 1L);
+            } catch (IOException e) {
+                logger.warn("Failed to wake up the event loop.", e);
+            }
+        }
+    }
+
+    @Override
+    protected void run() {
+        for (;;) {
+            try {
+                long timeoutNanos = 0;
+                if (!hasTasks()) {
+                    WAKEN_UP_UPDATER.set(this, 0);
+                    if (!hasTasks()) {
+                        timeoutNanos = Math.max(1, delayNanos(System.nanoTime()));
+                    }
+                }
+                int ready = Native.epollWait(epollFd, events, timerFd, timeoutNanos);
+                WAKEN_UP_UPDATER.set(this, 1);
+                if (ready > 0) {
+                    processReady(ready);
+                }
+                runAllTasks();
+            } catch (Throwable t) {
+                handleLoopException(t);
+            }
+            try {
+                if (isShuttingDown()) {
+                    closeAll();
+                    if (confirmShutdown()) {
+                        break;
+                    }
+                }
+            } catch (Throwable t) {
+                handleLoopException(t);
+            }
+        }
+    }
+
+    private void processReady(int ready) throws IOException {
+        for (int i = 0; i < ready; i++) {
+            long event = events[i];
+            int fd = (int) (event >>> 32);
+            int ev = (int) event;
+            if (fd == eventFd || fd == timerFd) {
+                // Both count expirations or wakeups in 8 bytes, drain them to rearm.
+                Native.eventFdRead(fd);
+                continue;
+            }
+            EpollSerialPortChannel ch = channels.get(fd);
+            if (ch != null) {
+                ((EpollSerialPortChannel.EpollSerialPortUnsafe) ch.unsafe()).epollReady(ev);
+            }
+        }
+    }
+
+    private void closeAll() {
+        List<EpollSerialPortChannel> toClose = new ArrayList<EpollSerialPortChannel>(channels.values());
+        for (EpollSerialPortChannel ch : toClose) {
+            ch.unsafe().close(ch.unsafe().voidPromise());
+        }
+    }
+
+    @Override
+    protected void cleanup() {
+        try {
+            Native.close(timerFd);
+        } catch (IOException e) {
+            logger.warn("Failed to close the timerfd.", e);
+        }
+        try {
+            Native.close(eventFd);
+        } catch (IOException e) {
+            logger.warn("Failed to close the eventfd.", e);
+        }
+        try {
+            Native.close(epollFd);
+        } catch (IOException e) {
+            logger.warn("Failed to close the epoll fd.", e);
+        }
+    }
+
+    private static void handleLoopException(Throwable t) {
+        logger.warn("Unexpected exception in the serial port event loop.", t);
+
+        // Prevent possible consecutive immediate failures that lead to excessive CPU consumption.
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            // Ignore.
+        }
+    }
+}
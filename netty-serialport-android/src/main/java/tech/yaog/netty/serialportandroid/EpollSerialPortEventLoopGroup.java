@@ -0,0 +1,48 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.MultithreadEventLoopGroup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link MultithreadEventLoopGroup} whose loops wait on epoll, so that a single thread serves all
+ * {@link EpollSerialPortChannel}s registered to it. Requires {@code libnetty-serialport}.
+ */
+public class EpollSerialPortEventLoopGroup extends MultithreadEventLoopGroup {
+
+    /**
+     * Create a new instance using the default number of threads.
+     */
+    public EpollSerialPortEventLoopGroup() {
+        this(0);
+    }
+
+    /**
+     * Create a new instance using the specified number of threads.
+     */
+    public EpollSerialPortEventLoopGroup(int nThreads) {
+        this(nThreads, (ThreadFactory) null);
+    }
+
+    public EpollSerialPortEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+        super(nThreads, threadFactory);
+    }
+
+    public EpollSerialPortEventLoopGroup(int nThreads, Executor executor) {
+        super(nThreads, executor);
+    }
+
+    /**
+     * @return true if the native library backing this transport could be loaded
+     */
+    public static boolean isAvailable() {
+        return Native.isAvailable();
+    }
+
+    @Override
+    protected EventLoop newChild(Executor executor, Object... args) throws Exception {
+        return new EpollSerialPortEventLoop(this, executor);
+    }
+}
@@ -0,0 +1,199 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Switches the direction of a half-duplex RS-485 transceiver with RTS, for
+ * {@link SerialPortChannelConfig#isRs485()}. Drivers supporting TIOCSRS485 do so themselves,
+ * otherwise RTS is raised before the first write and dropped once the tty transmitted everything.
+ * Delays are derived from the current line settings. {@link #beginTransmit(int)} and
+ * {@link #endTransmit(int)} wait for them precisely, for a channel on a thread of its own: sleeping
+ * alone overshoots by more than a character at high baud rates. A channel on an event loop shared
+ * with others uses {@link #beginTransmitNanos(int)} and {@link #endTransmitNanos(int)} instead,
+ * which never block and tell when to call them again.
+ */
+final class HalfDuplex {
+
+    // Spun instead of parked, a park usually takes this much longer than asked for.
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final SerialPortChannelConfig config;
+
+    private boolean enabled;
+    private boolean kernel;
+    private boolean transmitting;
+    private long readyNanos;
+    private boolean releasing;
+    private long releaseNanos;
+    private long echoPending;
+
+    HalfDuplex(SerialPortChannelConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Configures the freshly opened tty {@code fd}, which starts out receiving.
+     *
+     * @throws IOException if the direction cannot be switched, e.g. without {@code libnetty-serialport}
+     */
+    void open(int fd) throws IOException {
+        reset();
+        if (!enabled) {
+            return;
+        }
+        if (fd == -1) {
+            throw new IOException("RS-485 direction control requires libnetty-serialport");
+        }
+        kernel = Native.setRs485(fd, config.isRs485Echo(),
+                toMillis(delayBeforeSendNanos()), toMillis(delayAfterSendNanos()));
+        if (!kernel) {
+            Native.setModemLines(fd, 0, SerialPortModemLine.RTS.mask());
+        }
+    }
+
+    /**
+     * Takes over the configuration and forgets the state of the previous port.
+     */
+    void reset() {
+        enabled = config.isRs485();
+        kernel = false;
+        transmitting = false;
+        releasing = false;
+        echoPending = 0;
+    }
+
+    /**
+     * @return true if the channel has to call {@link #beginTransmit(int)} and {@link #endTransmit(int)}
+     */
+    boolean isSwitched() {
+        return enabled && !kernel;
+    }
+
+    /**
+     * @return true if RTS was raised by {@link #beginTransmit(int)} and not dropped yet
+     */
+    boolean isTransmitting() {
+        return transmitting;
+    }
+
+    /**
+     * Raises RTS, unless it is raised already, and waits for the transceiver to drive the bus.
+     */
+    void beginTransmit(int fd) throws IOException {
+        pause(beginTransmitNanos(fd));
+    }
+
+    /**
+     * Raises RTS, unless it is raised already, without waiting.
+     *
+     * @return the time until the transceiver drives the bus, 0 once it does
+     */
+    long beginTransmitNanos(int fd) throws IOException {
+        if (!isSwitched()) {
+            return 0;
+        }
+        // More to send, the bus stays ours.
+        releasing = false;
+        if (!transmitting) {
+            Native.setModemLines(fd, SerialPortModemLine.RTS.mask(), 0);
+            transmitting = true;
+            readyNanos = System.nanoTime() + delayBeforeSendNanos();
+        }
+        return Math.max(0, readyNanos - System.nanoTime());
+    }
+
+    /**
+     * Drops RTS after the delay after sending, to be called once the tty transmitted everything.
+     */
+    void endTransmit(int fd) throws IOException {
+        long nanos;
+        while ((nanos = endTransmitNanos(fd)) > 0) {
+            pause(nanos);
+        }
+    }
+
+    /**
+     * Drops RTS once the delay after sending elapsed, counted from the first call, without waiting.
+     * To be called once the tty transmitted everything.
+     *
+     * @return the time to call again after, 0 once RTS was dropped
+     */
+    long endTransmitNanos(int fd) throws IOException {
+        if (!transmitting) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (!releasing) {
+            releasing = true;
+            releaseNanos = now + delayAfterSendNanos();
+        }
+        if (releaseNanos - now > 0) {
+            return releaseNanos - now;
+        }
+        releasing = false;
+        transmitting = false;
+        Native.setModemLines(fd, 0, SerialPortModemLine.RTS.mask());
+        return 0;
+    }
+
+    /**
+     * Records {@code bytes} handed to the tty, which come back if the transceiver echoes them.
+     */
+    void transmitted(long bytes) {
+        if (enabled && config.isRs485Echo()) {
+            echoPending += bytes;
+        }
+    }
+
+    /**
+     * Removes the echo of what was sent from the bytes of {@code buf} between {@code from} and its
+     * writer index, moving the writer index back accordingly.
+     */
+    void stripEcho(ByteBuf buf, int from) {
+        if (echoPending == 0) {
+            return;
+        }
+        int received = buf.writerIndex() - from;
+        int echo = (int) Math.min(echoPending, received);
+        echoPending -= echo;
+        buf.setBytes(from, buf, from + echo, received - echo);
+        buf.writerIndex(buf.writerIndex() - echo);
+    }
+
+    private long bitNanos() {
+        return TimeUnit.SECONDS.toNanos(1) / Math.max(1, config.getBaudrate());
+    }
+
+    long delayBeforeSendNanos() {
+        return config.getRs485DelayBeforeSendBits() * bitNanos();
+    }
+
+    long delayAfterSendNanos() {
+        return config.getRs485DelayAfterSendBits() * bitNanos();
+    }
+
+    /**
+     * @return {@code nanos} rounded up to whole milliseconds, the resolution of TIOCSRS485
+     */
+    static int toMillis(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (TimeUnit.MILLISECONDS.toNanos(millis) < nanos) {
+            millis++;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, millis);
+    }
+
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package tech.yaog.netty.serialportandroid;
+
+import java.io.IOException;
+
+/**
+ * The speed and character format of a serial channel at the time one of them was changed. Queued
+ * in the outbound buffer of an active channel like a message, so that it takes effect exactly
+ * between the writes before and after the change.
+ */
+final class LineSettings {
+
+    private final int baudrate;
+    private final SerialPortChannelConfig.Databits databits;
+    private final SerialPortChannelConfig.Paritybit paritybit;
+    private final SerialPortChannelConfig.Stopbits stopbits;
+
+    LineSettings(SerialPortChannelConfig config) {
+        baudrate = config.getBaudrate();
+        databits = config.getDatabits();
+        paritybit = config.getParitybit();
+        stopbits = config.getStopbits();
+    }
+
+    /**
+     * Applies the settings to the tty {@code fd}, once the bytes written to it so far are out.
+     */
+    void apply(int fd) throws IOException {
+        Native.setLineSettings(fd, baudrate, databits.bits(), parity(paritybit), stopbits.bits());
+    }
+
+    private static int parity(SerialPortChannelConfig.Paritybit paritybit) {
+        switch (paritybit) {
+            case NONE:
+                return 0;
+            case ODD:
+                return 1;
+            case EVEN:
+                return 2;
+            case SPACE:
+                return 3;
+            default:
+                throw new IllegalArgumentException("unknown parity: " + paritybit);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LineSettings(" + baudrate + ", " + databits + ", " + paritybit + ", " + stopbits + ')';
+    }
+}
@@ -0,0 +1,122 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for changes of the input modem lines of a tty with TIOCMIWAIT on a thread of its own and
+ * hands them to a {@link Listener} on the channel's event loop. The thread waits on a duplicate of
+ * the descriptor, which it closes itself when it is done, so the channel can close the port right
+ * away without waiting for it.
+ */
+final class ModemLineWatcher implements Runnable {
+
+    interface Listener {
+        void modemLinesChanged(SerialPortModemLinesEvent event);
+    }
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(ModemLineWatcher.class);
+    private static final ThreadFactory THREAD_FACTORY = new DefaultThreadFactory("serialport-modem", true);
+    private static final long WAKEUP_INTERVAL_MILLIS = 10;
+
+    private final Channel channel;
+    private final int portFd;
+    private final Listener listener;
+    private final Thread thread;
+    private final Runnable wakeUpTask = new Runnable() {
+        @Override
+        public void run() {
+            wakeUp();
+        }
+    };
+    private int fd = -1;
+    private volatile boolean stopped;
+    // Guarded by this, 0 once the thread left run() and must not be signalled anymore.
+    private long nativeThread;
+
+    ModemLineWatcher(Channel channel, int fd, Listener listener) {
+        this.channel = channel;
+        portFd = fd;
+        this.listener = listener;
+        thread = THREAD_FACTORY.newThread(this);
+    }
+
+    void start() throws IOException {
+        fd = Native.dup(portFd);
+        thread.start();
+    }
+
+    /**
+     * Stops the watcher without waiting for it, the port may be closed right after.
+     */
+    void stop() {
+        stopped = true;
+        wakeUp();
+    }
+
+    /**
+     * Signals the thread until it left run(). A signal arriving right before it blocks is lost, so it
+     * is repeated off the event loop.
+     */
+    private void wakeUp() {
+        synchronized (this) {
+            if (nativeThread == 0) {
+                return;
+            }
+            Native.wakeUp(nativeThread);
+        }
+        GlobalEventExecutor.INSTANCE.schedule(wakeUpTask, WAKEUP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            nativeThread = Native.currentThread();
+        }
+        try {
+            int lines = Native.getModemLines(fd);
+            while (!stopped) {
+                if (!Native.waitModemLines(fd, SerialPortModemLine.INPUTS)) {
+                    continue;
+                }
+                int current = Native.getModemLines(fd);
+                int changed = (current ^ lines) & SerialPortModemLine.INPUTS;
+                lines = current;
+                if (changed != 0 && !stopped) {
+                    fire(new SerialPortModemLinesEvent(current, changed));
+                }
+            }
+        } catch (IOException e) {
+            if (!stopped) {
+                logger.debug("Modem line events are not available on {}", channel, e);
+            }
+        } finally {
+            synchronized (this) {
+                nativeThread = 0;
+            }
+            try {
+                Native.close(fd);
+            } catch (IOException e) {
+                logger.debug("Failed to close the modem line descriptor of {}", channel, e);
+            }
+        }
+    }
+
+    private void fire(final SerialPortModemLinesEvent event) {
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!stopped) {
+                    listener.modemLinesChanged(event);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,265 @@
+package tech.yaog.netty.serialportandroid;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * JNI bindings to {@code libnetty-serialport}. The library is optional, callers have to check
+ * {@link #isAvailable()} (or call {@link #ensureAvailability()}) before using any native method.
+ */
+final class Native {
+
+    private static final Throwable UNAVAILABILITY_CAUSE;
+
+    static final int EPOLLIN;
+    static final int EPOLLOUT;
+    static final int EPOLLHUP;
+    static final int EPOLLERR;
+    static final int POLLIN;
+    static final int POLLOUT;
+    static final int POLLHUP;
+    static final int POLLERR;
+
+    static {
+        Throwable cause = null;
+        try {
+            System.loadLibrary("netty-serialport");
+        } catch (Throwable t) {
+            cause = t;
+        }
+        UNAVAILABILITY_CAUSE = cause;
+        if (cause == null) {
+            EPOLLIN = epollin();
+            EPOLLOUT = epollout();
+            EPOLLHUP = epollhup();
+            EPOLLERR = epollerr();
+            POLLIN = pollin();
+            POLLOUT = pollout();
+            POLLHUP = pollhup();
+            POLLERR = pollerr();
+        } else {
+            EPOLLIN = 0;
+            EPOLLOUT = 0;
+            EPOLLHUP = 0;
+            EPOLLERR = 0;
+            POLLIN = 0;
+            POLLOUT = 0;
+            POLLHUP = 0;
+            POLLERR = 0;
+        }
+    }
+
+    /**
+     * @return true if {@code libnetty-serialport} could be loaded
+     */
+    static boolean isAvailable() {
+        return UNAVAILABILITY_CAUSE == null;
+    }
+
+    /**
+     * Throws the load failure of {@code libnetty-serialport} if it is not available.
+     */
+    static void ensureAvailability() {
+        if (UNAVAILABILITY_CAUSE != null) {
+            throw (Error) new UnsatisfiedLinkError("failed to load libnetty-serialport")
+                    .initCause(UNAVAILABILITY_CAUSE);
+        }
+    }
+
+    static Throwable unavailabilityCause() {
+        return UNAVAILABILITY_CAUSE;
+    }
+
+    /**
+     * @return the raw descriptor behind the given {@link FileDescriptor}
+     */
+    static native int getFd(FileDescriptor fd);
+
+    static native void setNonBlocking(int fd) throws IOException;
+
+    /**
+     * Reads into the direct {@code buffer} between {@code pos} and {@code limit}.
+     *
+     * @return the number of bytes read, 0 if nothing is available
+     */
+    static native int read(int fd, ByteBuffer buffer, int pos, int limit) throws IOException;
+
+    /**
+     * Writes the direct {@code buffer} between {@code pos} and {@code limit}.
+     *
+     * @return the number of bytes written, 0 if the device cannot take more data right now
+     */
+    static native int write(int fd, ByteBuffer buffer, int pos, int limit) throws IOException;
+
+    /**
+     * Writes the remaining bytes of the direct {@code buffers} with a single writev(2). The buffer
+     * positions are not updated.
+     *
+     * @return the number of bytes written, 0 if the device cannot take more data right now
+     */
+    static native long writev(int fd, ByteBuffer[] buffers, int offset, int length) throws IOException;
+
+    /**
+     * Blocks until one of {@code events} is ready on {@code fd}, at most {@code timeoutNanos}
+     * ({@code -1} waits forever).
+     *
+     * @return the returned poll events, 0 on timeout
+     */
+    static native int poll(int fd, int events, long timeoutNanos) throws IOException;
+
+    /**
+     * @return a new descriptor of what {@code fd} refers to, closed on exec
+     */
+    static native int dup(int fd) throws IOException;
+
+    static native void close(int fd) throws IOException;
+
+    static native int eventFd() throws IOException;
+
+    static native void eventFdWrite(int fd, long value) throws IOException;
+
+    static native void eventFdRead(int fd) throws IOException;
+
+    static native int epollCreate() throws IOException;
+
+    static native void epollCtlAdd(int efd, int fd, int flags) throws IOException;
+
+    static native void epollCtlMod(int efd, int fd, int flags) throws IOException;
+
+    static native void epollCtlDel(int efd, int fd) throws IOException;
+
+    static native int timerFd() throws IOException;
+
+    /**
+     * Waits for events on {@code efd}, at most {@code timeoutNanos} measured by arming
+     * {@code timerFd}, which must be registered with {@code efd} and is disarmed again before this
+     * returns. Every ready descriptor is stored in {@code events} with the descriptor in the upper
+     * and the event mask in the lower 32 bits.
+     *
+     * @return the number of ready descriptors
+     */
+    static native int epollWait(int efd, long[] events, int timerFd, long timeoutNanos) throws IOException;
+
+    /**
+     * Opens the master side of a new pseudo terminal in raw mode, non-blocking.
+     */
+    static native int openPtyMaster() throws IOException;
+
+    /**
+     * @return the device path of the slave side of the pseudo terminal {@code fd}
+     */
+    static native String ptsName(int fd) throws IOException;
+
+    /**
+     * Changes speed and character format of the tty {@code fd} once everything written to it so far
+     * has been transmitted.
+     *
+     * @param parity 0 for none, 1 for odd, 2 for even and 3 for space parity
+     * @throws IOException if the device rejects the settings, e.g. an unsupported baud rate
+     */
+    static native void setLineSettings(int fd, int baudrate, int dataBits, int parity, int stopBits)
+            throws IOException;
+
+    /**
+     * Sets the flow control of the tty {@code fd}: {@code rtsCts} lets the kernel stop sending while
+     * CTS is low and drop RTS while its input buffer is full, {@code xoff} lets it send XOFF and XON
+     * for the latter instead. Received XON and XOFF are never handled by the kernel.
+     */
+    static native void setFlowControl(int fd, boolean rtsCts, boolean xoff) throws IOException;
+
+    /**
+     * @return the number of bytes received by the tty {@code fd} and not read yet
+     */
+    static native int inputQueue(int fd) throws IOException;
+
+    /**
+     * @return the number of bytes written to the tty {@code fd} and not transmitted yet, not counting
+     * the hardware FIFO of the UART
+     */
+    static native int outputQueue(int fd) throws IOException;
+
+    /**
+     * @return 1 if the UART of the tty {@code fd} transmitted everything, including its FIFO and shift
+     * register, 0 if not yet, -1 if the driver does not tell
+     */
+    static native int transmitterEmpty(int fd) throws IOException;
+
+    /**
+     * Blocks until everything written to the tty {@code fd} has been transmitted.
+     */
+    static native void drain(int fd) throws IOException;
+
+    /**
+     * Discards what the tty {@code fd} received and was not read yet.
+     */
+    static native void flushInput(int fd) throws IOException;
+
+    /**
+     * Lets the driver of the tty {@code fd} raise RTS while sending and drop it once the last stop
+     * bit left the UART, after {@code delayAfterSendMillis}, for half-duplex RS-485 transceivers.
+     * Without {@code rxDuringTx} the receiver is off while sending.
+     *
+     * @return false if the driver does not support RS-485
+     */
+    static native boolean setRs485(int fd, boolean rxDuringTx, int delayBeforeSendMillis, int delayAfterSendMillis)
+            throws IOException;
+
+    /**
+     * @return the output baud rate of the tty {@code fd}, 0 if it is not a standard rate
+     */
+    static native int getBaudrate(int fd) throws IOException;
+
+    /**
+     * @return the state of the modem lines of the tty {@code fd}, the bit of each line is
+     * {@link SerialPortModemLine#mask()}
+     */
+    static native int getModemLines(int fd) throws IOException;
+
+    /**
+     * Raises the modem lines in {@code set} and drops those in {@code clear}, both masks of
+     * {@link SerialPortModemLine#mask()}.
+     */
+    static native void setModemLines(int fd, int set, int clear) throws IOException;
+
+    /**
+     * Blocks until one of the modem {@code lines} of the tty {@code fd} changes, or the thread is
+     * woken up by {@link #wakeUp(long)}.
+     *
+     * @return false if woken up
+     * @throws IOException if the driver does not support waiting for the lines
+     */
+    static native boolean waitModemLines(int fd, int lines) throws IOException;
+
+    /**
+     * @return the native handle of the calling thread, to pass to {@link #wakeUp(long)}
+     */
+    static native long currentThread();
+
+    /**
+     * Interrupts a blocking {@link #waitModemLines(int, int)} of the given thread with
+     * {@code SIGURG}. The thread must still be alive. The handler of the signal chains to the one
+     * installed before, which sees these wakeups as well; SIGURG is ignored by default and may come
+     * at any time anyway.
+     */
+    static native void wakeUp(long thread);
+
+    private static native int epollin();
+
+    private static native int epollout();
+
+    private static native int epollhup();
+
+    private static native int epollerr();
+
+    private static native int pollin();
+
+    private static native int pollout();
+
+    private static native int pollhup();
+
+    private static native int pollerr();
+
+    private Native() {
+    }
+}
@@ -0,0 +1,119 @@
+package tech.yaog.netty.serialportandroid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A Linux pseudo terminal pair to test against without any hardware. Connect a channel to
+ * {@link #deviceAddress()}, the slave side, which is a tty just like a serial device and opened and
+ * configured the same way. This object is the master side, whatever is written to it arrives at
+ * the channel and the other way round.
+ * <p>
+ * The terminal starts in raw mode, reading from either side returns at once when it is empty.
+ * Requires {@code libnetty-serialport}.
+ */
+public final class PseudoTerminal implements Closeable {
+
+    private final int fd;
+    private final SerialPortDeviceAddress deviceAddress;
+    private boolean closed;
+
+    private PseudoTerminal(int fd, SerialPortDeviceAddress deviceAddress) {
+        this.fd = fd;
+        this.deviceAddress = deviceAddress;
+    }
+
+    /**
+     * Opens a new pseudo terminal pair.
+     */
+    public static PseudoTerminal open() throws IOException {
+        Native.ensureAvailability();
+        int fd = Native.openPtyMaster();
+        try {
+            return new PseudoTerminal(fd, new SerialPortDeviceAddress(Native.ptsName(fd)));
+        } catch (IOException e) {
+            Native.close(fd);
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if pseudo terminals are supported on this system
+     */
+    public static boolean isAvailable() {
+        return Native.isAvailable();
+    }
+
+    /**
+     * @return the address of the slave side (e.g. /dev/pts/3) to connect a channel to
+     */
+    public SerialPortDeviceAddress deviceAddress() {
+        return deviceAddress;
+    }
+
+    /**
+     * Writes as much of the remaining bytes of the direct buffer {@code src} as the terminal
+     * currently takes, without blocking.
+     *
+     * @return the number of bytes written, 0 if the terminal is full
+     */
+    public int write(ByteBuffer src) throws IOException {
+        int res = Native.write(fd, checkDirect(src), src.position(), src.limit());
+        src.position(src.position() + res);
+        return res;
+    }
+
+    /**
+     * Reads whatever the channel has sent into the direct buffer {@code dst}, without blocking.
+     *
+     * @return the number of bytes read, 0 if nothing is available
+     * @throws IOException if the slave side is not open anymore
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        int res = Native.read(fd, checkDirect(dst), dst.position(), dst.limit());
+        dst.position(dst.position() + res);
+        return res;
+    }
+
+    /**
+     * Waits at most {@code timeoutNanos} until there is something to read.
+     *
+     * @return false if the time elapsed
+     */
+    public boolean awaitReadable(long timeoutNanos) throws IOException {
+        return Native.poll(fd, Native.POLLIN, timeoutNanos) != 0;
+    }
+
+    /**
+     * Waits at most {@code timeoutNanos} until the terminal takes more data.
+     *
+     * @return false if the time elapsed
+     */
+    public boolean awaitWritable(long timeoutNanos) throws IOException {
+        return Native.poll(fd, Native.POLLOUT, timeoutNanos) != 0;
+    }
+
+    /**
+     * @return the baud rate the channel configured the terminal with, 0 if it is not a standard rate
+     */
+    public int baudrate() throws IOException {
+        // The master side reports the termios of the slave.
+        return Native.getBaudrate(fd);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            Native.close(fd);
+        }
+    }
+
+    private static ByteBuffer checkDirect(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer must be direct");
+        }
+        return buffer;
+    }
+}
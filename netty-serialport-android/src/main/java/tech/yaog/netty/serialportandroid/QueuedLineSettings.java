@@ -0,0 +1,49 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Keeps track of the {@link LineSettings} in the outbound buffer of a channel. They are added behind
+ * the writes so far like a message, but flushed without the user only if no write which was not
+ * flushed yet comes before them, those wait for the flush of the user and the settings with them.
+ * The buffer does not tell flushed from unflushed bytes, but with nothing flushed all its pending
+ * bytes belong to unflushed messages, so the settings may go if they account for all of them.
+ * Otherwise they wait until the flushed writes are done. Used on the event loop only.
+ */
+final class QueuedLineSettings {
+
+    private int queued;
+    // Pending bytes of a single entry, the smallest growth seen, writes of other threads add to it.
+    private long entryBytes = Long.MAX_VALUE;
+
+    /**
+     * Adds {@code settings} to {@code in} as an unflushed message.
+     */
+    void add(ChannelOutboundBuffer in, LineSettings settings, ChannelPromise promise) {
+        long pendingBytes = in.totalPendingWriteBytes();
+        in.addMessage(settings, 0, promise);
+        entryBytes = Math.min(entryBytes, in.totalPendingWriteBytes() - pendingBytes);
+        queued++;
+    }
+
+    /**
+     * Called once settings were taken out of the buffer.
+     */
+    void removed() {
+        queued--;
+    }
+
+    /**
+     * Flushes the queued settings if nothing else is pending in {@code in}.
+     *
+     * @return the number of settings flushed
+     */
+    int flush(ChannelOutboundBuffer in) {
+        if (queued == 0 || !in.isEmpty() || in.totalPendingWriteBytes() != queued * entryBytes) {
+            return 0;
+        }
+        in.addFlush();
+        return queued;
+    }
+}
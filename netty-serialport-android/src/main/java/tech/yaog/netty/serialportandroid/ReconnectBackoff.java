@@ -0,0 +1,45 @@
+package tech.yaog.netty.serialportandroid;
+
+import java.io.File;
+
+/**
+ * Paces the attempts of a channel to reopen its lost device, starting at
+ * {@link SerialPortChannelConfig#getReconnectMinDelayMillis()} and doubling up to
+ * {@link SerialPortChannelConfig#getReconnectMaxDelayMillis()}.
+ */
+final class ReconnectBackoff {
+
+    private final SerialPortChannelConfig config;
+    private long delayMillis;
+
+    ReconnectBackoff(SerialPortChannelConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the time (in ms) to wait before the next attempt
+     */
+    long nextDelayMillis() {
+        int min = config.getReconnectMinDelayMillis();
+        int max = Math.max(min, config.getReconnectMaxDelayMillis());
+        delayMillis = delayMillis == 0 ? min : Math.min(delayMillis * 2, max);
+        return delayMillis;
+    }
+
+    void reset() {
+        delayMillis = 0;
+    }
+
+    /**
+     * Checks whether the device node is back before trying to open it. A stat per attempt is cheap
+     * at the backoff rate and works on every kernel, inotify on /dev would need a watch per channel
+     * and is not allowed for apps on recent Android versions.
+     */
+    static boolean exists(SerialPortDeviceAddress deviceAddress) {
+        try {
+            return new File(deviceAddress.value()).exists();
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens many serial ports at once with the same {@link Bootstrap}, e.g. all ports of a terminal at
+ * boot. Every device is opened on a thread of its own, so it takes as long as the slowest port
+ * instead of the sum of all, and a port which hangs fails with its connect timeout without holding
+ * up the others.
+ * <pre>
+ * SerialPortBulkConnect ports = SerialPortBulkConnect.connect(bootstrap, addresses);
+ * ports.future().awaitUninterruptibly();
+ * for (Channel channel : ports.channels()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class SerialPortBulkConnect {
+
+    private final Map<SocketAddress, ChannelFuture> futures;
+    private final Promise<Void> future = GlobalEventExecutor.INSTANCE.newPromise();
+
+    private SerialPortBulkConnect(Map<SocketAddress, ChannelFuture> futures) {
+        this.futures = Collections.unmodifiableMap(futures);
+    }
+
+    /**
+     * Connects a channel of {@code bootstrap} to each of {@code addresses}.
+     */
+    public static SerialPortBulkConnect connect(Bootstrap bootstrap, Collection<? extends SocketAddress> addresses) {
+        if (bootstrap == null) {
+            throw new NullPointerException("bootstrap");
+        }
+        if (addresses == null) {
+            throw new NullPointerException("addresses");
+        }
+        Map<SocketAddress, ChannelFuture> futures = new LinkedHashMap<SocketAddress, ChannelFuture>();
+        for (SocketAddress address : addresses) {
+            if (address == null) {
+                throw new NullPointerException("address");
+            }
+            if (!futures.containsKey(address)) {
+                futures.put(address, bootstrap.connect(address));
+            }
+        }
+        final SerialPortBulkConnect connect = new SerialPortBulkConnect(futures);
+        if (futures.isEmpty()) {
+            connect.future.setSuccess(null);
+            return connect;
+        }
+        final AtomicInteger pending = new AtomicInteger(futures.size());
+        ChannelFutureListener listener = new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (pending.decrementAndGet() == 0) {
+                    connect.complete();
+                }
+            }
+        };
+        for (ChannelFuture future : futures.values()) {
+            future.addListener(listener);
+        }
+        return connect;
+    }
+
+    private void complete() {
+        for (ChannelFuture channelFuture : futures.values()) {
+            if (!channelFuture.isSuccess()) {
+                future.setFailure(channelFuture.cause());
+                return;
+            }
+        }
+        future.setSuccess(null);
+    }
+
+    /**
+     * @return a future which completes once every port is either open or failed to open. It fails
+     * with the cause of the first port in order which failed.
+     */
+    public Future<Void> future() {
+        return future;
+    }
+
+    /**
+     * @return the connect future of each port, in the order of the addresses
+     */
+    public Map<SocketAddress, ChannelFuture> futures() {
+        return futures;
+    }
+
+    /**
+     * @return the channels of the ports opened so far, in the order of the addresses
+     */
+    public List<Channel> channels() {
+        List<Channel> channels = new ArrayList<Channel>(futures.size());
+        for (ChannelFuture channelFuture : futures.values()) {
+            if (channelFuture.isSuccess()) {
+                channels.add(channelFuture.channel());
+            }
+        }
+        return channels;
+    }
+}
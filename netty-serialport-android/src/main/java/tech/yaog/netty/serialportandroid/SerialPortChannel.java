@@ -15,42 +15,135 @@
  */
 package tech.yaog.netty.serialportandroid;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.EventLoop;
+import io.netty.channel.FileRegion;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.ThreadPerChannelEventLoop;
 import io.netty.channel.oio.OioByteStreamChannel;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 import tech.yaog.hardwares.serialport.SerialPort;
 
-import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
-import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.BAUD_RATE;
-import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.DATA_BITS;
-import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.PARITY_BIT;
-import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RTS;
-import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.STOP_BITS;
 import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.WAIT_TIME;
 
 /**
  * A channel to a serial device using the RXTX library.
+ * <p>
+ * Registered with an {@link io.netty.channel.oio.OioEventLoopGroup} the event loop thread of the
+ * channel blocks in the reads from the device. Registered with a shared group, e.g. a
+ * {@link io.netty.channel.DefaultEventLoopGroup} which also serves other channels, a small reader
+ * thread of the channel does nothing but move the bytes off the device, and the pipeline runs on the
+ * shared event loop. Writes are done on the event loop in both cases and block only while the tty
+ * buffer is full.
  *
  * @deprecated this transport will be removed in the next major version.
  */
 @Deprecated
 public class SerialPortChannel extends OioByteStreamChannel {
 
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(SerialPortChannel.class);
     private static final SerialPortDeviceAddress LOCAL_ADDRESS = new SerialPortDeviceAddress("localhost");
+    private static final int MAX_GATHERED_BUFFERS = 1024;
+    private static final int FLOW_CONTROL_WRITABILITY = 1;
+    // Queued reads handled per task, so that a busy port leaves the shared event loop to the others.
+    private static final int MAX_QUEUED_READS_PER_TASK = 16;
 
     private final SerialPortChannelConfig config;
+    private final SerialPortChannelMetrics metrics;
+    private final ReconnectBackoff backoff;
+    private final TransmitPacer pacer;
+    private final HalfDuplex halfDuplex;
+    private final QueuedLineSettings lineSettings = new QueuedLineSettings();
 
     private boolean open = true;
     private SerialPortDeviceAddress deviceAddress;
-    private SerialPort serialPort;
+    private volatile SerialPort serialPort;
+    private SerialPortInputStream inputStream;
+    private SerialPortOutputStream outputStream;
+    private int fd = -1;
+    private boolean idleGapPending;
+    private long lastReadNanos;
+    private boolean deviceLost;
+    // Reopening off a shared event loop to apply new settings, the writes wait meanwhile.
+    private boolean reopening;
+    private int lineSettingsApplied;
+    private long nextReconnectNanos;
+    private ModemLineWatcher modemLineWatcher;
+    private boolean hardwareFlowControl;
+    private boolean softwareFlowControl;
+    private boolean transmitStopped;
+    // Written but not confirmed as transmitted yet, still in the outbound buffer.
+    private long unconfirmedBytes;
+    private boolean transmitCheckScheduled;
+    private final Runnable transmitCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            transmitCheckScheduled = false;
+            checkTransmitted();
+        }
+    };
+    private SerialPortReader reader;
+    private boolean readDemand;
+    private final Runnable readQueuedTask = new Runnable() {
+        @Override
+        public void run() {
+            readQueued();
+        }
+    };
+    private final SerialPortReader.Listener readerListener = new SerialPortReader.Listener() {
+        @Override
+        public void readerReady() {
+            try {
+                eventLoop().execute(readQueuedTask);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the channel is closed with its event loop.
+            }
+        }
+    };
+    private final Runnable reconnectTask = new Runnable() {
+        @Override
+        public void run() {
+            if (isOpen() && deviceLost) {
+                reopenLostPort();
+            }
+        }
+    };
+    private final ModemLineWatcher.Listener modemLineListener = new ModemLineWatcher.Listener() {
+        @Override
+        public void modemLinesChanged(SerialPortModemLinesEvent event) {
+            if (hardwareFlowControl && event.hasChanged(SerialPortModemLine.CTS)) {
+                flowControlled(!event.isSet(SerialPortModemLine.CTS));
+            }
+            if (config().isModemLineEvents()) {
+                pipeline().fireUserEventTriggered(event);
+            }
+        }
+    };
 
     public SerialPortChannel() {
         super(null);
 
         config = new DefaultSerialPortChannelConfig(this);
+        metrics = new SerialPortChannelMetrics(this);
+        backoff = new ReconnectBackoff(config);
+        pacer = new TransmitPacer(config);
+        halfDuplex = new HalfDuplex(config);
     }
 
     @Override
@@ -58,34 +151,844 @@ public class SerialPortChannel extends OioByteStreamChannel {
         return config;
     }
 
+    /**
+     * @return the transport counters of this channel
+     */
+    public SerialPortChannelMetrics metrics() {
+        return metrics;
+    }
+
     @Override
     public boolean isOpen() {
         return open;
     }
 
+    @Override
+    public boolean isActive() {
+        // On a shared event loop the streams are left to a stopping reader, see doClose().
+        return open && super.isActive();
+    }
+
     @Override
     protected AbstractUnsafe newUnsafe() {
         return new RxtxUnsafe();
     }
 
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return true;
+    }
+
+    /**
+     * @return true if the channel shares its event loop and reads on a {@link SerialPortReader}
+     */
+    private boolean isSharingEventLoop() {
+        return !(eventLoop() instanceof ThreadPerChannelEventLoop);
+    }
+
     @Override
     protected void doConnect(SocketAddress remoteAddress, SocketAddress localAddress) throws Exception {
         deviceAddress = (SerialPortDeviceAddress) remoteAddress;
     }
 
-    protected void doInit() throws Exception {
-        File device = new File(deviceAddress.value());
-        serialPort = new SerialPort(device,
-                config().getOption(BAUD_RATE),
-                config().getOption(DATA_BITS).value(),
-                config().getOption(PARITY_BIT).value(),
-                config().getOption(STOP_BITS).value(),
-                config().getOption(RTS),
-                false,
-                0
-                );
+    private void openPort() throws IOException {
+        portOpened(SerialPortOpener.open(deviceAddress, config()));
+    }
+
+    /**
+     * Sets up the channel for the freshly opened {@code serialPort}, which is closed again if that fails.
+     */
+    private void portOpened(SerialPort serialPort) throws IOException {
+        this.serialPort = serialPort;
+        boolean success = false;
+        try {
+            if (inputStream != null) {
+                // Reopened after the device was lost, the channel keeps its streams.
+                inputStream.setSource(serialPort.getInputStream());
+                outputStream.setSource(serialPort.getOutputStream());
+            } else {
+                inputStream = new SerialPortInputStream(serialPort.getInputStream(), config().getReadTimeout());
+                outputStream = new SerialPortOutputStream(serialPort.getOutputStream());
+                inputStream.setMetrics(metrics);
+                outputStream.setMetrics(metrics);
+            }
+            fd = nativeFd(serialPort);
+            if (pacer.isEnabled() && fd == -1) {
+                throw new IOException("transmit pacing requires libnetty-serialport");
+            }
+            SerialPortChannelConfig.FlowControl flowControl = config().getFlowControl();
+            if (flowControl != SerialPortChannelConfig.FlowControl.NONE) {
+                if (fd == -1) {
+                    throw new IOException("flow control requires libnetty-serialport");
+                }
+                Native.setFlowControl(fd, flowControl == SerialPortChannelConfig.FlowControl.RTS_CTS,
+                        flowControl == SerialPortChannelConfig.FlowControl.XON_XOFF);
+            }
+            hardwareFlowControl = flowControl == SerialPortChannelConfig.FlowControl.RTS_CTS;
+            softwareFlowControl = flowControl == SerialPortChannelConfig.FlowControl.XON_XOFF;
+            setTransmitStopped(hardwareFlowControl && !isCtsRaised(fd));
+            halfDuplex.open(fd);
+            if ((config().isModemLineEvents() || hardwareFlowControl) && fd != -1) {
+                modemLineWatcher = new ModemLineWatcher(this, fd, modemLineListener);
+                modemLineWatcher.start();
+            }
+            if (isSharingEventLoop()) {
+                // A stream of its own, the reader may outlive the port of the channel for a moment.
+                SerialPortInputStream readerStream =
+                        new SerialPortInputStream(serialPort.getInputStream(), config().getReadTimeout());
+                readerStream.setMetrics(metrics);
+                reader = new SerialPortReader(this, readerStream, readerListener);
+                reader.start();
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                closePort();
+            }
+        }
+    }
+
+    private static boolean isCtsRaised(int fd) {
+        try {
+            return SerialPortModemLine.CTS.isSet(Native.getModemLines(fd));
+        } catch (IOException e) {
+            // No modem lines, nothing holds us back.
+            return true;
+        }
+    }
+
+    /**
+     * Holds back or resumes the writes when the device signals so.
+     */
+    private void flowControlled(boolean stopped) {
+        if (stopped != transmitStopped) {
+            setTransmitStopped(stopped);
+            if (!stopped) {
+                ((RxtxUnsafe) unsafe()).flushPending();
+            }
+        }
+    }
+
+    private void setTransmitStopped(boolean stopped) {
+        transmitStopped = stopped;
+        ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+        if (buffer != null) {
+            buffer.setUserDefinedWritability(FLOW_CONTROL_WRITABILITY, !stopped);
+        }
+    }
+
+    private void closePort() {
+        fd = -1;
+        if (modemLineWatcher != null) {
+            modemLineWatcher.stop();
+            modemLineWatcher = null;
+        }
+        final SerialPort serialPort = this.serialPort;
+        this.serialPort = null;
+        if (reader != null) {
+            // The reader still uses the device, it closes the port once it stopped.
+            reader.stop(new Runnable() {
+                @Override
+                public void run() {
+                    if (serialPort != null) {
+                        serialPort.close();
+                    }
+                }
+            });
+            reader = null;
+        } else if (serialPort != null) {
+            serialPort.close();
+        }
+    }
+
+    /**
+     * @return the descriptor of the port, -1 if {@code libnetty-serialport} is not available
+     */
+    private static int nativeFd(SerialPort serialPort) throws IOException {
+        InputStream source = serialPort.getInputStream();
+        if (!Native.isAvailable() || !(source instanceof FileInputStream)) {
+            return -1;
+        }
+        return Native.getFd(((FileInputStream) source).getFD());
+    }
+
+    @Override
+    protected void doBeginRead() throws Exception {
+        if (!isSharingEventLoop()) {
+            super.doBeginRead();
+            return;
+        }
+        readDemand = true;
+        if (reader != null && reader.isReady()) {
+            eventLoop().execute(readQueuedTask);
+        }
+    }
+
+    /**
+     * Passes what the {@link SerialPortReader} queued down the pipeline, while it asks for more.
+     */
+    private void readQueued() {
+        ChannelPipeline pipeline = pipeline();
+        boolean readSome = false;
+        for (int i = 0; i < MAX_QUEUED_READS_PER_TASK && readDemand && reader != null; i++) {
+            Object msg = reader.poll();
+            if (msg == null) {
+                break;
+            }
+            if (msg instanceof ByteBuf) {
+                ByteBuf buf = (ByteBuf) msg;
+                halfDuplex.stripEcho(buf, buf.readerIndex());
+                if (softwareFlowControl) {
+                    byte control = SoftwareFlowControl.strip(buf, buf.readerIndex());
+                    if (control != 0) {
+                        flowControlled(control == SoftwareFlowControl.XOFF);
+                    }
+                }
+                if (!buf.isReadable()) {
+                    buf.release();
+                    continue;
+                }
+                metrics.recordMessageRead();
+                readDemand = config().isAutoRead();
+                readSome = true;
+                pipeline.fireChannelRead(buf);
+            } else if (msg == SerialPortIdleEvent.INSTANCE) {
+                pipeline.fireUserEventTriggered(msg);
+            } else {
+                if (readSome) {
+                    pipeline.fireChannelReadComplete();
+                }
+                readerLost(((SerialPortReader.Lost) msg).cause);
+                return;
+            }
+        }
+        if (readSome) {
+            pipeline.fireChannelReadComplete();
+        }
+        if (readDemand && reader != null && reader.isReady()) {
+            eventLoop().execute(readQueuedTask);
+        }
+    }
+
+    private void readerLost(IOException cause) {
+        if (config().isAutoReconnect() && isOpen()) {
+            deviceLost(cause);
+            return;
+        }
+        if (cause != null) {
+            pipeline().fireExceptionCaught(cause);
+        }
+        unsafe().close(voidPromise());
+    }
+
+    @Override
+    protected void doRead() {
+        if (!deviceLost) {
+            // Sizes the first buffer, which is allocated before blocking for data.
+            readHandle().available(available());
+        }
+        super.doRead();
+    }
+
+    @Override
+    protected int doReadBytes(ByteBuf buf) throws Exception {
+        if (deviceLost) {
+            reconnect();
+            return 0;
+        }
+        if (idleGapPending && !awaitIdleGap()) {
+            return 0;
+        }
+        // Taken on every read, a changed timeout applies to an active channel too.
+        inputStream.setReadTimeout(config().getReadTimeout());
+        int localRead;
+        try {
+            if (buf.hasArray() || buf.nioBufferCount() != 1 || !inputStream.isDirectReadSupported()) {
+                localRead = super.doReadBytes(buf);
+            } else {
+                localRead = doReadDirectBytes(buf);
+            }
+        } catch (IOException e) {
+            if (!config().isAutoReconnect() || !isOpen()) {
+                throw e;
+            }
+            deviceLost(e);
+            return 0;
+        }
+        if (localRead < 0 && config().isAutoReconnect() && isOpen()) {
+            deviceLost(null);
+            return 0;
+        }
+        if (localRead > 0) {
+            int start = buf.writerIndex() - localRead;
+            halfDuplex.stripEcho(buf, start);
+            if (softwareFlowControl) {
+                byte control = SoftwareFlowControl.strip(buf, start);
+                if (control != 0) {
+                    flowControlled(control == SoftwareFlowControl.XOFF);
+                }
+            }
+            localRead = buf.writerIndex() - start;
+        }
+        if (localRead > 0 && buf.readableBytes() == localRead) {
+            // First data in a fresh buffer, every buffer passed down the pipeline starts like this.
+            metrics.recordMessageRead();
+        }
+        if (localRead > 0 && config().getIdleGapMicros() > 0) {
+            lastReadNanos = System.nanoTime();
+            idleGapPending = true;
+        }
+        return localRead;
+    }
+
+    private int doReadDirectBytes(ByteBuf buf) throws Exception {
+        final RecvByteBufAllocator.Handle allocHandle = unsafe().recvBufAllocHandle();
+        allocHandle.attemptedBytesRead(Math.max(1, Math.min(available(), buf.maxWritableBytes())));
+        buf.ensureWritable(allocHandle.attemptedBytesRead());
+        int writerIndex = buf.writerIndex();
+        int localRead = inputStream.read(buf.internalNioBuffer(writerIndex, allocHandle.attemptedBytesRead()));
+        if (localRead > 0) {
+            buf.writerIndex(writerIndex + localRead);
+        }
+        return localRead;
+    }
+
+    /**
+     * Waits until either more data arrives or the line was silent for the idle gap since the last
+     * read, which is then signalled with {@link SerialPortIdleEvent#INSTANCE}.
+     *
+     * @return false if the idle gap elapsed
+     */
+    private boolean awaitIdleGap() throws IOException {
+        long idleGapNanos = TimeUnit.MICROSECONDS.toNanos(config().getIdleGapMicros());
+        if (idleGapNanos == 0) {
+            idleGapPending = false;
+            return true;
+        }
+        long remaining = lastReadNanos + idleGapNanos - System.nanoTime();
+        if (inputStream.awaitReadable(Math.max(0, remaining))) {
+            return true;
+        }
+        idleGapPending = false;
+        pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        return false;
+    }
+
+    /**
+     * Closes the port after the device went away and lets the reader try to reopen it, see
+     * {@link #reconnect()}.
+     */
+    private void deviceLost(Throwable cause) {
+        logger.debug("Lost serial device {}", deviceAddress, cause);
+        deviceLost = true;
+        idleGapPending = false;
+        closePort();
+        scheduleReconnect();
+        pipeline().fireUserEventTriggered(SerialPortDeviceEvent.LOST);
+    }
+
+    /**
+     * Sets the time of the next attempt to reopen the device. On a shared event loop, which has no
+     * read loop of the channel to wait in, the attempt is scheduled there.
+     */
+    private void scheduleReconnect() {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(backoff.nextDelayMillis());
+        nextReconnectNanos = System.nanoTime() + delayNanos;
+        if (isSharingEventLoop()) {
+            eventLoop().schedule(reconnectTask, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Runs on the read loop while the device is lost: sleeps until the next attempt, in slices of the
+     * read timeout so that the loop still notices the channel being closed, then tries to reopen the
+     * device.
+     */
+    private void reconnect() {
+        long remaining = nextReconnectNanos - System.nanoTime();
+        if (remaining > 0) {
+            int readTimeout = config().getReadTimeout();
+            if (readTimeout > 0) {
+                remaining = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(readTimeout));
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        reopenLostPort();
+    }
+
+    /**
+     * Reopens the device once its node is back and flushes whatever was written in the meantime,
+     * otherwise schedules the next attempt. On a shared event loop the device is opened off the loop,
+     * one which hangs while reopened must not hold up the other channels.
+     */
+    private void reopenLostPort() {
+        if (!ReconnectBackoff.exists(deviceAddress)) {
+            scheduleReconnect();
+            return;
+        }
+        if (isSharingEventLoop()) {
+            SerialPortOpener.openAsync(this, deviceAddress, config(), new SerialPortOpener.Callback() {
+                @Override
+                public void opened(SerialPort serialPort) {
+                    if (!isOpen()) {
+                        serialPort.close();
+                        return;
+                    }
+                    try {
+                        portOpened(serialPort);
+                        portRestored();
+                    } catch (IOException e) {
+                        failed(e);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable cause) {
+                    logger.debug("Failed to reopen serial device {}", deviceAddress, cause);
+                    if (isOpen()) {
+                        scheduleReconnect();
+                    }
+                }
+            });
+            return;
+        }
+        try {
+            openPort();
+            portRestored();
+            return;
+        } catch (IOException e) {
+            logger.debug("Failed to reopen serial device {}", deviceAddress, e);
+        } catch (SecurityException e) {
+            logger.debug("Failed to reopen serial device {}", deviceAddress, e);
+        }
+        scheduleReconnect();
+    }
+
+    private void portRestored() {
+        deviceLost = false;
+        backoff.reset();
+        metrics.recordReconnect();
+        pipeline().fireUserEventTriggered(SerialPortDeviceEvent.RESTORED);
+        ((RxtxUnsafe) unsafe()).flushPending();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        if (deviceLost || reopening || transmitStopped) {
+            // Stays queued until the device is back or lets us send again.
+            return;
+        }
+        if (transmitCheckScheduled) {
+            // Continued by the check.
+            return;
+        }
+        int messages = in.size();
+        long bytesWritten = metrics.bytesWritten();
+        lineSettingsApplied = 0;
+        try {
+            if (!in.isEmpty() && !isSharingEventLoop()) {
+                halfDuplex.beginTransmit(fd);
+            }
+            doWrite0(in);
+            if (halfDuplex.isTransmitting() && in.isEmpty()) {
+                if (isSharingEventLoop()) {
+                    // Turns the bus around once the tty transmitted the rest.
+                    scheduleTransmitCheck(pacer.drainNanos(Native.outputQueue(fd), 0));
+                } else {
+                    // Turns the bus around once the last stop bit left.
+                    Native.drain(fd);
+                    halfDuplex.endTransmit(fd);
+                }
+            }
+        } catch (IOException e) {
+            if (!config().isAutoReconnect() || !isOpen()) {
+                throw e;
+            }
+            deviceLost(e);
+        } finally {
+            halfDuplex.transmitted(metrics.bytesWritten() - bytesWritten);
+            metrics.recordMessagesWritten(messages - in.size() - lineSettingsApplied);
+        }
+    }
+
+    private void doWrite0(ChannelOutboundBuffer in) throws Exception {
+        final int maxBytesPerGatheringWrite = config().getMaxBytesPerGatheringWrite();
+        final boolean paced = fd != -1 && pacer.isEnabled();
+        final boolean gathering = paced
+                || maxBytesPerGatheringWrite != 0 && outputStream.isGatheringWriteSupported();
+        final int maxCount = maxBytesPerGatheringWrite == 0 ? 1 : MAX_GATHERED_BUFFERS;
+        final long maxBytes = maxBytesPerGatheringWrite == 0 ? Long.MAX_VALUE : maxBytesPerGatheringWrite;
+        for (;;) {
+            Object msg = in.current();
+            if (msg == null) {
+                if (flushLineSettings(in)) {
+                    continue;
+                }
+                // nothing left to write
+                break;
+            }
+            if (msg instanceof LineSettings) {
+                lineSettingsApplied++;
+                applyLineSettings(in, (LineSettings) msg);
+                if (reopening) {
+                    // Continued once the port is open again.
+                    return;
+                }
+                continue;
+            }
+            if (isSharingEventLoop()) {
+                long beginTransmitNanos = halfDuplex.beginTransmitNanos(fd);
+                if (beginTransmitNanos > 0) {
+                    // The transceiver does not drive the bus yet, continue once it does.
+                    scheduleTransmitCheck(beginTransmitNanos);
+                    return;
+                }
+            }
+            if (!gathering || !(msg instanceof ByteBuf)) {
+                writeMessage(in, msg);
+                continue;
+            }
+            long allowance;
+            if (!paced) {
+                allowance = Long.MAX_VALUE;
+            } else if (isSharingEventLoop()) {
+                allowance = pacer.allowance(fd);
+                if (allowance == 0) {
+                    // The tty holds enough, continue once it transmitted some of it.
+                    scheduleTransmitCheck(pacer.drainNanos(pacer.queueLimit(), pacer.queueLimit() - 1));
+                    return;
+                }
+            } else {
+                allowance = awaitTransmitAllowance();
+            }
+            ByteBuffer[] nioBuffers = in.nioBuffers(maxCount, Math.min(maxBytes, allowance));
+            int nioBufferCount = in.nioBufferCount();
+            if (nioBufferCount == 0) {
+                // Empty buffer.
+                in.remove();
+                continue;
+            }
+            long written;
+            ByteBuffer first = nioBuffers[0];
+            if (first.remaining() > allowance) {
+                // Only the first buffer can exceed the limit passed to nioBuffers(), hand over a part of it.
+                int limit = first.limit();
+                first.limit(first.position() + (int) allowance);
+                try {
+                    written = outputStream.write(nioBuffers, 0, 1);
+                } finally {
+                    first.limit(limit);
+                }
+            } else {
+                written = outputStream.write(nioBuffers, 0, nioBufferCount);
+            }
+            pacer.written();
+            if (paced && config().isTransmitComplete()) {
+                if (isSharingEventLoop()) {
+                    // Completed once the tty transmitted it, nothing more is written until then.
+                    unconfirmedBytes = written;
+                    scheduleTransmitCheck(pacer.drainNanos(written, 0));
+                    return;
+                }
+                long start = System.nanoTime();
+                Native.drain(fd);
+                metrics.recordWriteWait(System.nanoTime() - start);
+            }
+            in.removeBytes(written);
+        }
+    }
+
+    /**
+     * Writes {@code msg} completely, like {@link OioByteStreamChannel} does.
+     */
+    private void writeMessage(ChannelOutboundBuffer in, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) msg;
+            int readableBytes = buf.readableBytes();
+            while (readableBytes > 0) {
+                doWriteBytes(buf);
+                int newReadableBytes = buf.readableBytes();
+                in.progress(readableBytes - newReadableBytes);
+                readableBytes = newReadableBytes;
+            }
+        } else {
+            FileRegion region = (FileRegion) msg;
+            long transferred = region.transferred();
+            doWriteFileRegion(region);
+            in.progress(region.transferred() - transferred);
+        }
+        in.remove();
+    }
+
+    private void scheduleTransmitCheck(long delayNanos) {
+        if (!transmitCheckScheduled) {
+            transmitCheckScheduled = true;
+            eventLoop().schedule(transmitCheckTask, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Completes the unconfirmed writes once the tty transmitted them, or resumes writing once it
+     * holds less than {@link SerialPortChannelConfig#getTransmitQueueMicros()}, on a shared event
+     * loop. Drops RTS of an RS-485 transceiver once everything was transmitted. Like
+     * {@link EpollSerialPortChannel} it never blocks there, each wait is another scheduled check.
+     */
+    private void checkTransmitted() {
+        if (fd == -1) {
+            return;
+        }
+        try {
+            ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+            boolean turnAround = halfDuplex.isTransmitting() && (buffer == null || buffer.isEmpty());
+            long remaining = unconfirmedBytes > 0 || turnAround ? 0 : pacer.queueLimit() - 1;
+            int queued = Native.outputQueue(fd);
+            if (queued > remaining) {
+                scheduleTransmitCheck(pacer.drainNanos(queued, remaining));
+                return;
+            }
+            if (unconfirmedBytes > 0 || turnAround) {
+                // Only the hardware FIFO of the UART is left, which tcdrain(3) would wait for.
+                long transmitterNanos = pacer.transmitterNanos(fd);
+                if (transmitterNanos > 0) {
+                    scheduleTransmitCheck(transmitterNanos);
+                    return;
+                }
+                confirmTransmitted();
+            }
+            if (turnAround) {
+                long endTransmitNanos = halfDuplex.endTransmitNanos(fd);
+                if (endTransmitNanos > 0) {
+                    scheduleTransmitCheck(endTransmitNanos);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (config().isAutoReconnect()) {
+                deviceLost(e);
+            } else {
+                pipeline().fireExceptionCaught(e);
+                unsafe().close(voidPromise());
+            }
+            return;
+        }
+        ((RxtxUnsafe) unsafe()).flushPending();
+    }
+
+    private void confirmTransmitted() {
+        ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+        if (buffer != null && unconfirmedBytes > 0) {
+            int messages = buffer.size();
+            buffer.removeBytes(unconfirmedBytes);
+            metrics.recordMessagesWritten(messages - buffer.size());
+            flushLineSettings(buffer);
+        }
+        unconfirmedBytes = 0;
+    }
+
+    /**
+     * Blocks until the tty holds less than {@link SerialPortChannelConfig#getTransmitQueueMicros()},
+     * on a thread of the channel's own.
+     *
+     * @return the number of bytes which may be handed to it
+     */
+    private long awaitTransmitAllowance() throws IOException {
+        long limit = pacer.queueLimit();
+        if (limit == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        for (;;) {
+            int queued = Native.outputQueue(fd);
+            if (queued < limit) {
+                return limit - queued;
+            }
+            long start = System.nanoTime();
+            try {
+                TimeUnit.NANOSECONDS.sleep(pacer.drainNanos(queued, limit - 1));
+            } catch (InterruptedException e) {
+                // Shutting down, no more pacing.
+                Thread.currentThread().interrupt();
+                return limit;
+            } finally {
+                metrics.recordWriteWait(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Queues changed line settings behind the writes so far, like {@link EpollSerialPortChannel}. They
+     * are applied once everything before them was handed to the tty, which then transmits its buffer
+     * with the old settings first, also when flow control or a lost device holds the writes back.
+     * Writes which were not flushed yet are not flushed for them, the settings go out with the next
+     * flush.
+     */
+    void lineSettingsChanged(final LineSettings settings) {
+        if (!isActive()) {
+            // Applied when the port is opened.
+            return;
+        }
+        if (eventLoop().inEventLoop()) {
+            writeLineSettings(settings);
+        } else {
+            eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeLineSettings(settings);
+                }
+            });
+        }
+    }
+
+    private void writeLineSettings(LineSettings settings) {
+        ChannelOutboundBuffer in = unsafe().outboundBuffer();
+        if (isActive() && in != null) {
+            // Added directly, filterOutboundMessage() only takes bytes and file regions.
+            lineSettings.add(in, settings, voidPromise());
+            if (flushLineSettings(in)) {
+                ((RxtxUnsafe) unsafe()).flushPending();
+            }
+        }
+    }
+
+    /**
+     * Flushes the queued line settings if no unflushed write comes before them, see
+     * {@link QueuedLineSettings}.
+     */
+    private boolean flushLineSettings(ChannelOutboundBuffer in) {
+        int flushed = lineSettings.flush(in);
+        // Not among the messages doWrite() started with.
+        lineSettingsApplied -= flushed;
+        return flushed > 0;
+    }
 
-        activate(new SerialPortInputStream(serialPort.getInputStream()), serialPort.getOutputStream());
+    private void applyLineSettings(ChannelOutboundBuffer in, LineSettings settings) throws IOException {
+        try {
+            int fd = nativeFd(serialPort);
+            if (fd != -1) {
+                settings.apply(fd);
+            } else {
+                reopenPort();
+            }
+            in.remove();
+            lineSettings.removed();
+        } catch (IOException e) {
+            if (serialPort == null) {
+                // Failed to reopen.
+                throw e;
+            }
+            in.remove(e);
+            lineSettings.removed();
+        }
+    }
+
+    /**
+     * Raises or drops an output line at once.
+     */
+    void modemLineChanged(final SerialPortModemLine line, final boolean raised) {
+        if (!isActive()) {
+            // Applied when the port is opened.
+            return;
+        }
+        if (eventLoop().inEventLoop()) {
+            applyModemLine(line, raised);
+        } else {
+            eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    applyModemLine(line, raised);
+                }
+            });
+        }
+    }
+
+    private void applyModemLine(SerialPortModemLine line, boolean raised) {
+        if (!isActive() || deviceLost || reopening) {
+            // Applied when the port is reopened.
+            return;
+        }
+        try {
+            int fd = nativeFd(serialPort);
+            if (fd != -1) {
+                Native.setModemLines(fd, raised ? line.mask() : 0, raised ? 0 : line.mask());
+            } else {
+                reopenPort();
+            }
+        } catch (IOException e) {
+            reconfigureFailed(e);
+        }
+    }
+
+    /**
+     * Reopens the port with the current configuration, only the serial port library can configure
+     * the device without {@code libnetty-serialport}. On a shared event loop the device is opened off
+     * the loop and the writes wait until it is back.
+     */
+    private void reopenPort() throws IOException {
+        closePort();
+        if (!isSharingEventLoop()) {
+            openPort();
+            return;
+        }
+        reopening = true;
+        SerialPortOpener.openAsync(this, deviceAddress, config(), new SerialPortOpener.Callback() {
+            @Override
+            public void opened(SerialPort serialPort) {
+                reopening = false;
+                if (!isOpen()) {
+                    serialPort.close();
+                    return;
+                }
+                try {
+                    portOpened(serialPort);
+                } catch (IOException e) {
+                    reconfigureFailed(e);
+                    return;
+                }
+                ((RxtxUnsafe) unsafe()).flushPending();
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+                reopening = false;
+                if (isOpen()) {
+                    reconfigureFailed(cause instanceof IOException ? (IOException) cause : new IOException(cause));
+                }
+            }
+        });
+    }
+
+    private void reconfigureFailed(IOException cause) {
+        pipeline().fireExceptionCaught(cause);
+        if (serialPort == null) {
+            // Failed to reopen.
+            if (config().isAutoReconnect()) {
+                deviceLost(cause);
+            } else {
+                unsafe().close(voidPromise());
+            }
+        }
+    }
+
+    /**
+     * Reads the modem lines of the port. Can be called from any thread.
+     *
+     * @return the state of the lines, see {@link SerialPortModemLine#mask()}
+     * @throws IOException if the port is not open or {@code libnetty-serialport} is not available
+     */
+    public int modemLines() throws IOException {
+        SerialPort serialPort = this.serialPort;
+        if (serialPort == null) {
+            throw new IOException("serial port not open");
+        }
+        int fd = nativeFd(serialPort);
+        if (fd == -1) {
+            throw new IOException("reading the modem lines requires libnetty-serialport");
+        }
+        return Native.getModemLines(fd);
     }
 
     @Override
@@ -121,13 +1024,25 @@ public class SerialPortChannel extends OioByteStreamChannel {
     @Override
     protected void doClose() throws Exception {
         open = false;
+        if (modemLineWatcher != null) {
+            // Before the streams are closed, the watcher uses the descriptor.
+            modemLineWatcher.stop();
+            modemLineWatcher = null;
+        }
+        if (reader != null) {
+            // The reader however reads from the device itself, closing the streams would close it
+            // under a read. It closes the port once it stopped, and the streams with it.
+            closePort();
+            inputStream = null;
+            outputStream = null;
+            return;
+        }
         try {
            super.doClose();
         } finally {
-            if (serialPort != null) {
-                serialPort.close();
-                serialPort = null;
-            }
+            closePort();
+            inputStream = null;
+            outputStream = null;
         }
     }
 
@@ -141,7 +1056,57 @@ public class SerialPortChannel extends OioByteStreamChannel {
         return newFailedFuture(new UnsupportedOperationException("shutdownInput"));
     }
 
+    /**
+     * @return the receive handle of the channel, see {@link ReadHandle}
+     */
+    ReadHandle readHandle() {
+        return (ReadHandle) unsafe().recvBufAllocHandle();
+    }
+
+    /**
+     * Wraps the handle of the configured {@link RecvByteBufAllocator}. It allocates direct buffers
+     * from the configured allocator while {@link SerialPortChannelConfig#isDirectBuffer()} is set,
+     * whatever allocator that is, and tells a {@link SerialPortRecvByteBufAllocator} what the tty
+     * holds.
+     */
+    static final class ReadHandle extends RecvByteBufAllocator.DelegatingHandle {
+        private final SerialPortChannelConfig config;
+
+        ReadHandle(RecvByteBufAllocator.Handle delegate, SerialPortChannelConfig config) {
+            super(delegate);
+            this.config = config;
+        }
+
+        @Override
+        public ByteBuf allocate(ByteBufAllocator alloc) {
+            return config.isDirectBuffer() ? alloc.directBuffer(guess()) : super.allocate(alloc);
+        }
+
+        /**
+         * Tells how many bytes the tty holds for the next read cycle.
+         */
+        void available(int available) {
+            if (delegate() instanceof SerialPortRecvByteBufAllocator.SerialHandle) {
+                ((SerialPortRecvByteBufAllocator.SerialHandle) delegate()).available(available);
+            }
+        }
+    }
+
     private final class RxtxUnsafe extends AbstractUnsafe {
+        private ReadHandle readHandle;
+
+        @Override
+        public RecvByteBufAllocator.Handle recvBufAllocHandle() {
+            if (readHandle == null) {
+                readHandle = new ReadHandle(super.recvBufAllocHandle(), config());
+            }
+            return readHandle;
+        }
+
+        void flushPending() {
+            flush0();
+        }
+
         @Override
         public void connect(
                 final SocketAddress remoteAddress,
@@ -159,29 +1124,54 @@ public class SerialPortChannel extends OioByteStreamChannel {
                     eventLoop().schedule(new Runnable() {
                         @Override
                         public void run() {
-                            try {
-                                doInit();
-                                safeSetSuccess(promise);
-                                if (!wasActive && isActive()) {
-                                    pipeline().fireChannelActive();
-                                }
-                            } catch (Throwable t) {
-                                safeSetFailure(promise, t);
-                                closeIfClosed();
-                            }
+                            open(wasActive, promise);
                         }
                    }, waitTime, TimeUnit.MILLISECONDS);
                 } else {
-                    doInit();
-                    safeSetSuccess(promise);
-                    if (!wasActive && isActive()) {
-                        pipeline().fireChannelActive();
-                    }
+                    open(wasActive, promise);
                 }
             } catch (Throwable t) {
                 safeSetFailure(promise, t);
                 closeIfClosed();
             }
         }
+
+        /**
+         * Opens the device off the event loop and activates the channel once it is open.
+         */
+        private void open(final boolean wasActive, final ChannelPromise promise) {
+            SerialPortOpener.openAsync(SerialPortChannel.this, deviceAddress, config(), new SerialPortOpener.Callback() {
+                @Override
+                public void opened(SerialPort serialPort) {
+                    if (!isOpen()) {
+                        // Closed in the meantime.
+                        serialPort.close();
+                        safeSetFailure(promise, new ClosedChannelException());
+                        return;
+                    }
+                    try {
+                        portOpened(serialPort);
+                        activate(inputStream, outputStream);
+                        safeSetSuccess(promise);
+                        if (!wasActive && isActive()) {
+                            pipeline().fireChannelActive();
+                        }
+                    } catch (Throwable t) {
+                        safeSetFailure(promise, t);
+                        closeIfClosed();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable cause) {
+                    safeSetFailure(promise, cause);
+                    if (cause instanceof ConnectTimeoutException) {
+                        close(voidPromise());
+                    } else {
+                        closeIfClosed();
+                    }
+                }
+            });
+        }
     }
 }
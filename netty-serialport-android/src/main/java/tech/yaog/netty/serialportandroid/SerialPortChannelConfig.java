@@ -47,9 +47,55 @@ import tech.yaog.hardwares.serialport.SerialPort;
  * <td>{@link SerialPortChannelOption#PARITY_BIT}</td><td>{@link #setParitybit(Paritybit)}</td>
  * </tr><tr>
  * <td>{@link SerialPortChannelOption#WAIT_TIME}</td><td>{@link #setWaitTimeMillis(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#READ_TIMEOUT}</td><td>{@link #setReadTimeout(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#DIRECT_BUFFER}</td><td>{@link #setDirectBuffer(boolean)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#MAX_BYTES_PER_GATHERING_WRITE}</td>
+ * <td>{@link #setMaxBytesPerGatheringWrite(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#IDLE_GAP_MICROS}</td><td>{@link #setIdleGapMicros(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#AUTO_RECONNECT}</td><td>{@link #setAutoReconnect(boolean)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#RECONNECT_MIN_DELAY}</td><td>{@link #setReconnectMinDelayMillis(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#RECONNECT_MAX_DELAY}</td><td>{@link #setReconnectMaxDelayMillis(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#MODEM_LINE_EVENTS}</td><td>{@link #setModemLineEvents(boolean)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#FLOW_CONTROL}</td><td>{@link #setFlowControl(FlowControl)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#TRANSMIT_COMPLETE}</td><td>{@link #setTransmitComplete(boolean)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#TRANSMIT_QUEUE_MICROS}</td><td>{@link #setTransmitQueueMicros(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#RS485}</td><td>{@link #setRs485(boolean)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#RS485_DELAY_BEFORE_SEND}</td><td>{@link #setRs485DelayBeforeSendBits(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#RS485_DELAY_AFTER_SEND}</td><td>{@link #setRs485DelayAfterSendBits(int)}</td>
+ * </tr><tr>
+ * <td>{@link SerialPortChannelOption#RS485_ECHO}</td><td>{@link #setRs485Echo(boolean)}</td>
  * </tr>
  * </table>
  *
+ * <h3>Changing line settings</h3>
+ *
+ * Baud rate, data bits, parity and stop bits can be changed on an active channel, e.g. to switch to
+ * a faster rate after a handshake. The change is applied through termios without reopening the
+ * port, once everything flushed before it has been transmitted with the old settings. Writes flushed
+ * afterwards use the new settings. Without {@code libnetty-serialport} the {@link SerialPortChannel}
+ * reopens the port instead. The same goes for DTR and RTS, which are raised or dropped at once.
+ *
+ * <h3>Opening the device</h3>
+ *
+ * The device is opened on a thread of its own, {@link SerialPortChannelOption#WAIT_TIME} after the
+ * connect, and not on the event loop, which goes on serving its other channels meanwhile. Connecting
+ * fails with a {@link io.netty.channel.ConnectTimeoutException} if the device is not open within
+ * {@link #getConnectTimeoutMillis()}. {@link SerialPortBulkConnect} opens many ports at once.
+ *
  * @deprecated this transport will be removed in the next major version.
  */
 @Deprecated
@@ -58,26 +104,35 @@ public interface SerialPortChannelConfig extends ChannelConfig {
         /**
          * 1 stop bit will be sent at the end of every character
          */
-        STOPBITS_1(SerialPort.STOP_BIT_1),
+        STOPBITS_1(SerialPort.STOP_BIT_1, 1),
         /**
          * 2 stop bits will be sent at the end of every character
          */
-        STOPBITS_2(SerialPort.STOP_BIT_2);
+        STOPBITS_2(SerialPort.STOP_BIT_2, 2);
 //        /**
 //         * 1.5 stop bits will be sent at the end of every character
 //         */
 //        STOPBITS_1_5(SerialPort.STOPBITS_1_5);
 
         private final int value;
+        private final int bits;
 
-        Stopbits(int value) {
+        Stopbits(int value, int bits) {
             this.value = value;
+            this.bits = bits;
         }
 
         public int value() {
             return value;
         }
 
+        /**
+         * @return the number of stop bits
+         */
+        public int bits() {
+            return bits;
+        }
+
         public static Stopbits valueOf(int value) {
             for (Stopbits stopbit : Stopbits.values()) {
                 if (stopbit.value == value) {
@@ -92,30 +147,39 @@ public interface SerialPortChannelConfig extends ChannelConfig {
         /**
          * 5 data bits will be used for each character (ie. Baudot code)
          */
-        DATABITS_5(SerialPort.CSIZE_5),
+        DATABITS_5(SerialPort.CSIZE_5, 5),
         /**
          * 6 data bits will be used for each character
          */
-        DATABITS_6(SerialPort.CSIZE_6),
+        DATABITS_6(SerialPort.CSIZE_6, 6),
         /**
          * 7 data bits will be used for each character (ie. ASCII)
          */
-        DATABITS_7(SerialPort.CSIZE_7),
+        DATABITS_7(SerialPort.CSIZE_7, 7),
         /**
          * 8 data bits will be used for each character (ie. binary data)
          */
-        DATABITS_8(SerialPort.CSIZE_8);
+        DATABITS_8(SerialPort.CSIZE_8, 8);
 
         private final int value;
+        private final int bits;
 
-        Databits(int value) {
+        Databits(int value, int bits) {
             this.value = value;
+            this.bits = bits;
         }
 
         public int value() {
             return value;
         }
 
+        /**
+         * @return the number of data bits
+         */
+        public int bits() {
+            return bits;
+        }
+
         public static Databits valueOf(int value) {
             for (Databits databit : Databits.values()) {
                 if (databit.value == value) {
@@ -130,17 +194,17 @@ public interface SerialPortChannelConfig extends ChannelConfig {
         /**
          * No parity bit will be sent with each data character at all
          */
-        NONE(SerialPort.PARITY_NONE),
+        NONE(SerialPort.PARITY_NONE, 0),
         /**
          * An odd parity bit will be sent with each data character, ie. will be set
          * to 1 if the data character contains an even number of bits set to 1.
          */
-        ODD(SerialPort.PARITY_ODD),
+        ODD(SerialPort.PARITY_ODD, 1),
         /**
          * An even parity bit will be sent with each data character, ie. will be set
          * to 1 if the data character contains an odd number of bits set to 1.
          */
-        EVEN(SerialPort.PARITY_EVEN),
+        EVEN(SerialPort.PARITY_EVEN, 1),
 //        /**
 //         * A mark parity bit (ie. always 1) will be sent with each data character
 //         */
@@ -148,18 +212,27 @@ public interface SerialPortChannelConfig extends ChannelConfig {
         /**
          * A space parity bit (ie. always 0) will be sent with each data character
          */
-        SPACE(SerialPort.PARITY_SPACE);
+        SPACE(SerialPort.PARITY_SPACE, 1);
 
         private final int value;
+        private final int bits;
 
-        Paritybit(int value) {
+        Paritybit(int value, int bits) {
             this.value = value;
+            this.bits = bits;
         }
 
         public int value() {
             return value;
         }
 
+        /**
+         * @return the number of parity bits sent with each character
+         */
+        public int bits() {
+            return bits;
+        }
+
         public static Paritybit valueOf(int value) {
             for (Paritybit paritybit : Paritybit.values()) {
                 if (paritybit.value == value) {
@@ -169,6 +242,24 @@ public interface SerialPortChannelConfig extends ChannelConfig {
             throw new IllegalArgumentException("unknown " + Paritybit.class.getSimpleName() + " value: " + value);
         }
     }
+
+    enum FlowControl {
+        /**
+         * No flow control
+         */
+        NONE,
+        /**
+         * Hardware flow control, the device stops us with CTS and we stop it with RTS
+         */
+        RTS_CTS,
+        /**
+         * Software flow control, the device stops us with XOFF and resumes us with XON, and the
+         * kernel sends those itself when the input buffer runs full. Received XON and XOFF bytes are
+         * removed from the data, so this is only suited to text protocols.
+         */
+        XON_XOFF
+    }
+
     /**
      * Sets the baud rate (ie. bits per second) for communication with the serial device.
      * The baud rate will include bits for framing (in the form of stop bits and parity),
@@ -265,7 +356,8 @@ public interface SerialPortChannelConfig extends ChannelConfig {
     SerialPortChannelConfig setWaitTimeMillis(int waitTimeMillis);
 
     /**
-     * Sets the maximal time (in ms) to block while try to read from the serial port. Default is 1000ms
+     * Sets the maximal time (in ms) to block while try to read from the serial port. Default is 1000ms.
+     * A value of 0 blocks until data arrives. An active channel uses it from its next read on.
      */
     SerialPortChannelConfig setReadTimeout(int readTimeout);
 
@@ -274,6 +366,200 @@ public interface SerialPortChannelConfig extends ChannelConfig {
      */
     int getReadTimeout();
 
+    /**
+     * Sets whether received data is read straight from the device into direct buffers instead of
+     * heap buffers. The receive buffers are then taken from {@link ByteBufAllocator#directBuffer(int)}
+     * of the configured allocator, which is left as it is: set
+     * {@link io.netty.channel.ChannelOption#ALLOCATOR} to e.g.
+     * {@link io.netty.buffer.PooledByteBufAllocator#DEFAULT} to pool them. This affects
+     * {@link SerialPortChannel}, {@link EpollSerialPortChannel} always reads into direct buffers.
+     * Default is false.
+     */
+    SerialPortChannelConfig setDirectBuffer(boolean directBuffer);
+
+    /**
+     * @return true if received data is read into direct buffers
+     */
+    boolean isDirectBuffer();
+
+    /**
+     * Sets the maximal number of bytes of consecutive pending buffers that are gathered into a
+     * single write on flush, so that e.g. header, body and CRC leave the UART without idle gaps.
+     * A value of 0 writes every buffer on its own. Default is 4096.
+     *
+     * @throws IllegalArgumentException if the supplied value is &lt; 0
+     */
+    SerialPortChannelConfig setMaxBytesPerGatheringWrite(int maxBytesPerGatheringWrite);
+
+    /**
+     * @return The maximal number of bytes gathered into a single write
+     */
+    int getMaxBytesPerGatheringWrite();
+
+    /**
+     * Sets the time (in µs) the line has to stay silent after received data before the channel
+     * fires {@link SerialPortIdleEvent#INSTANCE}. A value of 0 disables the event. Default is 0.
+     *
+     * @throws IllegalArgumentException if the supplied value is &lt; 0
+     */
+    SerialPortChannelConfig setIdleGapMicros(int idleGapMicros);
+
+    /**
+     * @return The silence (in µs) after which {@link SerialPortIdleEvent#INSTANCE} is fired, 0 if disabled
+     */
+    int getIdleGapMicros();
+
+    /**
+     * Sets whether the channel survives its device going away, e.g. a USB adapter being reset or
+     * unplugged. Instead of closing, the channel fires {@link SerialPortDeviceEvent#LOST} and reopens
+     * the device with the same settings once it is back, then fires
+     * {@link SerialPortDeviceEvent#RESTORED}. The pipeline stays as it is and writes are queued in
+     * between. Default is false.
+     */
+    SerialPortChannelConfig setAutoReconnect(boolean autoReconnect);
+
+    /**
+     * @return true if the channel reopens its device when it went away
+     */
+    boolean isAutoReconnect();
+
+    /**
+     * Sets the time (in ms) before the first attempt to reopen a lost device. The delay doubles
+     * after every failed attempt. Default is 10ms.
+     *
+     * @throws IllegalArgumentException if the supplied value is &lt;= 0
+     */
+    SerialPortChannelConfig setReconnectMinDelayMillis(int reconnectMinDelayMillis);
+
+    /**
+     * @return The time (in ms) before the first attempt to reopen a lost device
+     */
+    int getReconnectMinDelayMillis();
+
+    /**
+     * Sets the maximal time (in ms) between two attempts to reopen a lost device. Default is 1000ms.
+     *
+     * @throws IllegalArgumentException if the supplied value is &lt;= 0
+     */
+    SerialPortChannelConfig setReconnectMaxDelayMillis(int reconnectMaxDelayMillis);
+
+    /**
+     * @return The maximal time (in ms) between two attempts to reopen a lost device
+     */
+    int getReconnectMaxDelayMillis();
+
+    /**
+     * Sets whether changes of the input modem lines CTS, DSR, DCD and RI are fired as
+     * {@link SerialPortModemLinesEvent}s. The kernel reports them as they happen, through a thread
+     * per channel blocked in TIOCMIWAIT. Needs {@code libnetty-serialport} and a driver supporting
+     * TIOCMIWAIT, takes effect when the port is opened. Default is false.
+     */
+    SerialPortChannelConfig setModemLineEvents(boolean modemLineEvents);
+
+    /**
+     * @return true if changes of the input modem lines are fired as events
+     */
+    boolean isModemLineEvents();
+
+    /**
+     * Sets the flow control, which takes effect when the port is opened. While the device holds us
+     * back, flushed writes are held in the outbound buffer and {@link io.netty.channel.Channel#isWritable()}
+     * returns false, so that producers can back off on {@code channelWritabilityChanged}. Needs
+     * {@code libnetty-serialport}, {@link FlowControl#RTS_CTS} also a driver supporting TIOCMIWAIT
+     * for the writability. Default is {@link FlowControl#NONE}.
+     */
+    SerialPortChannelConfig setFlowControl(FlowControl flowControl);
+
+    /**
+     * @return the flow control
+     */
+    FlowControl getFlowControl();
+
+    /**
+     * Sets whether write futures complete only once the bytes have been transmitted, instead of when
+     * they were handed to the tty. Timers started on completion, e.g. for a response, then do not
+     * include the time the tty needs to drain its buffer. Each write waits for the previous one to be
+     * transmitted, so this suits request/response traffic rather than bulk transfers. Needs
+     * {@code libnetty-serialport}, takes effect when the port is opened. Default is false.
+     */
+    SerialPortChannelConfig setTransmitComplete(boolean transmitComplete);
+
+    /**
+     * @return true if write futures complete once the bytes have been transmitted
+     */
+    boolean isTransmitComplete();
+
+    /**
+     * Sets how much data (in µs of transmission at the current line settings) is handed to the tty
+     * at most. The rest waits in the outbound buffer, where it can still be overtaken, e.g. by a
+     * {@link io.netty.channel.ChannelOutboundHandler} prioritising urgent frames, instead of queueing
+     * behind kilobytes of bulk data in the tty. A value of 0 hands everything over at once. Needs
+     * {@code libnetty-serialport}, takes effect when the port is opened. Default is 0.
+     *
+     * @throws IllegalArgumentException if the supplied value is &lt; 0
+     */
+    SerialPortChannelConfig setTransmitQueueMicros(int transmitQueueMicros);
+
+    /**
+     * @return the time (in µs) of transmission handed to the tty at most, 0 if unlimited
+     */
+    int getTransmitQueueMicros();
+
+    /**
+     * Sets whether the port drives a half-duplex RS-485 transceiver, whose driver is enabled by RTS
+     * while sending. The kernel raises and drops RTS itself where the UART driver supports
+     * TIOCSRS485, exactly when the last stop bit left the UART. Otherwise the channel raises RTS
+     * before a write and drops it once the tty transmitted everything flushed. Needs
+     * {@code libnetty-serialport}, takes effect when the port is opened. Default is false.
+     */
+    SerialPortChannelConfig setRs485(boolean rs485);
+
+    /**
+     * @return true if RTS enables the driver of an RS-485 transceiver while sending
+     */
+    boolean isRs485();
+
+    /**
+     * Sets how long (in bit times at the current baud rate) RTS is raised before the first byte is
+     * sent, for transceivers which take a while to turn on their driver. The kernel rounds up to
+     * whole milliseconds. Default is 0.
+     *
+     * @throws IllegalArgumentException if the supplied value is &lt; 0
+     */
+    SerialPortChannelConfig setRs485DelayBeforeSendBits(int rs485DelayBeforeSendBits);
+
+    /**
+     * @return the time (in bit times) RTS is raised before sending
+     */
+    int getRs485DelayBeforeSendBits();
+
+    /**
+     * Sets how long (in bit times at the current baud rate) RTS stays raised after the last stop bit,
+     * e.g. to keep the bus driven for the idle time a protocol requires between frames. The kernel
+     * rounds up to whole milliseconds. Default is 0.
+     *
+     * @throws IllegalArgumentException if the supplied value is &lt; 0
+     */
+    SerialPortChannelConfig setRs485DelayAfterSendBits(int rs485DelayAfterSendBits);
+
+    /**
+     * @return the time (in bit times) RTS stays raised after sending
+     */
+    int getRs485DelayAfterSendBits();
+
+    /**
+     * Sets whether the transceiver receives what it sends, e.g. with its receiver enable tied low.
+     * The channel then drops as many received bytes as it sent, so the pipeline only sees what the
+     * other devices on the bus send. Otherwise the receiver is expected to be off while sending.
+     * Default is false.
+     */
+    SerialPortChannelConfig setRs485Echo(boolean rs485Echo);
+
+    /**
+     * @return true if the transceiver echoes what it sends
+     */
+    boolean isRs485Echo();
+
     @Override
     SerialPortChannelConfig setConnectTimeoutMillis(int connectTimeoutMillis);
 
@@ -0,0 +1,197 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transport counters of a serial channel. Every value can be read from any thread without locking,
+ * so they can be exported as is, e.g. as function counters and gauges of a Micrometer or Dropwizard
+ * registry. {@link #snapshot()} lists all of them under stable names for registries that take a set
+ * of metrics.
+ */
+public final class SerialPortChannelMetrics {
+
+    private final Channel channel;
+
+    private final LongCounter bytesRead = PlatformDependent.newLongCounter();
+    private final LongCounter messagesRead = PlatformDependent.newLongCounter();
+    private final LongCounter readCalls = PlatformDependent.newLongCounter();
+    private final LongCounter emptyReads = PlatformDependent.newLongCounter();
+    private final LongCounter readNanos = PlatformDependent.newLongCounter();
+    private final LongCounter wakeups = PlatformDependent.newLongCounter();
+    private final LongCounter bytesWritten = PlatformDependent.newLongCounter();
+    private final LongCounter messagesWritten = PlatformDependent.newLongCounter();
+    private final LongCounter writeCalls = PlatformDependent.newLongCounter();
+    private final LongCounter writeNanos = PlatformDependent.newLongCounter();
+    private final LongCounter reconnects = PlatformDependent.newLongCounter();
+
+    SerialPortChannelMetrics(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return the number of bytes read from the device
+     */
+    public long bytesRead() {
+        return bytesRead.value();
+    }
+
+    /**
+     * @return the number of buffers passed down the pipeline
+     */
+    public long messagesRead() {
+        return messagesRead.value();
+    }
+
+    /**
+     * @return the number of read calls on the device, including empty ones
+     */
+    public long readCalls() {
+        return readCalls.value();
+    }
+
+    /**
+     * @return the number of read calls which returned nothing
+     */
+    public long emptyReads() {
+        return emptyReads.value();
+    }
+
+    /**
+     * @return the time spent blocked waiting for and in reads, in nanoseconds
+     */
+    public long readNanos() {
+        return readNanos.value();
+    }
+
+    /**
+     * @return how often the reader woke up from poll(2), epoll or sleeping
+     */
+    public long wakeups() {
+        return wakeups.value();
+    }
+
+    /**
+     * @return the number of bytes written to the device
+     */
+    public long bytesWritten() {
+        return bytesWritten.value();
+    }
+
+    /**
+     * @return the number of outbound messages written completely
+     */
+    public long messagesWritten() {
+        return messagesWritten.value();
+    }
+
+    /**
+     * @return the number of write calls on the device
+     */
+    public long writeCalls() {
+        return writeCalls.value();
+    }
+
+    /**
+     * @return the average number of bytes a write call took, {@code 0} if nothing was written yet
+     */
+    public double bytesPerWriteCall() {
+        long calls = writeCalls.value();
+        return calls == 0 ? 0 : (double) bytesWritten.value() / calls;
+    }
+
+    /**
+     * @return the time spent blocked in writes and waiting for the device to take more, in nanoseconds
+     */
+    public long writeNanos() {
+        return writeNanos.value();
+    }
+
+    /**
+     * @return the number of bytes queued in the outbound buffer, waiting to be written
+     */
+    public long pendingOutboundBytes() {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+    }
+
+    /**
+     * @return how often the device was reopened after it had gone away
+     */
+    public long reconnects() {
+        return reconnects.value();
+    }
+
+    /**
+     * @return the current value of every metric, in a fixed order
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new LinkedHashMap<String, Number>();
+        snapshot.put("bytes.read", bytesRead());
+        snapshot.put("messages.read", messagesRead());
+        snapshot.put("read.calls", readCalls());
+        snapshot.put("read.empty", emptyReads());
+        snapshot.put("read.nanos", readNanos());
+        snapshot.put("wakeups", wakeups());
+        snapshot.put("bytes.written", bytesWritten());
+        snapshot.put("messages.written", messagesWritten());
+        snapshot.put("write.calls", writeCalls());
+        snapshot.put("write.bytes.per.call", bytesPerWriteCall());
+        snapshot.put("write.nanos", writeNanos());
+        snapshot.put("outbound.pending.bytes", pendingOutboundBytes());
+        snapshot.put("reconnects", reconnects());
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    void recordRead(long bytes, long nanos) {
+        readCalls.increment();
+        if (bytes > 0) {
+            bytesRead.add(bytes);
+        } else {
+            emptyReads.increment();
+        }
+        readNanos.add(nanos);
+    }
+
+    void recordMessageRead() {
+        messagesRead.increment();
+    }
+
+    void recordWakeup(long blockedNanos) {
+        wakeups.increment();
+        readNanos.add(blockedNanos);
+    }
+
+    void recordWrite(long bytes, long nanos) {
+        writeCalls.increment();
+        if (bytes > 0) {
+            bytesWritten.add(bytes);
+        }
+        writeNanos.add(nanos);
+    }
+
+    void recordWriteWait(long nanos) {
+        writeNanos.add(nanos);
+    }
+
+    void recordMessagesWritten(int messages) {
+        if (messages > 0) {
+            messagesWritten.add(messages);
+        }
+    }
+
+    void recordReconnect() {
+        reconnects.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "SerialPortChannelMetrics" + snapshot();
+    }
+}
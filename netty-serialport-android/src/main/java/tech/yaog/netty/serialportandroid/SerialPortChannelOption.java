@@ -33,6 +33,29 @@ public final class SerialPortChannelOption<T> extends ChannelOption<T> {
     public static final ChannelOption<SerialPortChannelConfig.Paritybit> PARITY_BIT = valueOf(SerialPortChannelOption.class, "PARITY_BIT");
     public static final ChannelOption<Integer> WAIT_TIME = valueOf(SerialPortChannelOption.class, "WAIT_TIME");
     public static final ChannelOption<Integer> READ_TIMEOUT = valueOf(SerialPortChannelOption.class, "READ_TIMEOUT");
+    public static final ChannelOption<Boolean> DIRECT_BUFFER = valueOf(SerialPortChannelOption.class, "DIRECT_BUFFER");
+    public static final ChannelOption<Integer> MAX_BYTES_PER_GATHERING_WRITE =
+            valueOf(SerialPortChannelOption.class, "MAX_BYTES_PER_GATHERING_WRITE");
+    public static final ChannelOption<Integer> IDLE_GAP_MICROS = valueOf(SerialPortChannelOption.class, "IDLE_GAP_MICROS");
+    public static final ChannelOption<Boolean> AUTO_RECONNECT = valueOf(SerialPortChannelOption.class, "AUTO_RECONNECT");
+    public static final ChannelOption<Integer> RECONNECT_MIN_DELAY =
+            valueOf(SerialPortChannelOption.class, "RECONNECT_MIN_DELAY");
+    public static final ChannelOption<Integer> RECONNECT_MAX_DELAY =
+            valueOf(SerialPortChannelOption.class, "RECONNECT_MAX_DELAY");
+    public static final ChannelOption<Boolean> MODEM_LINE_EVENTS =
+            valueOf(SerialPortChannelOption.class, "MODEM_LINE_EVENTS");
+    public static final ChannelOption<SerialPortChannelConfig.FlowControl> FLOW_CONTROL =
+            valueOf(SerialPortChannelOption.class, "FLOW_CONTROL");
+    public static final ChannelOption<Boolean> TRANSMIT_COMPLETE =
+            valueOf(SerialPortChannelOption.class, "TRANSMIT_COMPLETE");
+    public static final ChannelOption<Integer> TRANSMIT_QUEUE_MICROS =
+            valueOf(SerialPortChannelOption.class, "TRANSMIT_QUEUE_MICROS");
+    public static final ChannelOption<Boolean> RS485 = valueOf(SerialPortChannelOption.class, "RS485");
+    public static final ChannelOption<Integer> RS485_DELAY_BEFORE_SEND =
+            valueOf(SerialPortChannelOption.class, "RS485_DELAY_BEFORE_SEND");
+    public static final ChannelOption<Integer> RS485_DELAY_AFTER_SEND =
+            valueOf(SerialPortChannelOption.class, "RS485_DELAY_AFTER_SEND");
+    public static final ChannelOption<Boolean> RS485_ECHO = valueOf(SerialPortChannelOption.class, "RS485_ECHO");
 
     @SuppressWarnings({ "unused", "deprecation" })
     private SerialPortChannelOption() {
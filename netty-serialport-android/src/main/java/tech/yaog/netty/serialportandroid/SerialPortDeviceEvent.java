@@ -0,0 +1,30 @@
+package tech.yaog.netty.serialportandroid;
+
+/**
+ * User events fired by the serial port channels with {@link SerialPortChannelConfig#isAutoReconnect()}
+ * set, when their device goes away and when it has been reopened.
+ */
+public final class SerialPortDeviceEvent {
+
+    /**
+     * The device went away, e.g. a USB adapter was unplugged. The channel stays open and active,
+     * writes are queued until the device is back.
+     */
+    public static final SerialPortDeviceEvent LOST = new SerialPortDeviceEvent("LOST");
+
+    /**
+     * The device was reopened with the channel's settings, queued writes are being flushed.
+     */
+    public static final SerialPortDeviceEvent RESTORED = new SerialPortDeviceEvent("RESTORED");
+
+    private final String name;
+
+    private SerialPortDeviceEvent(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return "SerialPortDeviceEvent(" + name + ')';
+    }
+}
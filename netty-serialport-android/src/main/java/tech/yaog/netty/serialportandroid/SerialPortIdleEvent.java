@@ -0,0 +1,14 @@
+package tech.yaog.netty.serialportandroid;
+
+/**
+ * User event fired by the serial port channels once the line has been silent for
+ * {@link SerialPortChannelConfig#getIdleGapMicros()} after data was received. Fired at most once per
+ * burst of received data.
+ */
+public final class SerialPortIdleEvent {
+
+    public static final SerialPortIdleEvent INSTANCE = new SerialPortIdleEvent();
+
+    private SerialPortIdleEvent() {
+    }
+}
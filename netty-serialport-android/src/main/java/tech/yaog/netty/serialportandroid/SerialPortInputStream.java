@@ -1,26 +1,232 @@
 package tech.yaog.netty.serialportandroid;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
 
 public class SerialPortInputStream extends InputStream {
 
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
     private InputStream source;
+    private int readTimeout;
+    private FileChannel channel;
+    private int fd = -1;
+    private SerialPortChannelMetrics metrics;
 
     @Override
     public int read() throws IOException {
+        if (fd != -1) {
+            for (;;) {
+                int ready = poll(-1);
+                if (ready < 0) {
+                    return -1;
+                }
+                int res = readSource();
+                if (res != -1 || (ready & (Native.POLLHUP | Native.POLLERR)) != 0) {
+                    return res;
+                }
+            }
+        }
         int res = -1;
-        while (!Thread.interrupted() && (res = source.read()) == -1) {
+        while (!Thread.currentThread().isInterrupted() && (res = readSource()) == -1) {
             try {
-                Thread.sleep(10);
+                sleep(POLL_INTERVAL_MILLIS, 0);
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
                 return -1;
             }
         }
         return res;
     }
 
+    /**
+     * Reads everything the device has buffered, up to {@code len} bytes, in one call. Blocks only
+     * while nothing is available, and at most for the configured read timeout. Returns {@code 0}
+     * when the timeout elapses without data so the caller's event loop gets a chance to run, and
+     * {@code -1} when interrupted or the device hung up.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        return read0(b, off, len, null);
+    }
+
+    /**
+     * Same as {@link #read(byte[], int, int)}, but reads straight from the descriptor into
+     * {@code dst}. For a direct buffer the kernel copies into its memory without any intermediate
+     * array.
+     *
+     * @throws UnsupportedOperationException if {@link #isDirectReadSupported()} is false
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if (channel == null) {
+            throw new UnsupportedOperationException("source is not a FileInputStream");
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        return read0(null, 0, 0, dst);
+    }
+
+    /**
+     * @return true if {@link #read(ByteBuffer)} can read directly from the underlying descriptor
+     */
+    public boolean isDirectReadSupported() {
+        return channel != null;
+    }
+
+    private int read0(byte[] b, int off, int len, ByteBuffer dst) throws IOException {
+        long deadline = readTimeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readTimeout) : 0;
+        if (fd != -1) {
+            for (;;) {
+                int ready = poll(deadline == 0 ? -1 : remainingNanos(deadline));
+                if (ready <= 0) {
+                    return ready;
+                }
+                int res = readSource(b, off, len, dst);
+                if (res > 0) {
+                    return res;
+                }
+                if ((ready & (Native.POLLHUP | Native.POLLERR)) != 0) {
+                    // Hung up without data left, the device is gone.
+                    return -1;
+                }
+            }
+        }
+        for (;;) {
+            int res = readSource(b, off, len, dst);
+            if (res > 0) {
+                return res;
+            }
+            long waitMillis = POLL_INTERVAL_MILLIS;
+            if (deadline != 0) {
+                long remaining = remainingMillis(deadline);
+                if (remaining <= 0) {
+                    return 0;
+                }
+                waitMillis = Math.min(waitMillis, remaining);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return -1;
+            }
+            try {
+                sleep(waitMillis, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+    }
+
+    private int readSource() throws IOException {
+        if (metrics == null) {
+            return source.read();
+        }
+        long start = System.nanoTime();
+        int res = source.read();
+        metrics.recordRead(res == -1 ? 0 : 1, System.nanoTime() - start);
+        return res;
+    }
+
+    private int readSource(byte[] b, int off, int len, ByteBuffer dst) throws IOException {
+        if (metrics == null) {
+            return dst != null ? readInto(dst) : source.read(b, off, len);
+        }
+        long start = System.nanoTime();
+        int res = dst != null ? readInto(dst) : source.read(b, off, len);
+        metrics.recordRead(res, System.nanoTime() - start);
+        return res;
+    }
+
+    private int readInto(ByteBuffer dst) throws IOException {
+        if (fd != -1 && dst.isDirect()) {
+            // Not through the FileChannel, an interrupt would close it together with the port.
+            int res = Native.read(fd, dst, dst.position(), dst.limit());
+            if (res > 0) {
+                dst.position(dst.position() + res);
+            }
+            return res;
+        }
+        return channel.read(dst);
+    }
+
+    /**
+     * Blocks in poll(2) until the tty has data, so an idle line costs no wakeups at all.
+     *
+     * @return the poll events, {@code 0} on timeout, {@code -1} if interrupted
+     */
+    private int poll(long timeoutNanos) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            return -1;
+        }
+        if (metrics == null) {
+            return Native.poll(fd, Native.POLLIN, timeoutNanos);
+        }
+        long start = System.nanoTime();
+        int res = Native.poll(fd, Native.POLLIN, timeoutNanos);
+        metrics.recordWakeup(System.nanoTime() - start);
+        return res;
+    }
+
+    private void sleep(long millis, int nanos) throws InterruptedException {
+        if (metrics == null) {
+            Thread.sleep(millis, nanos);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            Thread.sleep(millis, nanos);
+        } finally {
+            metrics.recordWakeup(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Waits at most {@code timeoutNanos} for the device to have data, without reading it.
+     *
+     * @return false if the line stayed silent for the whole time
+     */
+    public boolean awaitReadable(long timeoutNanos) throws IOException {
+        if (fd != -1) {
+            return poll(timeoutNanos) != 0;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (;;) {
+            if (available() > 0) {
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                sleep(Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), POLL_INTERVAL_MILLIS),
+                        (int) (remaining % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static int remainingMillis(long deadline) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        return (int) Math.max(0, Math.min(remaining, Integer.MAX_VALUE));
+    }
+
     @Override
     public int available() throws IOException {
         int available = source.available();
@@ -34,11 +240,43 @@ public class SerialPortInputStream extends InputStream {
     }
 
     public SerialPortInputStream(InputStream is) {
-        source = is;
+        setSource(is);
+    }
+
+    public SerialPortInputStream(InputStream is, int readTimeout) {
+        setSource(is);
+        setReadTimeout(readTimeout);
     }
 
     public void setSource(InputStream source) {
         this.source = source;
+        channel = source instanceof FileInputStream ? ((FileInputStream) source).getChannel() : null;
+        fd = -1;
+        if (source instanceof FileInputStream && Native.isAvailable()) {
+            try {
+                fd = Native.getFd(((FileInputStream) source).getFD());
+            } catch (IOException e) {
+                fd = -1;
+            }
+        }
+    }
+
+    /**
+     * Sets the maximal time (in ms) {@link #read(byte[], int, int)} blocks while no data is available.
+     * {@code 0} waits indefinitely.
+     */
+    public void setReadTimeout(int readTimeout) {
+        if (readTimeout < 0) {
+            throw new IllegalArgumentException("readTimeout must be >= 0");
+        }
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Counts reads, wakeups and the time blocked into {@code metrics}, {@code null} turns it off.
+     */
+    void setMetrics(SerialPortChannelMetrics metrics) {
+        this.metrics = metrics;
     }
 
     @Override
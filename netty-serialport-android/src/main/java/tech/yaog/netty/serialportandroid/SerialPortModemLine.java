@@ -0,0 +1,52 @@
+package tech.yaog.netty.serialportandroid;
+
+/**
+ * The modem control lines of a serial port. DTR and RTS are outputs, set through
+ * {@link SerialPortChannelConfig#setDtr(boolean)} and {@link SerialPortChannelConfig#setRts(boolean)},
+ * the others are inputs driven by the device.
+ */
+public enum SerialPortModemLine {
+    /**
+     * Data Terminal Ready, output
+     */
+    DTR,
+    /**
+     * Request To Send, output
+     */
+    RTS,
+    /**
+     * Clear To Send, input
+     */
+    CTS,
+    /**
+     * Data Set Ready, input
+     */
+    DSR,
+    /**
+     * Data Carrier Detect, input
+     */
+    DCD,
+    /**
+     * Ring Indicator, input
+     */
+    RI;
+
+    /**
+     * The input lines.
+     */
+    static final int INPUTS = CTS.mask() | DSR.mask() | DCD.mask() | RI.mask();
+
+    /**
+     * @return the bit of this line in the masks returned by {@link SerialPortChannel#modemLines()}
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @return true if this line is raised in {@code lines}
+     */
+    public boolean isSet(int lines) {
+        return (lines & mask()) != 0;
+    }
+}
@@ -0,0 +1,66 @@
+package tech.yaog.netty.serialportandroid;
+
+/**
+ * User event fired by the serial port channels with
+ * {@link SerialPortChannelConfig#isModemLineEvents()} set, when one of the input lines CTS, DSR, DCD
+ * or RI changed. The change is reported by the kernel as it happens, pulses shorter than the time it
+ * takes to read the lines afterwards may be missed.
+ */
+public final class SerialPortModemLinesEvent {
+
+    private final int lines;
+    private final int changed;
+
+    SerialPortModemLinesEvent(int lines, int changed) {
+        this.lines = lines;
+        this.changed = changed;
+    }
+
+    /**
+     * @return the state of all lines after the change, see {@link SerialPortModemLine#mask()}
+     */
+    public int lines() {
+        return lines;
+    }
+
+    /**
+     * @return the lines which changed, see {@link SerialPortModemLine#mask()}
+     */
+    public int changed() {
+        return changed;
+    }
+
+    /**
+     * @return true if {@code line} is raised
+     */
+    public boolean isSet(SerialPortModemLine line) {
+        return line.isSet(lines);
+    }
+
+    /**
+     * @return true if {@code line} changed
+     */
+    public boolean hasChanged(SerialPortModemLine line) {
+        return line.isSet(changed);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("SerialPortModemLinesEvent(");
+        for (SerialPortModemLine line : SerialPortModemLine.values()) {
+            if (line.isSet(lines)) {
+                buf.append(line);
+                if (line.isSet(changed)) {
+                    buf.append('*');
+                }
+                buf.append(' ');
+            } else if (line.isSet(changed)) {
+                buf.append('!').append(line).append("* ");
+            }
+        }
+        if (buf.charAt(buf.length() - 1) == ' ') {
+            buf.setLength(buf.length() - 1);
+        }
+        return buf.append(')').toString();
+    }
+}
@@ -0,0 +1,144 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import tech.yaog.hardwares.serialport.SerialPort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.BAUD_RATE;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.DATA_BITS;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.DTR;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.PARITY_BIT;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.RTS;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.STOP_BITS;
+
+/**
+ * Opens serial devices off the event loop. Opening a device and setting up its tty can block for a
+ * long time, e.g. on a USB adapter which hangs, and must neither hold up the other channels of the
+ * loop nor the ports opened at the same time. Every open runs on a thread of its own, and the
+ * channel continues on its event loop once the device is open, or gives up after the connect
+ * timeout. A device which opens after the timeout is closed again at once.
+ */
+final class SerialPortOpener {
+
+    interface Callback {
+        /**
+         * Called on the event loop with the open device, which the callback takes over.
+         */
+        void opened(SerialPort serialPort);
+
+        /**
+         * Called on the event loop if the device could not be opened in time.
+         */
+        void failed(Throwable cause);
+    }
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(SerialPortOpener.class);
+    // Unbounded, a hung open must not keep the others waiting. Idle threads go away after a minute.
+    private static final ExecutorService EXECUTOR =
+            Executors.newCachedThreadPool(new DefaultThreadFactory("serialport-open", true));
+
+    /**
+     * Opens {@code address} with the line settings of {@code config}, on the calling thread.
+     */
+    static SerialPort open(SerialPortDeviceAddress address, SerialPortChannelConfig config) throws IOException {
+        return new SerialPort(new File(address.value()),
+                config.getOption(BAUD_RATE),
+                config.getOption(DATA_BITS).value(),
+                config.getOption(PARITY_BIT).value(),
+                config.getOption(STOP_BITS).value(),
+                config.getOption(RTS),
+                config.getOption(DTR),
+                0
+                );
+    }
+
+    /**
+     * Opens the device of {@code channel} on a thread of the opener and hands it to {@code callback}
+     * on the event loop of the channel, within the connect timeout of its config if there is one.
+     */
+    static void openAsync(final Channel channel, final SerialPortDeviceAddress address,
+                          final SerialPortChannelConfig config, final Callback callback) {
+        final AtomicBoolean done = new AtomicBoolean();
+        int connectTimeoutMillis = config.getConnectTimeoutMillis();
+        final ScheduledFuture<?> timeout;
+        if (connectTimeoutMillis > 0) {
+            timeout = channel.eventLoop().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (done.compareAndSet(false, true)) {
+                        callback.failed(new ConnectTimeoutException("opening " + address + " timed out"));
+                    }
+                }
+            }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        } else {
+            timeout = null;
+        }
+        try {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SerialPort serialPort = null;
+                    Throwable cause = null;
+                    try {
+                        serialPort = open(address, config);
+                    } catch (Throwable t) {
+                        cause = t;
+                    }
+                    complete(channel, address, serialPort, cause, done, timeout, callback);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            complete(channel, address, null, e, done, timeout, callback);
+        }
+    }
+
+    private static void complete(Channel channel, final SerialPortDeviceAddress address,
+                                 final SerialPort serialPort, final Throwable cause, final AtomicBoolean done,
+                                 final ScheduledFuture<?> timeout, final Callback callback) {
+        try {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!done.compareAndSet(false, true)) {
+                        // Timed out already.
+                        closeLate(address, serialPort);
+                        return;
+                    }
+                    if (timeout != null) {
+                        timeout.cancel(false);
+                    }
+                    if (cause != null) {
+                        callback.failed(cause);
+                    } else {
+                        callback.opened(serialPort);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The event loop is gone, and the channel with it.
+            closeLate(address, serialPort);
+        }
+    }
+
+    private static void closeLate(SerialPortDeviceAddress address, SerialPort serialPort) {
+        if (serialPort != null) {
+            logger.debug("Closing serial device {}, opened after the connect timeout", address);
+            serialPort.close();
+        }
+    }
+
+    private SerialPortOpener() {
+    }
+}
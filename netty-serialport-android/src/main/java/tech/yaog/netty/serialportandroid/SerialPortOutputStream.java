@@ -0,0 +1,179 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class SerialPortOutputStream extends OutputStream {
+
+    private OutputStream source;
+    private FileChannel channel;
+    private int fd = -1;
+    private SerialPortChannelMetrics metrics;
+
+    public SerialPortOutputStream() {
+    }
+
+    public SerialPortOutputStream(OutputStream os) {
+        setSource(os);
+    }
+
+    public void setSource(OutputStream source) {
+        this.source = source;
+        channel = source instanceof FileOutputStream ? ((FileOutputStream) source).getChannel() : null;
+        fd = -1;
+        if (source instanceof FileOutputStream && Native.isAvailable()) {
+            try {
+                fd = Native.getFd(((FileOutputStream) source).getFD());
+            } catch (IOException e) {
+                fd = -1;
+            }
+        }
+    }
+
+    /**
+     * Counts writes and the time blocked into {@code metrics}, {@code null} turns it off.
+     */
+    void setMetrics(SerialPortChannelMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (metrics == null) {
+            source.write(b);
+            return;
+        }
+        long start = System.nanoTime();
+        source.write(b);
+        metrics.recordWrite(1, System.nanoTime() - start);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (metrics == null) {
+            source.write(b, off, len);
+            return;
+        }
+        long start = System.nanoTime();
+        source.write(b, off, len);
+        metrics.recordWrite(len, System.nanoTime() - start);
+    }
+
+    /**
+     * Writes the remaining bytes of {@code srcs[offset]} to {@code srcs[offset + length - 1]} with as
+     * few writev(2) calls as the device allows, so they leave the UART back-to-back. Heap buffers are
+     * copied to direct memory for it first. Blocks until everything is written and advances the
+     * positions of the buffers.
+     *
+     * @return the number of bytes written
+     * @throws UnsupportedOperationException if {@link #isGatheringWriteSupported()} is false
+     */
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if (channel == null) {
+            throw new UnsupportedOperationException("source is not a FileOutputStream");
+        }
+        long expected = 0;
+        int heapBytes = 0;
+        for (int i = offset; i < offset + length; i++) {
+            expected += srcs[i].remaining();
+            if (!srcs[i].isDirect()) {
+                heapBytes += srcs[i].remaining();
+            }
+        }
+        ByteBuffer[] buffers = srcs;
+        int bufferOffset = offset;
+        ByteBuf copy = null;
+        if (fd != -1 && heapBytes > 0) {
+            // writev(2) takes native memory only.
+            copy = ByteBufAllocator.DEFAULT.directBuffer(heapBytes);
+            buffers = new ByteBuffer[length];
+            bufferOffset = 0;
+            for (int i = 0; i < length; i++) {
+                ByteBuffer src = srcs[offset + i];
+                if (src.isDirect()) {
+                    buffers[i] = src.duplicate();
+                } else {
+                    int index = copy.writerIndex();
+                    copy.writeBytes(src.duplicate());
+                    buffers[i] = copy.nioBuffer(index, src.remaining());
+                }
+            }
+        }
+        try {
+            long written = 0;
+            while (written < expected) {
+                long start = metrics != null ? System.nanoTime() : 0;
+                long localWritten;
+                if (fd != -1) {
+                    // Not through the FileChannel, an interrupt would close it together with the port.
+                    localWritten = Native.writev(fd, buffers, bufferOffset, length);
+                    advance(buffers, bufferOffset, length, localWritten);
+                    if (buffers != srcs) {
+                        advance(srcs, offset, length, localWritten);
+                    }
+                } else {
+                    localWritten = channel.write(srcs, offset, length);
+                }
+                if (metrics != null) {
+                    long now = System.nanoTime();
+                    metrics.recordWrite(localWritten, now - start);
+                    start = now;
+                }
+                if (localWritten == 0 && fd != -1) {
+                    Native.poll(fd, Native.POLLOUT, -1);
+                    if (metrics != null) {
+                        metrics.recordWriteWait(System.nanoTime() - start);
+                    }
+                }
+                written += localWritten;
+                while (length > 0 && !srcs[offset].hasRemaining()) {
+                    offset++;
+                    bufferOffset++;
+                    length--;
+                }
+            }
+            return written;
+        } finally {
+            if (copy != null) {
+                copy.release();
+            }
+        }
+    }
+
+    /**
+     * @return true if {@link #write(ByteBuffer[], int, int)} can write to the underlying descriptor
+     */
+    public boolean isGatheringWriteSupported() {
+        return channel != null;
+    }
+
+    /**
+     * Moves the positions of the buffers past {@code written} bytes, which the native writes leave
+     * untouched.
+     */
+    static void advance(ByteBuffer[] srcs, int offset, int length, long written) {
+        for (int i = offset; i < offset + length && written > 0; i++) {
+            ByteBuffer src = srcs[i];
+            int localWritten = (int) Math.min(src.remaining(), written);
+            src.position(src.position() + localWritten);
+            written -= localWritten;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        source.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+        super.close();
+    }
+}
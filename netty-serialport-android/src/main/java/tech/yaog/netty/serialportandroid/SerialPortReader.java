@@ -0,0 +1,237 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves the bytes of a {@link SerialPortChannel} registered with a shared event loop off the device
+ * on a thread of its own, so a slow pipeline cannot make the tty buffer overrun. The thread does
+ * nothing but read: the buffers are queued in arrival order, together with the silences of the idle
+ * gap and the end of the device, and picked up by the channel on its event loop.
+ */
+final class SerialPortReader implements Runnable {
+
+    interface Listener {
+        /**
+         * Called by the reader thread when something was queued while the queue was empty.
+         */
+        void readerReady();
+    }
+
+    /**
+     * Queued when the device went away, after everything read before.
+     */
+    static final class Lost {
+        final IOException cause;
+
+        Lost(IOException cause) {
+            this.cause = cause;
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new DefaultThreadFactory("serialport-reader", true);
+    // Stops reading while the pipeline lags this far behind, memory is not unlimited either.
+    private static final int MAX_QUEUED_BYTES = 1024 * 1024;
+    private static final long PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long WAKEUP_INTERVAL_MILLIS = 10;
+
+    private final SerialPortChannel channel;
+    private final SerialPortInputStream in;
+    private final Listener listener;
+    private final Thread thread;
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    private final Runnable wakeUpTask = new Runnable() {
+        @Override
+        public void run() {
+            wakeUp();
+        }
+    };
+    private volatile boolean stopped;
+    // Guarded by this, 0 once the thread left run() and must not be signalled anymore.
+    private long nativeThread;
+    // Guarded by this, set once the thread no longer uses the stream.
+    private boolean exited;
+    private Runnable onStopped;
+
+    SerialPortReader(SerialPortChannel channel, SerialPortInputStream in, Listener listener) {
+        this.channel = channel;
+        this.in = in;
+        this.listener = listener;
+        thread = THREAD_FACTORY.newThread(this);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the reader without waiting for it. The stream must not be closed under a read, the
+     * descriptor could be reused meanwhile, so {@code onStopped} runs on the reader thread once it
+     * left the stream, or right away if it is gone already. What it queued is released then too.
+     */
+    void stop(Runnable onStopped) {
+        synchronized (this) {
+            stopped = true;
+            if (!exited) {
+                this.onStopped = onStopped;
+                wakeUp();
+                return;
+            }
+        }
+        stopped(onStopped);
+    }
+
+    /**
+     * Signals the thread until it left run(). A signal arriving right before it blocks is lost, so it
+     * is repeated off the event loop, a read ends after the read timeout anyway.
+     */
+    private void wakeUp() {
+        synchronized (this) {
+            if (exited) {
+                return;
+            }
+            thread.interrupt();
+            if (nativeThread != 0) {
+                Native.wakeUp(nativeThread);
+            }
+        }
+        GlobalEventExecutor.INSTANCE.schedule(wakeUpTask, WAKEUP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopped(Runnable onStopped) {
+        Object msg;
+        while ((msg = queue.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+        onStopped.run();
+    }
+
+    /**
+     * @return the oldest queued buffer, {@link SerialPortIdleEvent#INSTANCE} or {@link Lost}, or
+     * {@code null} if nothing is queued
+     */
+    Object poll() {
+        Object msg = queue.poll();
+        if (msg == null) {
+            return null;
+        }
+        queued.decrementAndGet();
+        if (msg instanceof ByteBuf) {
+            queuedBytes.addAndGet(-((ByteBuf) msg).readableBytes());
+            LockSupport.unpark(thread);
+        }
+        return msg;
+    }
+
+    /**
+     * @return true if something is queued
+     */
+    boolean isReady() {
+        return queued.get() > 0;
+    }
+
+    @Override
+    public void run() {
+        if (Native.isAvailable()) {
+            synchronized (this) {
+                nativeThread = Native.currentThread();
+            }
+        }
+        try {
+            read();
+        } catch (IOException e) {
+            if (!stopped) {
+                enqueue(new Lost(e));
+            }
+        } finally {
+            Runnable onStopped;
+            synchronized (this) {
+                nativeThread = 0;
+                exited = true;
+                onStopped = this.onStopped;
+            }
+            if (onStopped != null) {
+                stopped(onStopped);
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        SerialPortChannelConfig config = channel.config();
+        SerialPortChannel.ReadHandle allocHandle = channel.readHandle();
+        while (!stopped) {
+            if (queuedBytes.get() >= MAX_QUEUED_BYTES || !config.isAutoRead() && queuedBytes.get() > 0) {
+                // Without auto read the device is held back by its own buffer, as on a dedicated loop.
+                LockSupport.parkNanos(this, PAUSE_NANOS);
+                continue;
+            }
+            in.setReadTimeout(config.getReadTimeout());
+            allocHandle.reset(config);
+            allocHandle.available(in.available());
+            ByteBuf buf = allocHandle.allocate(config.getAllocator());
+            int localRead;
+            try {
+                localRead = read(buf);
+            } catch (IOException e) {
+                buf.release();
+                throw e;
+            }
+            allocHandle.lastBytesRead(localRead);
+            allocHandle.readComplete();
+            if (localRead <= 0) {
+                buf.release();
+                if (localRead < 0 && !stopped) {
+                    // Hung up or interrupted, the channel tells.
+                    enqueue(new Lost(null));
+                    return;
+                }
+                continue;
+            }
+            queuedBytes.addAndGet(localRead);
+            enqueue(buf);
+            long idleGapNanos = TimeUnit.MICROSECONDS.toNanos(config.getIdleGapMicros());
+            if (idleGapNanos > 0 && !in.awaitReadable(idleGapNanos) && !stopped) {
+                enqueue(SerialPortIdleEvent.INSTANCE);
+            }
+        }
+    }
+
+    private int read(ByteBuf buf) throws IOException {
+        int writerIndex = buf.writerIndex();
+        int localRead;
+        if (buf.hasArray()) {
+            localRead = in.read(buf.array(), buf.arrayOffset() + writerIndex, buf.writableBytes());
+        } else if (buf.nioBufferCount() == 1 && in.isDirectReadSupported()) {
+            localRead = in.read(buf.internalNioBuffer(writerIndex, buf.writableBytes()));
+        } else {
+            byte[] tmp = new byte[buf.writableBytes()];
+            localRead = in.read(tmp, 0, tmp.length);
+            if (localRead > 0) {
+                buf.setBytes(writerIndex, tmp, 0, localRead);
+            }
+        }
+        if (localRead > 0) {
+            buf.writerIndex(writerIndex + localRead);
+        }
+        return localRead;
+    }
+
+    private void enqueue(Object msg) {
+        queue.add(msg);
+        if (queued.getAndIncrement() == 0) {
+            listener.readerReady();
+        }
+    }
+}
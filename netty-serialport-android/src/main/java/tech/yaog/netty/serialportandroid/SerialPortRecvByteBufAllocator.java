@@ -0,0 +1,107 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultMaxMessagesRecvByteBufAllocator;
+
+/**
+ * Sizes receive buffers for what a serial line can actually deliver, instead of the TCP oriented
+ * defaults. A buffer holds what the tty has received so far, as reported by the channel right before
+ * the read, plus what arrives in another millisecond at the configured
+ * {@link SerialPortChannelOption#BAUD_RATE}. If the channel does not know, e.g. because it allocates
+ * before blocking for data, the size follows the average of the recent reads, but never more than the
+ * line delivers in 100 ms.
+ * <p>
+ * Set it with {@link ChannelOption#RCVBUF_ALLOCATOR}. Both channels support it, the epoll one needs
+ * no guessing at all.
+ */
+public class SerialPortRecvByteBufAllocator extends DefaultMaxMessagesRecvByteBufAllocator {
+
+    private final int minimum;
+    private final int maximum;
+
+    /**
+     * Creates a new instance with buffers between 16 bytes and 64 KiB.
+     */
+    public SerialPortRecvByteBufAllocator() {
+        this(16, 65536);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param minimum the smallest buffer allocated
+     * @param maximum the largest buffer allocated
+     */
+    public SerialPortRecvByteBufAllocator(int minimum, int maximum) {
+        if (minimum <= 0) {
+            throw new IllegalArgumentException("minimum must be > 0: " + minimum);
+        }
+        if (maximum < minimum) {
+            throw new IllegalArgumentException("maximum must be >= minimum: " + maximum);
+        }
+        this.minimum = minimum;
+        this.maximum = maximum;
+    }
+
+    @Override
+    public Handle newHandle() {
+        return new SerialHandle();
+    }
+
+    final class SerialHandle extends MaxMessageHandle {
+        private int bytesPerMilli = 1;
+        private int lineLimit = maximum;
+        private int available = -1;
+        private int average = minimum;
+
+        @Override
+        public void reset(ChannelConfig config) {
+            super.reset(config);
+            if (config instanceof SerialPortChannelConfig) {
+                SerialPortChannelConfig serial = (SerialPortChannelConfig) config;
+                int bits = 1 + serial.getDatabits().bits() + serial.getParitybit().bits()
+                        + serial.getStopbits().bits();
+                int bytesPerSecond = serial.getBaudrate() / bits;
+                bytesPerMilli = Math.max(1, bytesPerSecond / 1000);
+                lineLimit = Math.max(minimum, bytesPerSecond / 10);
+            }
+        }
+
+        /**
+         * Tells how many bytes the tty holds for the next read cycle, {@code -1} if unknown.
+         */
+        void available(int available) {
+            this.available = available;
+        }
+
+        @Override
+        public int guess() {
+            int guess;
+            if (available > 0) {
+                guess = available + bytesPerMilli;
+            } else {
+                guess = Math.min(average, lineLimit);
+            }
+            return Math.max(minimum, Math.min(maximum, guess));
+        }
+
+        @Override
+        public void lastBytesRead(int bytes) {
+            super.lastBytesRead(bytes);
+            if (available >= 0) {
+                available = Math.max(0, available - Math.max(0, bytes));
+            }
+        }
+
+        @Override
+        public void readComplete() {
+            available = -1;
+            int total = totalBytesRead();
+            if (total > 0) {
+                // Weighs the last read a quarter, a single burst does not blow up every buffer.
+                average = Math.max(minimum, (average * 3 + total) / 4);
+            }
+        }
+    }
+}
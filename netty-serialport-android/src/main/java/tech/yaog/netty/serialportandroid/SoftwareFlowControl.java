@@ -0,0 +1,50 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+
+/**
+ * Takes the XON and XOFF bytes sent by a device out of the received data, for
+ * {@link SerialPortChannelConfig.FlowControl#XON_XOFF}.
+ */
+final class SoftwareFlowControl {
+
+    static final byte XON = 0x11;
+    static final byte XOFF = 0x13;
+
+    private static final ByteProcessor FIND_XON_XOFF = new ByteProcessor() {
+        @Override
+        public boolean process(byte value) {
+            return value != XON && value != XOFF;
+        }
+    };
+
+    /**
+     * Removes XON and XOFF from the bytes of {@code buf} between {@code from} and its writer index,
+     * moving the writer index back accordingly.
+     *
+     * @return the last of them, or {@code 0} if there was none
+     */
+    static byte strip(ByteBuf buf, int from) {
+        int end = buf.writerIndex();
+        int index = buf.forEachByte(from, end - from, FIND_XON_XOFF);
+        if (index == -1) {
+            return 0;
+        }
+        byte last = 0;
+        int writerIndex = index;
+        for (int i = index; i < end; i++) {
+            byte value = buf.getByte(i);
+            if (value == XON || value == XOFF) {
+                last = value;
+            } else {
+                buf.setByte(writerIndex++, value);
+            }
+        }
+        buf.writerIndex(writerIndex);
+        return last;
+    }
+
+    private SoftwareFlowControl() {
+    }
+}
@@ -0,0 +1,96 @@
+package tech.yaog.netty.serialportandroid;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of what a channel handed to its tty, for
+ * {@link SerialPortChannelConfig#isTransmitComplete()} and
+ * {@link SerialPortChannelConfig#getTransmitQueueMicros()}. Durations are derived from the current
+ * line settings.
+ */
+final class TransmitPacer {
+
+    // Sent by the UART after the tty buffer ran empty, if its driver does not tell when it is done.
+    private static final int FIFO_CHARACTERS = 16;
+
+    private final SerialPortChannelConfig config;
+    private boolean transmitterWaiting;
+    private long transmitterDeadlineNanos;
+
+    TransmitPacer(SerialPortChannelConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return true if writes have to be paced or confirmed at all
+     */
+    boolean isEnabled() {
+        return config.isTransmitComplete() || config.getTransmitQueueMicros() > 0;
+    }
+
+    /**
+     * @return the time to transmit one character
+     */
+    long characterNanos() {
+        int bits = 1 + config.getDatabits().bits() + config.getParitybit().bits() + config.getStopbits().bits();
+        return Math.max(1, TimeUnit.SECONDS.toNanos(bits) / Math.max(1, config.getBaudrate()));
+    }
+
+    /**
+     * @return the number of bytes the tty may hold, {@link Long#MAX_VALUE} if unlimited
+     */
+    long queueLimit() {
+        int micros = config.getTransmitQueueMicros();
+        if (micros == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(1, TimeUnit.MICROSECONDS.toNanos(micros) / characterNanos());
+    }
+
+    /**
+     * @return the number of bytes which may be handed to the tty {@code fd} now
+     */
+    long allowance(int fd) throws IOException {
+        long limit = queueLimit();
+        if (limit == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, limit - Native.outputQueue(fd));
+    }
+
+    /**
+     * @return the time until only {@code remaining} of the {@code queued} bytes are left in the tty
+     */
+    long drainNanos(long queued, long remaining) {
+        return Math.max(0, queued - remaining) * characterNanos();
+    }
+
+    /**
+     * Tells when the UART of the tty {@code fd}, whose buffer is empty, will have sent the rest,
+     * without blocking like tcdrain(3) does. Called again after the returned time until it returns
+     * 0, which it keeps returning until {@link #written()}. If the driver does not report its line
+     * status, a FIFO of 16 characters is waited for from the first call on.
+     *
+     * @return the time to check again after, 0 once everything was transmitted
+     */
+    long transmitterNanos(int fd) throws IOException {
+        int empty = Native.transmitterEmpty(fd);
+        if (empty >= 0) {
+            return empty == 1 ? 0 : characterNanos();
+        }
+        long now = System.nanoTime();
+        if (!transmitterWaiting) {
+            transmitterWaiting = true;
+            transmitterDeadlineNanos = now + FIFO_CHARACTERS * characterNanos();
+        }
+        return Math.max(0, transmitterDeadlineNanos - now);
+    }
+
+    /**
+     * Restarts {@link #transmitterNanos(int)} after more was written.
+     */
+    void written() {
+        transmitterWaiting = false;
+    }
+}
@@ -0,0 +1,123 @@
+package tech.yaog.netty.serialportandroid.bus;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Round trip times in microseconds. Values are counted in buckets of eight per power of two, so
+ * percentiles are exact below 8 us and at most 12.5 % too high above. Recorded on the event loop and
+ * readable from any thread without locking.
+ */
+public final class LatencyHistogram {
+
+    // Covers every positive long.
+    private static final int BUCKETS = 8 * 62;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongCounter count = PlatformDependent.newLongCounter();
+    private final LongCounter totalMicros = PlatformDependent.newLongCounter();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    LatencyHistogram() {
+    }
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucket(micros));
+        count.increment();
+        totalMicros.add(micros);
+        for (;;) {
+            long max = maxMicros.get();
+            if (micros <= max || maxMicros.compareAndSet(max, micros)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of round trips recorded
+     */
+    public long count() {
+        return count.value();
+    }
+
+    /**
+     * @return the average round trip time, {@code 0} if nothing was recorded yet
+     */
+    public long meanMicros() {
+        long count = this.count.value();
+        return count == 0 ? 0 : totalMicros.value() / count;
+    }
+
+    /**
+     * @return the longest round trip time
+     */
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @param percentile between {@code 0} and {@code 100}
+     * @return the round trip time {@code percentile} percent of the round trips did not exceed,
+     * {@code 0} if nothing was recorded yet
+     */
+    public long percentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+        long count = this.count.value();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    /**
+     * @return the count, mean, median, 90th, 99th percentile and maximum in microseconds
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new LinkedHashMap<String, Number>();
+        snapshot.put("count", count());
+        snapshot.put("mean.micros", meanMicros());
+        snapshot.put("p50.micros", percentileMicros(50));
+        snapshot.put("p90.micros", percentileMicros(90));
+        snapshot.put("p99.micros", percentileMicros(99));
+        snapshot.put("max.micros", maxMicros());
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    static int bucket(long micros) {
+        if (micros < 8) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        return ((exponent - 2) << 3) + (int) ((micros >>> (exponent - 3)) & 7);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 8) {
+            return bucket;
+        }
+        int exponent = (bucket >> 3) + 2;
+        return ((8L + (bucket & 7) + 1) << (exponent - 3)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram" + snapshot();
+    }
+}
@@ -0,0 +1,355 @@
+package tech.yaog.netty.serialportandroid.bus;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import tech.yaog.netty.serialportandroid.codec.modbus.ModbusRtuFrame;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Turns requests into futures of their responses, for protocols where every request is answered by
+ * one response. Up to {@code maxOutstanding} requests are on the line at a time, more are queued and
+ * written as responses come in, so protocols which tag responses with a transaction id can be
+ * pipelined while strict master-slave protocols use {@code 1}. Responses go to the oldest outstanding
+ * request with the same key, everything else continues down the pipeline.
+ * <p>
+ * Timeouts run on a {@link HashedWheelTimer} shared by all correlators instead of a scheduled task
+ * per request, and the round trip times are recorded per device in {@link LatencyHistogram}s. The
+ * correlator goes last, after the codec:
+ * <pre>
+ * RequestCorrelator correlator = new RequestCorrelator(RequestCorrelator.MODBUS_RTU, 1, 100, TimeUnit.MILLISECONDS);
+ * pipeline.addLast(new InterCharacterGapFrameDecoder(), new ModbusRtuDecoder(), new ModbusRtuEncoder(), correlator);
+ *
+ * Future&lt;Object&gt; response = correlator.request(ModbusRtuFrame.newInstance(17, 3, payload));
+ * </pre>
+ * Use a {@link SerialBusMultiplexer} instead if several components share the line.
+ */
+public class RequestCorrelator extends ChannelInboundHandlerAdapter {
+
+    /**
+     * Tells which response belongs to which request.
+     */
+    public interface Correlation {
+        /**
+         * @return the key the response to {@code request} carries, not {@code null}
+         */
+        Object requestKey(Object request);
+
+        /**
+         * @return the key of the request {@code msg} answers, {@code null} if it is no response
+         */
+        Object responseKey(Object msg);
+
+        /**
+         * @return the device {@code request} is sent to, the round trip is recorded for, or
+         * {@code null} to not record it
+         */
+        Object device(Object request);
+    }
+
+    /**
+     * Correlates {@link ModbusRtuFrame}s by their slave address, which allows only one outstanding
+     * request per slave.
+     */
+    public static final Correlation MODBUS_RTU = new Correlation() {
+        @Override
+        public Object requestKey(Object request) {
+            return ((ModbusRtuFrame) request).address();
+        }
+
+        @Override
+        public Object responseKey(Object msg) {
+            return msg instanceof ModbusRtuFrame ? ((ModbusRtuFrame) msg).address() : null;
+        }
+
+        @Override
+        public Object device(Object request) {
+            return ((ModbusRtuFrame) request).address();
+        }
+    };
+
+    private static final class SharedTimer {
+        // Serial round trips take milliseconds, a coarse tick is fine.
+        static final Timer INSTANCE = new HashedWheelTimer(
+                new DefaultThreadFactory("serialport-correlator", true), 10, TimeUnit.MILLISECONDS);
+    }
+
+    private final Correlation correlation;
+    private final int maxOutstanding;
+    private final long timeoutNanos;
+    private final Timer timer;
+    private final ConcurrentMap<Object, LatencyHistogram> latencies =
+            new ConcurrentHashMap<Object, LatencyHistogram>();
+    // Only touched by the event loop.
+    private final ArrayDeque<Request> queued = new ArrayDeque<Request>();
+    private final ArrayDeque<Request> outstanding = new ArrayDeque<Request>();
+    private volatile ChannelHandlerContext ctx;
+
+    /**
+     * Creates a new instance with timeouts on a timer shared by all correlators.
+     *
+     * @param correlation    tells which response belongs to which request
+     * @param maxOutstanding how many requests may wait for their response at a time
+     * @param timeout        how long to wait for a response after a request was written
+     * @param unit           the unit of {@code timeout}
+     */
+    public RequestCorrelator(Correlation correlation, int maxOutstanding, long timeout, TimeUnit unit) {
+        this(correlation, maxOutstanding, timeout, unit, SharedTimer.INSTANCE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param correlation    tells which response belongs to which request
+     * @param maxOutstanding how many requests may wait for their response at a time
+     * @param timeout        how long to wait for a response after a request was written
+     * @param unit           the unit of {@code timeout}
+     * @param timer          runs the timeouts, not stopped by the correlator
+     */
+    public RequestCorrelator(Correlation correlation, int maxOutstanding, long timeout, TimeUnit unit, Timer timer) {
+        if (correlation == null) {
+            throw new NullPointerException("correlation");
+        }
+        if (maxOutstanding <= 0) {
+            throw new IllegalArgumentException("maxOutstanding must be > 0: " + maxOutstanding);
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be > 0: " + timeout);
+        }
+        if (timer == null) {
+            throw new NullPointerException("timer");
+        }
+        this.correlation = correlation;
+        this.maxOutstanding = maxOutstanding;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.timer = timer;
+    }
+
+    /**
+     * Writes {@code msg} once less than {@code maxOutstanding} requests wait for their response. Can
+     * be called from any thread.
+     *
+     * @return completed with the response, which the caller has to release, or failed with a
+     * {@link TimeoutException} if none came in time. Cancelling it before the request was written
+     * takes the request back.
+     */
+    public Future<Object> request(Object msg) {
+        return request(msg, timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Like {@link #request(Object)}, with its own timeout.
+     */
+    public Future<Object> request(Object msg, long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            ReferenceCountUtil.release(msg);
+            throw new IllegalArgumentException("timeout must be > 0: " + timeout);
+        }
+        final ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null) {
+            ReferenceCountUtil.release(msg);
+            throw new IllegalStateException("not added to a pipeline");
+        }
+        Object key = correlation.requestKey(msg);
+        if (key == null) {
+            ReferenceCountUtil.release(msg);
+            throw new NullPointerException("key of " + msg);
+        }
+        EventExecutor executor = ctx.executor();
+        final Request request = new Request(msg, key, correlation.device(msg), unit.toNanos(timeout),
+                executor.<Object>newPromise());
+        if (executor.inEventLoop()) {
+            enqueue(ctx, request);
+        } else {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    enqueue(ctx, request);
+                }
+            });
+        }
+        return request.promise;
+    }
+
+    /**
+     * @return the round trip times to {@code device}, {@code null} if no response came from it yet
+     */
+    public LatencyHistogram latency(Object device) {
+        return latencies.get(device);
+    }
+
+    /**
+     * @return the round trip times of every device a response came from, a live view
+     */
+    public Map<Object, LatencyHistogram> latencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    private void enqueue(ChannelHandlerContext ctx, Request request) {
+        if (ctx.isRemoved() || !ctx.channel().isActive()) {
+            request.fail(new ClosedChannelException());
+            return;
+        }
+        queued.add(request);
+        next(ctx);
+    }
+
+    private void next(ChannelHandlerContext ctx) {
+        Request request;
+        while (outstanding.size() < maxOutstanding && (request = queued.poll()) != null) {
+            if (!request.promise.setUncancellable()) {
+                ReferenceCountUtil.release(request.msg);
+                continue;
+            }
+            start(ctx, request);
+        }
+    }
+
+    private void start(final ChannelHandlerContext ctx, final Request request) {
+        // Outstanding before the write, the response may come before its future completes.
+        outstanding.add(request);
+        request.startNanos = System.nanoTime();
+        ctx.writeAndFlush(request.msg).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!outstanding.contains(request)) {
+                    return;
+                }
+                if (!future.isSuccess()) {
+                    outstanding.remove(request);
+                    request.promise.tryFailure(future.cause());
+                    next(ctx);
+                    return;
+                }
+                // Timed from when the request left, not from how long the line held it back.
+                request.startNanos = System.nanoTime();
+                request.timeout = timer.newTimeout(new TimerTask() {
+                    @Override
+                    public void run(Timeout timeout) {
+                        ctx.executor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (outstanding.remove(request)) {
+                                    request.promise.tryFailure(new TimeoutException("no response to " + request.key));
+                                    next(ctx);
+                                }
+                            }
+                        });
+                    }
+                }, request.timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        Object key = correlation.responseKey(msg);
+        Request request = key == null ? null : remove(key);
+        if (request == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        if (request.timeout != null) {
+            request.timeout.cancel();
+        }
+        if (request.device != null) {
+            latency0(request.device).record(System.nanoTime() - request.startNanos);
+        }
+        if (!request.promise.trySuccess(msg)) {
+            ReferenceCountUtil.release(msg);
+        }
+        next(ctx);
+    }
+
+    private Request remove(Object key) {
+        for (Iterator<Request> i = outstanding.iterator(); i.hasNext(); ) {
+            Request request = i.next();
+            if (key.equals(request.key)) {
+                i.remove();
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private LatencyHistogram latency0(Object device) {
+        LatencyHistogram latency = latencies.get(device);
+        if (latency == null) {
+            // Only created by the event loop.
+            latency = new LatencyHistogram();
+            latencies.put(device, latency);
+        }
+        return latency;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        failAll(new ClosedChannelException());
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        failAll(new ClosedChannelException());
+    }
+
+    private void failAll(Throwable cause) {
+        Request request;
+        while ((request = outstanding.poll()) != null) {
+            if (request.timeout != null) {
+                request.timeout.cancel();
+            }
+            request.promise.tryFailure(cause);
+        }
+        while ((request = queued.poll()) != null) {
+            request.fail(cause);
+        }
+    }
+
+    private static final class Request {
+        final Object msg;
+        final Object key;
+        final Object device;
+        final long timeoutNanos;
+        final Promise<Object> promise;
+        long startNanos;
+        Timeout timeout;
+
+        Request(Object msg, Object key, Object device, long timeoutNanos, Promise<Object> promise) {
+            this.msg = msg;
+            this.key = key;
+            this.device = device;
+            this.timeoutNanos = timeoutNanos;
+            this.promise = promise;
+        }
+
+        void fail(Throwable cause) {
+            ReferenceCountUtil.release(msg);
+            promise.tryFailure(cause);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package tech.yaog.netty.serialportandroid.bus;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import tech.yaog.netty.serialportandroid.codec.modbus.ModbusRtuFrame;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shares one serial channel to an RS-485 bus between any number of components, each talking to its
+ * slave through its own {@link SerialBusSession}. The bus is half duplex, so only one transaction is
+ * on the line at a time: a request is written and the line stays reserved until the addressed slave
+ * answered or the response timeout elapsed. Then the next session with queued requests takes its
+ * turn, round robin, so a busy session cannot starve the others and the line never idles while
+ * anything is queued.
+ * <p>
+ * Responses are routed to the session by their address. Everything else, like unsolicited frames or
+ * late responses, continues down the pipeline. The multiplexer goes last, after the codec:
+ * <pre>
+ * SerialBusMultiplexer bus = new SerialBusMultiplexer(SerialBusMultiplexer.MODBUS_RTU, 100, TimeUnit.MILLISECONDS);
+ * pipeline.addLast(new InterCharacterGapFrameDecoder(), new ModbusRtuDecoder(), new ModbusRtuEncoder(), bus);
+ *
+ * Future&lt;Object&gt; response = bus.session(17).request(ModbusRtuFrame.newInstance(17, 3, payload));
+ * </pre>
+ */
+public class SerialBusMultiplexer extends ChannelInboundHandlerAdapter {
+
+    /**
+     * Tells the slave address of the bus messages.
+     */
+    public interface AddressResolver {
+        /**
+         * @return the address of the slave {@code msg} is sent to or comes from, {@code -1} if none
+         */
+        int address(Object msg);
+    }
+
+    /**
+     * Resolves the address of {@link ModbusRtuFrame}s.
+     */
+    public static final AddressResolver MODBUS_RTU = new AddressResolver() {
+        @Override
+        public int address(Object msg) {
+            return msg instanceof ModbusRtuFrame ? ((ModbusRtuFrame) msg).address() : -1;
+        }
+    };
+
+    private final AddressResolver resolver;
+    private final long responseTimeoutNanos;
+    private final IntObjectMap<SerialBusSession> sessions = new IntObjectHashMap<SerialBusSession>();
+    // Sessions with queued transactions in their turn order, only touched by the event loop.
+    private final ArrayDeque<SerialBusSession> ready = new ArrayDeque<SerialBusSession>();
+    private volatile ChannelHandlerContext ctx;
+    private Transaction current;
+    private SerialBusSession lastServed;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param resolver        tells the slave address of requests and responses
+     * @param responseTimeout how long the line is reserved for a response after a request was written
+     * @param unit            the unit of {@code responseTimeout}
+     */
+    public SerialBusMultiplexer(AddressResolver resolver, long responseTimeout, TimeUnit unit) {
+        if (resolver == null) {
+            throw new NullPointerException("resolver");
+        }
+        if (responseTimeout <= 0) {
+            throw new IllegalArgumentException("responseTimeout must be > 0: " + responseTimeout);
+        }
+        this.resolver = resolver;
+        this.responseTimeoutNanos = unit.toNanos(responseTimeout);
+    }
+
+    /**
+     * Returns the session of the slave at {@code address}, the same one for every call. Sessions are
+     * lightweight and can be used from any thread.
+     */
+    public SerialBusSession session(int address) {
+        if (address < 0) {
+            throw new IllegalArgumentException("address must be >= 0: " + address);
+        }
+        synchronized (sessions) {
+            SerialBusSession session = sessions.get(address);
+            if (session == null) {
+                session = new SerialBusSession(this, address);
+                sessions.put(address, session);
+            }
+            return session;
+        }
+    }
+
+    Future<Object> submit(SerialBusSession session, Object msg, boolean expectResponse) {
+        final ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null) {
+            ReferenceCountUtil.release(msg);
+            throw new IllegalStateException("not added to a pipeline");
+        }
+        EventExecutor executor = ctx.executor();
+        final Transaction transaction = new Transaction(session, msg, expectResponse, executor.<Object>newPromise());
+        if (executor.inEventLoop()) {
+            enqueue(ctx, transaction);
+        } else {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    enqueue(ctx, transaction);
+                }
+            });
+        }
+        return transaction.promise;
+    }
+
+    private void enqueue(ChannelHandlerContext ctx, Transaction transaction) {
+        if (ctx.isRemoved() || !ctx.channel().isActive()) {
+            transaction.fail(new ClosedChannelException());
+            return;
+        }
+        SerialBusSession session = transaction.session;
+        if (session.queue.isEmpty()) {
+            ready.add(session);
+        }
+        session.queue.add(transaction);
+        next(ctx);
+    }
+
+    private void next(ChannelHandlerContext ctx) {
+        while (current == null) {
+            SerialBusSession session = ready.poll();
+            if (session == null) {
+                return;
+            }
+            if (session == lastServed && !ready.isEmpty()) {
+                // Queued again while its last transaction was on the line, the others go first.
+                ready.add(session);
+                session = ready.poll();
+            }
+            Transaction transaction = session.queue.poll();
+            if (!session.queue.isEmpty()) {
+                // Back of the line, the other sessions go first.
+                ready.add(session);
+            }
+            if (!transaction.promise.setUncancellable()) {
+                ReferenceCountUtil.release(transaction.msg);
+                continue;
+            }
+            lastServed = session;
+            start(ctx, transaction);
+        }
+    }
+
+    private void start(final ChannelHandlerContext ctx, final Transaction transaction) {
+        current = transaction;
+        ctx.writeAndFlush(transaction.msg).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (current != transaction) {
+                    return;
+                }
+                if (!future.isSuccess()) {
+                    finish(ctx, transaction);
+                    transaction.promise.tryFailure(future.cause());
+                } else if (!transaction.expectResponse) {
+                    finish(ctx, transaction);
+                    transaction.promise.trySuccess(null);
+                } else {
+                    transaction.written = true;
+                    transaction.timeout = ctx.executor().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (current == transaction) {
+                                finish(ctx, transaction);
+                                transaction.promise.tryFailure(new TimeoutException(
+                                        "no response from slave " + transaction.session.address()));
+                            }
+                        }
+                    }, responseTimeoutNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        });
+    }
+
+    private void finish(ChannelHandlerContext ctx, Transaction transaction) {
+        current = null;
+        if (transaction.timeout != null) {
+            transaction.timeout.cancel(false);
+        }
+        next(ctx);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        Transaction transaction = current;
+        if (transaction == null || !transaction.written || resolver.address(msg) != transaction.session.address()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        current = null;
+        transaction.timeout.cancel(false);
+        if (!transaction.promise.trySuccess(msg)) {
+            ReferenceCountUtil.release(msg);
+        }
+        next(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        failAll(new ClosedChannelException());
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        failAll(new ClosedChannelException());
+    }
+
+    private void failAll(Throwable cause) {
+        Transaction transaction = current;
+        current = null;
+        if (transaction != null) {
+            if (transaction.timeout != null) {
+                transaction.timeout.cancel(false);
+            }
+            transaction.promise.tryFailure(cause);
+        }
+        SerialBusSession session;
+        while ((session = ready.poll()) != null) {
+            while ((transaction = session.queue.poll()) != null) {
+                transaction.fail(cause);
+            }
+        }
+    }
+
+    static final class Transaction {
+        final SerialBusSession session;
+        final Object msg;
+        final boolean expectResponse;
+        final Promise<Object> promise;
+        boolean written;
+        ScheduledFuture<?> timeout;
+
+        Transaction(SerialBusSession session, Object msg, boolean expectResponse, Promise<Object> promise) {
+            this.session = session;
+            this.msg = msg;
+            this.expectResponse = expectResponse;
+            this.promise = promise;
+        }
+
+        void fail(Throwable cause) {
+            ReferenceCountUtil.release(msg);
+            promise.tryFailure(cause);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package tech.yaog.netty.serialportandroid.bus;
+
+import io.netty.util.concurrent.Future;
+
+import java.util.ArrayDeque;
+
+/**
+ * The logical channel to one slave on a bus shared through a {@link SerialBusMultiplexer}. Messages
+ * are queued and written in order, interleaved fairly with the other sessions. Can be used from any
+ * thread.
+ */
+public final class SerialBusSession {
+
+    private final SerialBusMultiplexer bus;
+    private final int address;
+    // Only touched by the event loop.
+    final ArrayDeque<SerialBusMultiplexer.Transaction> queue = new ArrayDeque<SerialBusMultiplexer.Transaction>();
+
+    SerialBusSession(SerialBusMultiplexer bus, int address) {
+        this.bus = bus;
+        this.address = address;
+    }
+
+    /**
+     * @return the address of the slave
+     */
+    public int address() {
+        return address;
+    }
+
+    /**
+     * Writes {@code msg} once it is this session's turn and reserves the line for the response.
+     *
+     * @return completed with the response, which the caller has to release, or failed with a
+     * {@link java.util.concurrent.TimeoutException} if the slave did not answer in time. Cancelling
+     * it before the request was written takes the request back.
+     */
+    public Future<Object> request(Object msg) {
+        return bus.submit(this, msg, true);
+    }
+
+    /**
+     * Writes {@code msg}, which gets no response, like a broadcast, once it is this session's turn.
+     *
+     * @return completed with {@code null} once {@code msg} was written
+     */
+    public Future<Object> send(Object msg) {
+        return bus.submit(this, msg, false);
+    }
+
+    @Override
+    public String toString() {
+        return "SerialBusSession(" + address + ')';
+    }
+}
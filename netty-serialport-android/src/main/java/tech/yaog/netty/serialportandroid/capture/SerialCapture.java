@@ -0,0 +1,183 @@
+package tech.yaog.netty.serialportandroid.capture;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A ring file of timestamped traffic chunks, written through a memory mapping so recording costs a
+ * copy into memory and no system call. Once the file is full the oldest chunks are overwritten,
+ * which keeps the last {@code capacity} bytes of traffic, and whatever the process wrote survives
+ * a crash of it. Read it back with {@link SerialCaptureReader}.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: the magic {@code "SCAP"}, the
+ * format version, the wall clock time of the first timestamp in milliseconds, the offsets of the
+ * oldest chunk and of the next one to write, and the number of chunks. Each chunk is its length,
+ * its {@link Direction}, its timestamp in nanoseconds since the start of the capture and its data.
+ * A length of {@code -1}, or less than four bytes left, continues at the start of the data.
+ */
+public final class SerialCapture implements Closeable {
+
+    /**
+     * Which way a chunk went.
+     */
+    public enum Direction {
+        /**
+         * Received from the device.
+         */
+        INBOUND,
+        /**
+         * Written to the device.
+         */
+        OUTBOUND
+    }
+
+    static final int MAGIC = 0x53434150;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    static final int CHUNK_HEADER_SIZE = 13;
+    static final int WRAP = -1;
+
+    static final int START_MILLIS_OFFSET = 8;
+    static final int HEAD_OFFSET = 16;
+    static final int TAIL_OFFSET = 24;
+    static final int COUNT_OFFSET = 32;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long startNanos;
+    private int head = HEADER_SIZE;
+    private int tail = HEADER_SIZE;
+    private long count;
+    private boolean closed;
+
+    private SerialCapture(RandomAccessFile file, MappedByteBuffer buffer, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        startNanos = System.nanoTime();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(START_MILLIS_OFFSET, System.currentTimeMillis());
+        writePositions();
+    }
+
+    /**
+     * Creates or truncates {@code file} and starts a capture in it.
+     *
+     * @param capacity the size of the file, the header included
+     */
+    public static SerialCapture open(File file, int capacity) throws IOException {
+        if (capacity < HEADER_SIZE + CHUNK_HEADER_SIZE + 1) {
+            throw new IllegalArgumentException("capacity must be >= " + (HEADER_SIZE + CHUNK_HEADER_SIZE + 1)
+                    + ": " + capacity);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(capacity);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new SerialCapture(raf, buffer, capacity);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the readable bytes of {@code data}, without changing its indexes. Chunks longer than
+     * what fits into the file are recorded in parts with the same timestamp.
+     */
+    public synchronized void record(Direction direction, ByteBuf data) {
+        if (closed) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        int maxPart = capacity - HEADER_SIZE - CHUNK_HEADER_SIZE;
+        int index = data.readerIndex();
+        int remaining = data.readableBytes();
+        while (remaining > 0) {
+            int length = Math.min(remaining, maxPart);
+            append(direction, nanos, data, index, length);
+            index += length;
+            remaining -= length;
+        }
+        writePositions();
+    }
+
+    private void append(Direction direction, long nanos, ByteBuf data, int index, int length) {
+        int size = CHUNK_HEADER_SIZE + length;
+        if (tail + size > capacity) {
+            // Does not fit before the end, the rest of the file is given up.
+            evict(tail, capacity);
+            if (capacity - tail >= 4) {
+                buffer.putInt(tail, WRAP);
+            }
+            tail = HEADER_SIZE;
+        }
+        evict(tail, tail + size);
+        buffer.putInt(tail, length);
+        buffer.put(tail + 4, (byte) direction.ordinal());
+        buffer.putLong(tail + 5, nanos);
+        ByteBuffer target = buffer.duplicate();
+        target.position(tail + CHUNK_HEADER_SIZE);
+        target.limit(tail + size);
+        data.getBytes(index, target);
+        tail += size;
+        count++;
+    }
+
+    /**
+     * Drops the oldest chunks while they start in the given range.
+     */
+    private void evict(int from, int to) {
+        while (count > 0 && head >= from && head < to) {
+            int length = capacity - head >= 4 ? buffer.getInt(head) : WRAP;
+            if (length == WRAP) {
+                head = HEADER_SIZE;
+                continue;
+            }
+            head += CHUNK_HEADER_SIZE + length;
+            count--;
+        }
+        if (count == 0) {
+            head = tail;
+        }
+    }
+
+    private void writePositions() {
+        buffer.putLong(HEAD_OFFSET, head);
+        buffer.putLong(TAIL_OFFSET, tail);
+        buffer.putLong(COUNT_OFFSET, count);
+    }
+
+    /**
+     * @return the number of chunks in the file
+     */
+    public synchronized long count() {
+        return count;
+    }
+
+    /**
+     * Writes the mapped file to the storage and closes it, later records are ignored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            buffer.force();
+        } finally {
+            file.close();
+        }
+    }
+}
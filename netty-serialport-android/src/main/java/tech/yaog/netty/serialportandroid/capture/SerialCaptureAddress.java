@@ -0,0 +1,38 @@
+package tech.yaog.netty.serialportandroid.capture;
+
+import java.io.File;
+import java.net.SocketAddress;
+
+/**
+ * The {@link SerialCapture} file a {@link SerialReplayChannel} connects to.
+ */
+public class SerialCaptureAddress extends SocketAddress {
+
+    private static final long serialVersionUID = 5265392101526423416L;
+
+    private final File file;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file the capture to replay
+     */
+    public SerialCaptureAddress(File file) {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        this.file = file;
+    }
+
+    /**
+     * @return the capture to replay
+     */
+    public File file() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,52 @@
+package tech.yaog.netty.serialportandroid.capture;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Records the traffic of a serial channel into a {@link SerialCapture}, inbound when it is read and
+ * outbound when it is written to the channel. Goes first in the pipeline, before any codec, to see
+ * the raw bytes:
+ * <pre>
+ * SerialCapture capture = SerialCapture.open(new File(context.getFilesDir(), "port.scap"), 4 * 1024 * 1024);
+ * pipeline.addFirst(new SerialCaptureHandler(capture));
+ * </pre>
+ * Several channels may share a capture, their chunks are then interleaved. Closing the capture is up
+ * to the caller.
+ */
+@ChannelHandler.Sharable
+public class SerialCaptureHandler extends ChannelDuplexHandler {
+
+    private final SerialCapture capture;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param capture receives the chunks
+     */
+    public SerialCaptureHandler(SerialCapture capture) {
+        if (capture == null) {
+            throw new NullPointerException("capture");
+        }
+        this.capture = capture;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            capture.record(SerialCapture.Direction.INBOUND, (ByteBuf) msg);
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            capture.record(SerialCapture.Direction.OUTBOUND, (ByteBuf) msg);
+        }
+        ctx.write(msg, promise);
+    }
+}
@@ -0,0 +1,150 @@
+package tech.yaog.netty.serialportandroid.capture;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks through the chunks of a {@link SerialCapture} file, oldest first. The file may still be
+ * written, the reader sees the chunks that were in it when it was opened.
+ * <pre>
+ * SerialCaptureReader reader = SerialCaptureReader.open(file);
+ * while (reader.next()) {
+ *     process(reader.direction(), reader.nanos(), reader.length());
+ * }
+ * reader.close();
+ * </pre>
+ */
+public final class SerialCaptureReader implements Closeable {
+
+    private static final SerialCapture.Direction[] DIRECTIONS = SerialCapture.Direction.values();
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long startMillis;
+    private final long count;
+    private long remaining;
+    private int position;
+    private int length = -1;
+
+    private SerialCaptureReader(RandomAccessFile file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < SerialCapture.HEADER_SIZE || buffer.getInt(0) != SerialCapture.MAGIC) {
+            throw new IOException("not a serial capture");
+        }
+        if (buffer.getInt(4) != SerialCapture.VERSION) {
+            throw new IOException("unsupported serial capture version: " + buffer.getInt(4));
+        }
+        startMillis = buffer.getLong(SerialCapture.START_MILLIS_OFFSET);
+        position = (int) buffer.getLong(SerialCapture.HEAD_OFFSET);
+        count = buffer.getLong(SerialCapture.COUNT_OFFSET);
+        remaining = count;
+    }
+
+    /**
+     * Opens the capture in {@code file}.
+     */
+    public static SerialCaptureReader open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new SerialCaptureReader(raf, buffer);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the wall clock time of timestamp {@code 0}, in milliseconds since the epoch
+     */
+    public long startMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return the number of chunks in the capture
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Moves to the next chunk.
+     *
+     * @return false if there is none
+     */
+    public boolean next() throws IOException {
+        if (length >= 0) {
+            position += SerialCapture.CHUNK_HEADER_SIZE + length;
+            length = -1;
+        }
+        if (remaining == 0) {
+            return false;
+        }
+        if (buffer.capacity() - position < 4 || buffer.getInt(position) == SerialCapture.WRAP) {
+            position = SerialCapture.HEADER_SIZE;
+        }
+        int length = buffer.getInt(position);
+        if (length < 0 || position + SerialCapture.CHUNK_HEADER_SIZE + length > buffer.capacity()) {
+            throw new IOException("corrupt serial capture at " + position);
+        }
+        this.length = length;
+        remaining--;
+        return true;
+    }
+
+    private void ensureChunk() {
+        if (length < 0) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * @return the direction of the current chunk
+     */
+    public SerialCapture.Direction direction() {
+        ensureChunk();
+        return DIRECTIONS[buffer.get(position + 4) & 1];
+    }
+
+    /**
+     * @return the timestamp of the current chunk, in nanoseconds since the start of the capture
+     */
+    public long nanos() {
+        ensureChunk();
+        return buffer.getLong(position + 5);
+    }
+
+    /**
+     * @return the number of bytes of the current chunk
+     */
+    public int length() {
+        ensureChunk();
+        return length;
+    }
+
+    /**
+     * Writes the data of the current chunk to {@code dst}.
+     */
+    public void readData(ByteBuf dst) {
+        ensureChunk();
+        ByteBuffer data = buffer.duplicate();
+        data.position(position + SerialCapture.CHUNK_HEADER_SIZE);
+        data.limit(position + SerialCapture.CHUNK_HEADER_SIZE + length);
+        dst.writeBytes(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,242 @@
+package tech.yaog.netty.serialportandroid.capture;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds the inbound chunks of a {@link SerialCapture} into its pipeline, as if a device sent them,
+ * so decoders and handlers can be run against recorded traffic on any machine. The chunks keep the
+ * timing of the capture divided by {@code speed}, or follow each other as fast as the pipeline takes
+ * them. Writes are discarded, and the channel closes itself after the last chunk.
+ * <pre>
+ * Channel channel = new Bootstrap()
+ *         .group(new DefaultEventLoopGroup(1))
+ *         .channelFactory(new ChannelFactory&lt;SerialReplayChannel&gt;() {
+ *             public SerialReplayChannel newChannel() {
+ *                 return new SerialReplayChannel(1);
+ *             }
+ *         })
+ *         .handler(initializer)
+ *         .connect(new SerialCaptureAddress(file))
+ *         .syncUninterruptibly()
+ *         .channel();
+ * channel.closeFuture().syncUninterruptibly();
+ * </pre>
+ * Works on any event loop which runs scheduled tasks.
+ */
+public class SerialReplayChannel extends AbstractChannel {
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    private final double speed;
+    private final ChannelConfig config;
+
+    private volatile boolean open = true;
+    private volatile boolean active;
+    private SerialCaptureAddress address;
+    private SerialCaptureReader reader;
+    private long firstNanos = -1;
+    private long replayStartNanos;
+    private boolean deliveryScheduled;
+    private final Runnable deliverTask = new Runnable() {
+        @Override
+        public void run() {
+            deliveryScheduled = false;
+            deliver();
+        }
+    };
+
+    /**
+     * Creates a new instance which replays as fast as possible.
+     */
+    public SerialReplayChannel() {
+        this(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param speed how much faster than recorded to replay, {@code 1} for the original timing and
+     *              {@link Double#POSITIVE_INFINITY} for as fast as possible
+     */
+    public SerialReplayChannel(double speed) {
+        super(null);
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be > 0: " + speed);
+        }
+        this.speed = speed;
+        config = new DefaultChannelConfig(this);
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return true;
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new ReplayUnsafe();
+    }
+
+    @Override
+    public SerialCaptureAddress remoteAddress() {
+        return (SerialCaptureAddress) super.remoteAddress();
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return null;
+    }
+
+    @Override
+    protected SerialCaptureAddress remoteAddress0() {
+        return address;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doDisconnect() throws Exception {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        open = false;
+        active = false;
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    @Override
+    protected void doBeginRead() throws Exception {
+        scheduleDelivery();
+    }
+
+    /**
+     * Moves to the next inbound chunk and schedules it for its time.
+     */
+    private void scheduleDelivery() throws IOException {
+        if (deliveryScheduled || reader == null) {
+            return;
+        }
+        boolean found;
+        do {
+            found = reader.next();
+        } while (found && reader.direction() != SerialCapture.Direction.INBOUND);
+        deliveryScheduled = true;
+        if (!found) {
+            // Replayed everything, like a device going away.
+            eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    unsafe().close(unsafe().voidPromise());
+                }
+            });
+            return;
+        }
+        long delayNanos = 0;
+        if (!Double.isInfinite(speed)) {
+            if (firstNanos == -1) {
+                firstNanos = reader.nanos();
+                replayStartNanos = System.nanoTime();
+            }
+            delayNanos = (long) ((reader.nanos() - firstNanos) / speed) - (System.nanoTime() - replayStartNanos);
+        }
+        if (delayNanos > 0) {
+            eventLoop().schedule(deliverTask, delayNanos, TimeUnit.NANOSECONDS);
+        } else {
+            eventLoop().execute(deliverTask);
+        }
+    }
+
+    private void deliver() {
+        if (!isActive()) {
+            return;
+        }
+        ByteBuf buf = alloc().buffer(reader.length());
+        reader.readData(buf);
+        pipeline().fireChannelRead(buf);
+        // Auto read asks for the next chunk from here.
+        pipeline().fireChannelReadComplete();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        for (;;) {
+            Object msg = in.current();
+            if (msg == null) {
+                return;
+            }
+            if (msg instanceof ByteBuf) {
+                in.progress(((ByteBuf) msg).readableBytes());
+            }
+            in.remove();
+        }
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return msg;
+        }
+        throw new UnsupportedOperationException("unsupported message type: " + msg.getClass().getName());
+    }
+
+    private final class ReplayUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+            try {
+                if (reader != null) {
+                    throw new IllegalStateException("already connected");
+                }
+                address = (SerialCaptureAddress) remoteAddress;
+                reader = SerialCaptureReader.open(address.file());
+                active = true;
+                safeSetSuccess(promise);
+                pipeline().fireChannelActive();
+            } catch (Throwable t) {
+                safeSetFailure(promise, t);
+                closeIfClosed();
+            }
+        }
+    }
+}
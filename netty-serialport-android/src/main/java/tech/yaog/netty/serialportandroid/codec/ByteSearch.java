@@ -0,0 +1,70 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Finds delimiters in a {@link ByteBuf} eight bytes per step, for the frame decoders and encoders.
+ * {@link ByteBuf#indexOf(int, int, byte)} looks at one byte per step, which dominates the cost per
+ * byte of a codec at high baud rates.
+ */
+final class ByteSearch {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * @return the index of the first {@code value} in {@code buf} between {@code from} and {@code to},
+     * {@code -1} if there is none
+     */
+    static int indexOf(ByteBuf buf, int from, int to, byte value) {
+        long pattern = (value & 0xFF) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long found = zeroBytes(buf.getLongLE(i) ^ pattern);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buf.getByte(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first {@code a} or {@code b} in {@code buf} between {@code from} and
+     * {@code to}, {@code -1} if there is none
+     */
+    static int indexOfEither(ByteBuf buf, int from, int to, byte a, byte b) {
+        long patternA = (a & 0xFF) * ONES;
+        long patternB = (b & 0xFF) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = buf.getLongLE(i);
+            long found = zeroBytes(word ^ patternA) | zeroBytes(word ^ patternB);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            byte value = buf.getByte(i);
+            if (value == a || value == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the high bit of the lowest zero byte of {@code word}. Bytes above it may be flagged
+     * spuriously, so only the lowest flag counts.
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    private ByteSearch() {
+    }
+}
@@ -0,0 +1,79 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * A decoder of frames encoded with Consistent Overhead Byte Stuffing and delimited by a zero byte,
+ * as written by {@link CobsFrameEncoder}. The frames are decoded in place and emitted as retained
+ * slices of the cumulation. Each block is moved with a single copy, found by its code byte instead
+ * of looking at every byte.
+ * <p>
+ * Empty frames are skipped, e.g. a delimiter sent ahead of a frame to resynchronize the receiver.
+ * A frame whose last block is cut short by the delimiter fails with a {@link CorruptedFrameException}.
+ */
+public class CobsFrameDecoder extends StuffedFrameDecoder {
+
+    // Bytes of the current block still to come, and whether a zero follows it.
+    private int remaining;
+    private boolean zeroPending;
+
+    /**
+     * Creates a new instance for frames of up to 1024 bytes.
+     */
+    public CobsFrameDecoder() {
+        this(1024);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxFrameLength the maximum length of a decoded frame. A {@link TooLongFrameException}
+     *                       is thrown and the frame is discarded up to its end if it gets longer.
+     */
+    public CobsFrameDecoder(int maxFrameLength) {
+        super((byte) 0, maxFrameLength);
+    }
+
+    @Override
+    int unstuff(ByteBuf buf, int from, int to, int writerIndex) {
+        int i = from;
+        int w = writerIndex;
+        while (i < to) {
+            if (remaining == 0) {
+                if (zeroPending) {
+                    buf.setByte(w++, 0);
+                }
+                int code = buf.getUnsignedByte(i++);
+                remaining = code - 1;
+                zeroPending = code != 0xFF;
+                continue;
+            }
+            int length = Math.min(remaining, to - i);
+            // Behind by at least the code byte, a forward copy.
+            buf.setBytes(w, buf, i, length);
+            i += length;
+            w += length;
+            remaining -= length;
+        }
+        return w;
+    }
+
+    @Override
+    boolean isFrameComplete() {
+        // The zero after the last block is the delimiter itself.
+        return remaining == 0;
+    }
+
+    @Override
+    void resetFrame() {
+        remaining = 0;
+        zeroPending = false;
+    }
+
+    @Override
+    String stuffing() {
+        return "a COBS block";
+    }
+}
@@ -0,0 +1,50 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Encodes {@link ByteBuf}s with Consistent Overhead Byte Stuffing, followed by a zero byte as the
+ * delimiter, for {@link CobsFrameDecoder}. The buffer is sized for the worst case up front and the
+ * runs between zeros are copied straight into it, so a frame leaves the UART in one write.
+ */
+@ChannelHandler.Sharable
+public class CobsFrameEncoder extends MessageToByteEncoder<ByteBuf> {
+
+    private static final int MAX_BLOCK = 254;
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ByteBuf msg, boolean preferDirect) {
+        int length = msg.readableBytes();
+        // A code byte per block of up to 254 bytes, and the delimiter.
+        int encodedLength = length + length / MAX_BLOCK + 2;
+        return preferDirect ? ctx.alloc().ioBuffer(encodedLength) : ctx.alloc().heapBuffer(encodedLength);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
+        int i = msg.readerIndex();
+        int end = msg.writerIndex();
+        for (;;) {
+            int codeIndex = out.writerIndex();
+            out.writeByte(0);
+            int limit = Math.min(end, i + MAX_BLOCK);
+            int zero = ByteSearch.indexOf(msg, i, limit, (byte) 0);
+            int blockEnd = zero < 0 ? limit : zero;
+            out.writeBytes(msg, i, blockEnd - i);
+            out.setByte(codeIndex, blockEnd - i + 1);
+            if (zero >= 0) {
+                // The zero is implied by the code, a block follows even if it was the last byte.
+                i = zero + 1;
+            } else if (blockEnd < end) {
+                // A full block without a zero, code 0xFF.
+                i = blockEnd;
+            } else {
+                break;
+            }
+        }
+        out.writeByte(0);
+    }
+}
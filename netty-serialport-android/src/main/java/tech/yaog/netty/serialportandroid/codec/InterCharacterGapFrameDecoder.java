@@ -0,0 +1,164 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import tech.yaog.netty.serialportandroid.SerialPortChannelConfig;
+import tech.yaog.netty.serialportandroid.SerialPortChannelOption;
+import tech.yaog.netty.serialportandroid.SerialPortIdleEvent;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A decoder that splits the received {@link ByteBuf}s on silence of the line, as protocols like
+ * Modbus RTU mark their frame boundaries only that way. The gap is given in character times and
+ * derived from the channel's {@link SerialPortChannelOption#BAUD_RATE},
+ * {@link SerialPortChannelOption#DATA_BITS}, {@link SerialPortChannelOption#STOP_BITS} and
+ * {@link SerialPortChannelOption#PARITY_BIT}, e.g. 3.5 characters at 9600 baud 8E1 are 4.01ms.
+ * <p>
+ * The decoder keeps {@link SerialPortChannelOption#IDLE_GAP_MICROS} of the channel in sync with that
+ * gap, so the read path reports the silence after the last byte through {@link SerialPortIdleEvent}
+ * and no timer is needed. A gap between two reads splits the frame as well. Frames are emitted as
+ * retained slices of the cumulation, without copying.
+ * <p>
+ * Note that this changes the configuration of the channel: the idle gap is written when the decoder
+ * is added and on the first read after the line settings changed, overwriting whatever was set
+ * before, and stays after the decoder was removed. Use one such decoder per channel, and do not
+ * rely on the option for anything else meanwhile. On channels of other transports the gap is
+ * {@code minGap}, at least 1ns, and only a gap between two reads splits frames.
+ */
+public class InterCharacterGapFrameDecoder extends ByteToMessageDecoder {
+
+    private final double gapCharacters;
+    private final long minGapNanos;
+    private final int maxFrameLength;
+    private long lastReadNanos;
+    private boolean discarding;
+
+    /**
+     * Creates a new instance splitting frames on 3.5 character times of silence.
+     */
+    public InterCharacterGapFrameDecoder() {
+        this(3.5);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param gapCharacters the silence, in character times, that ends a frame
+     */
+    public InterCharacterGapFrameDecoder(double gapCharacters) {
+        this(gapCharacters, 0, TimeUnit.NANOSECONDS, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param gapCharacters  the silence, in character times, that ends a frame
+     * @param minGap         the lower bound of the silence, e.g. 1750µs above 19200 baud for Modbus RTU
+     * @param unit           the unit of {@code minGap}
+     * @param maxFrameLength the maximum length of a frame. A {@link TooLongFrameException} is thrown
+     *                       and the frame is discarded up to the next gap if it gets longer.
+     */
+    public InterCharacterGapFrameDecoder(double gapCharacters, long minGap, TimeUnit unit, int maxFrameLength) {
+        if (!(gapCharacters > 0)) {
+            throw new IllegalArgumentException("gapCharacters must be > 0: " + gapCharacters);
+        }
+        if (minGap < 0) {
+            throw new IllegalArgumentException("minGap must be >= 0: " + minGap);
+        }
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be > 0: " + maxFrameLength);
+        }
+        this.gapCharacters = gapCharacters;
+        this.minGapNanos = unit.toNanos(minGap);
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        gapNanos(ctx);
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            long now = System.nanoTime();
+            // Also picks up changed line settings before the read path waits for the next gap.
+            long gapNanos = gapNanos(ctx);
+            if (lastReadNanos != 0 && now - lastReadNanos >= gapNanos) {
+                fireFrame(ctx);
+            }
+            lastReadNanos = now;
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt == SerialPortIdleEvent.INSTANCE && fireFrame(ctx)) {
+            ctx.fireChannelReadComplete();
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (discarding) {
+            in.skipBytes(in.readableBytes());
+        } else if (in.readableBytes() > maxFrameLength) {
+            int frameLength = in.readableBytes();
+            in.skipBytes(frameLength);
+            discarding = true;
+            throw new TooLongFrameException(
+                    "frame length exceeds " + maxFrameLength + ": " + frameLength + " - discarding");
+        }
+    }
+
+    @Override
+    protected void decodeLast(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        decode(ctx, in, out);
+        if (in.isReadable()) {
+            out.add(in.readRetainedSlice(in.readableBytes()));
+        }
+    }
+
+    /**
+     * Emits everything cumulated so far as one frame.
+     *
+     * @return true if a frame was emitted
+     */
+    private boolean fireFrame(ChannelHandlerContext ctx) {
+        ByteBuf cumulation = internalBuffer();
+        discarding = false;
+        if (!cumulation.isReadable()) {
+            return false;
+        }
+        ctx.fireChannelRead(cumulation.readRetainedSlice(cumulation.readableBytes()));
+        return true;
+    }
+
+    /**
+     * Computes the gap from the current line settings and updates the channel's idle gap if they changed.
+     */
+    private long gapNanos(ChannelHandlerContext ctx) {
+        ChannelConfig config = ctx.channel().config();
+        if (!(config instanceof SerialPortChannelConfig)) {
+            return Math.max(1, minGapNanos);
+        }
+        SerialPortChannelConfig serialConfig = (SerialPortChannelConfig) config;
+        int bitsPerCharacter = 1 + serialConfig.getDatabits().bits() + serialConfig.getParitybit().bits()
+                + serialConfig.getStopbits().bits();
+        long gapNanos = Math.max(minGapNanos,
+                (long) (gapCharacters * bitsPerCharacter * TimeUnit.SECONDS.toNanos(1) / serialConfig.getBaudrate()));
+        int gapMicros = (int) Math.max(1, TimeUnit.NANOSECONDS.toMicros(gapNanos + 999));
+        if (serialConfig.getIdleGapMicros() != gapMicros) {
+            serialConfig.setIdleGapMicros(gapMicros);
+        }
+        return gapNanos;
+    }
+}
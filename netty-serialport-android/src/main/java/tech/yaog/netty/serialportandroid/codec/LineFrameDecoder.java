@@ -0,0 +1,100 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+/**
+ * A decoder that splits the received {@link ByteBuf}s into lines ending with {@code "\n"} or
+ * {@code "\r\n"}, like the NMEA sentences of GPS receivers and the responses of AT command modems.
+ * Unlike {@link io.netty.handler.codec.LineBasedFrameDecoder} it remembers how far it searched, so a
+ * line trickling in over many reads at a low baud rate is scanned once instead of from its start
+ * every time, and the search itself looks at eight bytes per step.
+ * <p>
+ * Lines are emitted without their line ending as retained slices of the cumulation, without copying.
+ * Trailing carriage returns are dropped as well, and empty lines are skipped, e.g. those framing the
+ * responses of a modem.
+ */
+public class LineFrameDecoder extends ByteToMessageDecoder {
+
+    private final int maxLength;
+    // Bytes after the reader index already searched for a line ending.
+    private int scanned;
+    private boolean discarding;
+
+    /**
+     * Creates a new instance for lines of up to 1024 bytes.
+     */
+    public LineFrameDecoder() {
+        this(1024);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxLength the maximum length of a line. A {@link TooLongFrameException} is thrown and
+     *                  the line is discarded up to its end if it gets longer.
+     */
+    public LineFrameDecoder(int maxLength) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("maxLength must be > 0: " + maxLength);
+        }
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        for (;;) {
+            int start = in.readerIndex();
+            int end = in.writerIndex();
+            int eol = indexOfLineFeed(in, start + scanned, end);
+            if (eol < 0) {
+                scanned = end - start;
+                if (scanned > maxLength) {
+                    in.skipBytes(scanned);
+                    scanned = 0;
+                    if (!discarding) {
+                        discarding = true;
+                        throw new TooLongFrameException("line length exceeds " + maxLength + " - discarding");
+                    }
+                }
+                return;
+            }
+            scanned = 0;
+            in.readerIndex(eol + 1);
+            if (discarding) {
+                // The rest of a discarded line.
+                discarding = false;
+                continue;
+            }
+            int lineEnd = eol;
+            while (lineEnd > start && in.getByte(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            int length = lineEnd - start;
+            if (length > maxLength) {
+                throw new TooLongFrameException("line length exceeds " + maxLength + ": " + length);
+            }
+            if (length > 0) {
+                out.add(in.retainedSlice(start, length));
+            }
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        scanned = 0;
+        discarding = false;
+    }
+
+    /**
+     * @return the index of the first {@code '\n'} in {@code buf} between {@code from} and {@code to},
+     * {@code -1} if there is none
+     */
+    static int indexOfLineFeed(ByteBuf buf, int from, int to) {
+        return ByteSearch.indexOf(buf, from, to, (byte) '\n');
+    }
+}
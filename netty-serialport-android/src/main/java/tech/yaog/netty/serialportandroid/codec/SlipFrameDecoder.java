@@ -0,0 +1,83 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * A decoder of SLIP frames (RFC 1055), ending with {@code END} (0xC0), with {@code END} and
+ * {@code ESC} (0xDB) escaped within, as written by {@link SlipFrameEncoder}. The frames are
+ * unescaped in place and emitted as retained slices of the cumulation, and a frame without escapes,
+ * the common case, is not moved at all.
+ * <p>
+ * Empty frames are skipped, e.g. the {@code END} sent ahead of each frame to flush line noise. An
+ * {@code ESC} followed by anything but {@code ESC_END} or {@code ESC_ESC} is kept as is, as RFC
+ * 1055 suggests, while one followed by {@code END} fails with a {@link CorruptedFrameException}.
+ */
+public class SlipFrameDecoder extends StuffedFrameDecoder {
+
+    static final byte END = (byte) 0xC0;
+    static final byte ESC = (byte) 0xDB;
+    static final byte ESC_END = (byte) 0xDC;
+    static final byte ESC_ESC = (byte) 0xDD;
+
+    private boolean escaped;
+
+    /**
+     * Creates a new instance for frames of up to 1006 bytes, the size of RFC 1055.
+     */
+    public SlipFrameDecoder() {
+        this(1006);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxFrameLength the maximum length of an unescaped frame. A {@link TooLongFrameException}
+     *                       is thrown and the frame is discarded up to its end if it gets longer.
+     */
+    public SlipFrameDecoder(int maxFrameLength) {
+        super(END, maxFrameLength);
+    }
+
+    @Override
+    int unstuff(ByteBuf buf, int from, int to, int writerIndex) {
+        int i = from;
+        int w = writerIndex;
+        while (i < to) {
+            if (escaped) {
+                byte b = buf.getByte(i++);
+                buf.setByte(w++, b == ESC_END ? END : b == ESC_ESC ? ESC : b);
+                escaped = false;
+                continue;
+            }
+            int esc = ByteSearch.indexOf(buf, i, to, ESC);
+            int runEnd = esc < 0 ? to : esc;
+            if (w != i) {
+                buf.setBytes(w, buf, i, runEnd - i);
+            }
+            w += runEnd - i;
+            i = runEnd;
+            if (esc >= 0) {
+                escaped = true;
+                i++;
+            }
+        }
+        return w;
+    }
+
+    @Override
+    boolean isFrameComplete() {
+        return !escaped;
+    }
+
+    @Override
+    void resetFrame() {
+        escaped = false;
+    }
+
+    @Override
+    String stuffing() {
+        return "a SLIP escape";
+    }
+}
@@ -0,0 +1,46 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import static tech.yaog.netty.serialportandroid.codec.SlipFrameDecoder.END;
+import static tech.yaog.netty.serialportandroid.codec.SlipFrameDecoder.ESC;
+import static tech.yaog.netty.serialportandroid.codec.SlipFrameDecoder.ESC_END;
+import static tech.yaog.netty.serialportandroid.codec.SlipFrameDecoder.ESC_ESC;
+
+/**
+ * Encodes {@link ByteBuf}s as SLIP frames (RFC 1055) for {@link SlipFrameDecoder}, between two
+ * {@code END}s: the leading one ends whatever line noise the receiver collected. The runs between
+ * the bytes to escape are copied straight into the buffer, so a frame leaves the UART in one write.
+ */
+@ChannelHandler.Sharable
+public class SlipFrameEncoder extends MessageToByteEncoder<ByteBuf> {
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ByteBuf msg, boolean preferDirect) {
+        int length = msg.readableBytes();
+        // Room for four times the escapes of random bytes, the buffer grows if there are more.
+        int encodedLength = length + (length >>> 5) + 2;
+        return preferDirect ? ctx.alloc().ioBuffer(encodedLength) : ctx.alloc().heapBuffer(encodedLength);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
+        int i = msg.readerIndex();
+        int end = msg.writerIndex();
+        out.writeByte(END);
+        for (;;) {
+            int special = ByteSearch.indexOfEither(msg, i, end, END, ESC);
+            int runEnd = special < 0 ? end : special;
+            out.writeBytes(msg, i, runEnd - i);
+            if (special < 0) {
+                break;
+            }
+            out.writeShort((ESC << 8) | (msg.getByte(special) == END ? ESC_END : ESC_ESC) & 0xFF);
+            i = special + 1;
+        }
+        out.writeByte(END);
+    }
+}
@@ -0,0 +1,136 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+/**
+ * Base of the decoders of byte stuffed frames, which end with a delimiter that does not occur
+ * anywhere else. Stuffing only ever makes a frame longer, so a frame is unstuffed in place, over
+ * its own bytes in the cumulation, and emitted as a retained slice without copying. Bytes are
+ * unstuffed as they arrive and never looked at again, however many reads a frame takes.
+ * <p>
+ * Positions are kept relative to the reader index, as the cumulation may be moved between reads.
+ * A received buffer which is shared, through a reference count above one, a slice or a duplicate,
+ * or which is read-only, is copied first, so the sender's bytes stay as they are.
+ */
+abstract class StuffedFrameDecoder extends ByteToMessageDecoder {
+
+    private final byte delimiter;
+    private final int maxFrameLength;
+    // Received bytes after the reader index already unstuffed, and the length they unstuffed to.
+    private int scanned;
+    private int written;
+    private boolean discarding;
+
+    StuffedFrameDecoder(byte delimiter, int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be > 0: " + maxFrameLength);
+        }
+        this.delimiter = delimiter;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf && !isExclusive((ByteBuf) msg)) {
+            // The first buffer becomes the cumulation, which is written to.
+            ByteBuf buf = (ByteBuf) msg;
+            try {
+                msg = buf.copy();
+            } finally {
+                buf.release();
+            }
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    /**
+     * @return true if nothing but this decoder sees the bytes of {@code buf}, so they may be overwritten
+     */
+    private static boolean isExclusive(ByteBuf buf) {
+        return buf.refCnt() == 1 && buf.unwrap() == null && !buf.isReadOnly();
+    }
+
+    @Override
+    protected final void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        for (;;) {
+            int start = in.readerIndex();
+            int end = in.writerIndex();
+            int delimiterIndex = ByteSearch.indexOf(in, start + scanned, end, delimiter);
+            if (discarding) {
+                if (delimiterIndex < 0) {
+                    in.skipBytes(end - start);
+                    return;
+                }
+                in.readerIndex(delimiterIndex + 1);
+                discarding = false;
+                continue;
+            }
+            int limit = delimiterIndex < 0 ? end : delimiterIndex;
+            written = unstuff(in, start + scanned, limit, start + written) - start;
+            scanned = limit - start;
+            if (delimiterIndex < 0) {
+                if (written > maxFrameLength) {
+                    in.skipBytes(scanned);
+                    reset();
+                    discarding = true;
+                    throw new TooLongFrameException("frame length exceeds " + maxFrameLength + " - discarding");
+                }
+                return;
+            }
+            in.readerIndex(delimiterIndex + 1);
+            int length = written;
+            boolean complete = isFrameComplete();
+            reset();
+            if (!complete) {
+                throw new CorruptedFrameException("frame ends in the middle of " + stuffing());
+            }
+            if (length > maxFrameLength) {
+                throw new TooLongFrameException("frame length exceeds " + maxFrameLength + ": " + length);
+            }
+            if (length > 0) {
+                out.add(in.retainedSlice(start, length));
+            }
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        reset();
+        discarding = false;
+    }
+
+    private void reset() {
+        scanned = 0;
+        written = 0;
+        resetFrame();
+    }
+
+    /**
+     * Unstuffs the bytes of {@code buf} between {@code from} and {@code to}, which contain no
+     * delimiter, to {@code writerIndex} onwards.
+     *
+     * @return the index after the last unstuffed byte written
+     */
+    abstract int unstuff(ByteBuf buf, int from, int to, int writerIndex);
+
+    /**
+     * @return false if the delimiter arrived where the stuffing expects more bytes
+     */
+    abstract boolean isFrameComplete();
+
+    /**
+     * Forgets the state of the current frame.
+     */
+    abstract void resetFrame();
+
+    /**
+     * @return what the stuffing expects more bytes of, for the error message
+     */
+    abstract String stuffing();
+}
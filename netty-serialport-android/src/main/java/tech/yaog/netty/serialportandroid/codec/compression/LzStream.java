@@ -0,0 +1,33 @@
+package tech.yaog.netty.serialportandroid.codec.compression;
+
+/**
+ * Constants of the token format described at {@link LzStreamEncoder}.
+ */
+final class LzStream {
+
+    static final int MIN_WINDOW_BITS = 8;
+    static final int MAX_WINDOW_BITS = 12;
+
+    static final int MAX_LITERALS = 128;
+    static final int MIN_MATCH = 3;
+    static final int MAX_MATCH = 65536;
+    // A length code of 7 is followed by extension bytes.
+    static final int EXTENDED_LENGTH = 7;
+    static final int MATCH = 0x80;
+
+    // Room for the bytes which are not history yet, a window is moved out of the way per this many.
+    static final int BUFFER_SLACK = 8192;
+    // The decompressed bytes passed on at most per buffer, give or take the literals of one token.
+    static final int MAX_OUTPUT = 8192;
+
+    static int checkWindowBits(int windowBits) {
+        if (windowBits < MIN_WINDOW_BITS || windowBits > MAX_WINDOW_BITS) {
+            throw new IllegalArgumentException("windowBits must be between " + MIN_WINDOW_BITS + " and "
+                    + MAX_WINDOW_BITS + ": " + windowBits);
+        }
+        return windowBits;
+    }
+
+    private LzStream() {
+    }
+}
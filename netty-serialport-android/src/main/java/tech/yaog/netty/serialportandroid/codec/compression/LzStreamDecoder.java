@@ -0,0 +1,186 @@
+package tech.yaog.netty.serialportandroid.codec.compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.List;
+
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.BUFFER_SLACK;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.EXTENDED_LENGTH;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MATCH;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MAX_MATCH;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MAX_OUTPUT;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MAX_WINDOW_BITS;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MIN_MATCH;
+
+/**
+ * Decompresses the inbound byte stream compressed by {@link LzStreamEncoder}, or by a peer in its
+ * format. Whatever the received bytes complete is emitted as one buffer per read, so a frame
+ * compressed on its own comes out as one buffer again; a token cut off by the end of a read is
+ * completed by the next one. A buffer is passed on as soon as it holds 8 KiB, and decompressing
+ * continues into a fresh one, so memory is bounded by the window and that however much a read
+ * expands.
+ * <p>
+ * A match reaching further back than the window, or than the stream so far, fails with a
+ * {@link CorruptedFrameException}, and the rest of the stream is discarded: it cannot be
+ * decompressed without what came before. Replace the decoder, and the encoder of the peer, to start
+ * over.
+ */
+public class LzStreamDecoder extends ByteToMessageDecoder {
+
+    private final int window;
+    // The last window bytes of the decompressed stream, and room for what follows.
+    private final byte[] history;
+    private int historyEnd;
+    // Bytes decompressed so far, up to the window.
+    private int available;
+    private boolean corrupted;
+
+    /**
+     * Creates a new instance with a window of 4 KiB, enough for any stream in the format.
+     */
+    public LzStreamDecoder() {
+        this(MAX_WINDOW_BITS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param windowBits how far back matches may reach, at least the window of the compressing side
+     */
+    public LzStreamDecoder(int windowBits) {
+        window = 1 << LzStream.checkWindowBits(windowBits);
+        history = new byte[window + BUFFER_SLACK];
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (corrupted) {
+            in.skipBytes(in.readableBytes());
+            return;
+        }
+        ByteBuf decompressed = null;
+        int matchOffset = 0;
+        int matchLength = 0;
+        try {
+            for (;;) {
+                if (decompressed != null && decompressed.readableBytes() >= MAX_OUTPUT) {
+                    // Passed on before going further, as a few bytes may expand to a lot.
+                    ByteBuf full = decompressed;
+                    decompressed = null;
+                    ctx.fireChannelRead(full);
+                }
+                if (matchLength > 0) {
+                    if (decompressed == null) {
+                        decompressed = ctx.alloc().buffer(Math.min(matchLength, MAX_OUTPUT));
+                    }
+                    int chunk = Math.min(matchLength, MAX_OUTPUT - decompressed.readableBytes());
+                    match(matchOffset, chunk, decompressed);
+                    matchLength -= chunk;
+                    continue;
+                }
+                int start = in.readerIndex();
+                int end = in.writerIndex();
+                if (start == end) {
+                    break;
+                }
+                int token = in.getUnsignedByte(start);
+                if ((token & MATCH) == 0) {
+                    int length = token + 1;
+                    if (end - start < 1 + length) {
+                        break;
+                    }
+                    if (decompressed == null) {
+                        decompressed = ctx.alloc().buffer(Math.min(in.readableBytes() * 2, MAX_OUTPUT));
+                    }
+                    literals(in, start + 1, length, decompressed);
+                    in.readerIndex(start + 1 + length);
+                    continue;
+                }
+                if (end - start < 2) {
+                    break;
+                }
+                int offset = ((token & 0x0F) << 8 | in.getUnsignedByte(start + 1)) + 1;
+                int code = (token >>> 4) & 0x07;
+                int length = code + MIN_MATCH;
+                int i = start + 2;
+                if (code == EXTENDED_LENGTH) {
+                    int extension;
+                    do {
+                        if (i == end) {
+                            return;
+                        }
+                        extension = in.getUnsignedByte(i++);
+                        length += extension;
+                        if (length > MAX_MATCH) {
+                            throw corrupted(in, "match length exceeds " + MAX_MATCH);
+                        }
+                    } while (extension == 0xFF);
+                }
+                if (offset > available) {
+                    throw corrupted(in, "match offset " + offset + " exceeds the history of "
+                            + available + " bytes");
+                }
+                in.readerIndex(i);
+                matchOffset = offset;
+                matchLength = length;
+            }
+        } finally {
+            if (decompressed != null) {
+                out.add(decompressed);
+            }
+        }
+    }
+
+    private CorruptedFrameException corrupted(ByteBuf in, String message) {
+        corrupted = true;
+        in.skipBytes(in.readableBytes());
+        return new CorruptedFrameException(message);
+    }
+
+    private void literals(ByteBuf in, int index, int length, ByteBuf out) {
+        if (history.length - historyEnd < length) {
+            slide();
+        }
+        in.getBytes(index, history, historyEnd, length);
+        out.writeBytes(history, historyEnd, length);
+        advance(length);
+    }
+
+    private void match(int offset, int length, ByteBuf out) {
+        while (length > 0) {
+            if (historyEnd == history.length) {
+                slide();
+            }
+            int chunk = Math.min(length, history.length - historyEnd);
+            int from = historyEnd - offset;
+            if (offset >= chunk) {
+                System.arraycopy(history, from, history, historyEnd, chunk);
+            } else {
+                // Repeats the bytes it produces.
+                for (int i = 0; i < chunk; i++) {
+                    history[historyEnd + i] = history[from + i];
+                }
+            }
+            out.writeBytes(history, historyEnd, chunk);
+            advance(chunk);
+            length -= chunk;
+        }
+    }
+
+    private void advance(int length) {
+        historyEnd += length;
+        available = Math.min(window, available + length);
+    }
+
+    /**
+     * Drops what is older than the window from the start of the history.
+     */
+    private void slide() {
+        int keep = Math.min(window, historyEnd);
+        System.arraycopy(history, historyEnd - keep, history, 0, keep);
+        historyEnd = keep;
+    }
+}
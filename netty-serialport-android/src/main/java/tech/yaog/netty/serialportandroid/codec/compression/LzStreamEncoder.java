@@ -0,0 +1,236 @@
+package tech.yaog.netty.serialportandroid.codec.compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.BUFFER_SLACK;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.EXTENDED_LENGTH;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MATCH;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MAX_LITERALS;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MAX_MATCH;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MAX_WINDOW_BITS;
+import static tech.yaog.netty.serialportandroid.codec.compression.LzStream.MIN_MATCH;
+
+/**
+ * Compresses the outbound byte stream with LZ77 over a small window, for slow links carrying
+ * repetitive data such as telemetry, and for peers with little memory: all the decompressing side
+ * needs is the window, 4 KiB at most, and a few lines of code. The history is kept across writes,
+ * so a record repeating the one before shrinks to a few bytes. {@link LzStreamDecoder} is the other
+ * half.
+ * <p>
+ * The stream is a sequence of byte aligned tokens without any header:
+ * <pre>
+ * 0nnnnnnn                 literals: the next n + 1 bytes as they are
+ * 1lllhhhh oooooooo [e...] match: copy bytes from (hhhh &lt;&lt; 8 | oooooooo) + 1 bytes back,
+ *                          lll + 3 of them if lll &lt; 7, otherwise 10 + the extension bytes e,
+ *                          which continue while they are 255; at most 65536
+ * </pre>
+ * A match may overlap the bytes it produces, to repeat a short run. As every token ends on a byte,
+ * the stream can be cut after any of them without padding, so flushing per frame costs nothing.
+ * <p>
+ * With {@code flushPerFrame}, each written {@link ByteBuf} is compressed to a buffer of its own,
+ * complete to its last byte, for framing codecs such as {@link
+ * tech.yaog.netty.serialportandroid.codec.CobsFrameEncoder} further down the pipeline. Otherwise
+ * the last literals are held back until the channel is flushed, so small writes compress as one;
+ * they are written on when the encoder is removed from the pipeline.
+ * <p>
+ * Lost or corrupted bytes corrupt the rest of the stream: either use a reliable link, or
+ * replace both ends after an error.
+ */
+public class LzStreamEncoder extends MessageToByteEncoder<ByteBuf> {
+
+    private static final int HASH_BITS = 12;
+    private static final int MAX_CHAIN = 16;
+
+    private final int window;
+    private final int mask;
+    private final boolean flushPerFrame;
+    // The last window bytes and those not compressed yet, buf[0] at stream position base.
+    private final byte[] buf;
+    // Stream positions of the last bytes with each hash, and of the one before at the same hash.
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] prev;
+    private int base;
+    private int literalStart;
+    private int pos;
+    private int end;
+
+    /**
+     * Creates a new instance with a window of 4 KiB which flushes per frame.
+     */
+    public LzStreamEncoder() {
+        this(MAX_WINDOW_BITS, true);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param windowBits    how far back matches may reach, from 8 for 256 bytes to 12 for 4 KiB. The
+     *                      decompressing side needs this much memory.
+     * @param flushPerFrame true to compress each written buffer completely, false to hold back the
+     *                      trailing literals until the channel is flushed
+     */
+    public LzStreamEncoder(int windowBits, boolean flushPerFrame) {
+        window = 1 << LzStream.checkWindowBits(windowBits);
+        mask = window - 1;
+        this.flushPerFrame = flushPerFrame;
+        buf = new byte[window + BUFFER_SLACK];
+        prev = new int[window];
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ByteBuf msg, boolean preferDirect) {
+        return allocateBuffer(ctx, end - literalStart + msg.readableBytes(), preferDirect);
+    }
+
+    private static ByteBuf allocateBuffer(ChannelHandlerContext ctx, int length, boolean preferDirect) {
+        // Nothing takes more than as literals.
+        int compressedLength = length + length / MAX_LITERALS + 1;
+        return preferDirect ? ctx.alloc().ioBuffer(compressedLength) : ctx.alloc().heapBuffer(compressedLength);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
+        while (msg.isReadable()) {
+            if (end == buf.length) {
+                slide();
+            }
+            int length = Math.min(msg.readableBytes(), buf.length - end);
+            msg.readBytes(buf, end, length);
+            end += length;
+            compress(out);
+        }
+        if (flushPerFrame) {
+            finish(out);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        writeHeldBack(ctx);
+        ctx.flush();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        // Written on, to go out with the next flush of the channel.
+        writeHeldBack(ctx);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flush(ctx);
+        ctx.close(promise);
+    }
+
+    private void writeHeldBack(ChannelHandlerContext ctx) {
+        if (end != literalStart) {
+            ByteBuf out = allocateBuffer(ctx, end - literalStart, true);
+            finish(out);
+            ctx.write(out);
+        }
+    }
+
+    private void compress(ByteBuf out) {
+        while (end - pos >= MIN_MATCH) {
+            int position = base + pos;
+            int maxLength = Math.min(end - pos, MAX_MATCH);
+            int bestLength = 0;
+            int bestOffset = 0;
+            int h = hash(pos);
+            int candidate = head[h];
+            for (int chain = 0; chain < MAX_CHAIN; chain++) {
+                int offset = position - candidate;
+                if (offset <= 0 || offset > window || offset > pos) {
+                    break;
+                }
+                int from = pos - offset;
+                if (buf[from + bestLength] == buf[pos + bestLength]) {
+                    int length = 0;
+                    while (length < maxLength && buf[from + length] == buf[pos + length]) {
+                        length++;
+                    }
+                    if (length > bestLength) {
+                        bestLength = length;
+                        bestOffset = offset;
+                        if (length == maxLength) {
+                            break;
+                        }
+                    }
+                }
+                int next = prev[candidate & mask];
+                if (position - next <= offset) {
+                    // Overwritten by a later position, the chain ends here.
+                    break;
+                }
+                candidate = next;
+            }
+            insert(h, position);
+            if (bestLength < MIN_MATCH) {
+                pos++;
+                if (pos - literalStart == MAX_LITERALS) {
+                    writeLiterals(out);
+                }
+                continue;
+            }
+            writeLiterals(out);
+            writeMatch(out, bestOffset, bestLength);
+            for (int i = 1; i < bestLength && end - (pos + i) >= MIN_MATCH; i++) {
+                insert(hash(pos + i), position + i);
+            }
+            pos += bestLength;
+            literalStart = pos;
+        }
+    }
+
+    private void finish(ByteBuf out) {
+        pos = end;
+        writeLiterals(out);
+    }
+
+    private int hash(int index) {
+        int bytes = (buf[index] & 0xFF) | (buf[index + 1] & 0xFF) << 8 | (buf[index + 2] & 0xFF) << 16;
+        return (bytes * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private void insert(int h, int position) {
+        prev[position & mask] = head[h];
+        head[h] = position;
+    }
+
+    private void writeLiterals(ByteBuf out) {
+        while (literalStart != pos) {
+            int length = Math.min(pos - literalStart, MAX_LITERALS);
+            out.writeByte(length - 1);
+            out.writeBytes(buf, literalStart, length);
+            literalStart += length;
+        }
+    }
+
+    private static void writeMatch(ByteBuf out, int offset, int length) {
+        int code = Math.min(length - MIN_MATCH, EXTENDED_LENGTH);
+        out.writeShort((MATCH | code << 4 | (offset - 1) >>> 8) << 8 | (offset - 1) & 0xFF);
+        if (code == EXTENDED_LENGTH) {
+            int extension = length - MIN_MATCH - EXTENDED_LENGTH;
+            for (; extension >= 0xFF; extension -= 0xFF) {
+                out.writeByte(0xFF);
+            }
+            out.writeByte(extension);
+        }
+    }
+
+    /**
+     * Drops what is older than the window from the start of the buffer.
+     */
+    private void slide() {
+        // The held back literals are less than the smallest window behind.
+        int shift = pos - window;
+        System.arraycopy(buf, shift, buf, 0, end - shift);
+        base += shift;
+        literalStart -= shift;
+        pos -= shift;
+        end -= shift;
+    }
+}
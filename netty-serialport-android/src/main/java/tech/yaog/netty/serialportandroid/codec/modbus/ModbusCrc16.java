@@ -0,0 +1,38 @@
+package tech.yaog.netty.serialportandroid.codec.modbus;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Table driven CRC-16/MODBUS (polynomial 0xA001 reflected, initial value 0xFFFF).
+ */
+public final class ModbusCrc16 {
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * Computes the CRC of {@code length} bytes of {@code buf} starting at {@code index}, without
+     * changing its indexes.
+     *
+     * @return the CRC, to be sent low byte first
+     */
+    public static int crc16(ByteBuf buf, int index, int length) {
+        int crc = 0xFFFF;
+        for (int i = index, end = index + length; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buf.getByte(i)) & 0xFF];
+        }
+        return crc;
+    }
+
+    private ModbusCrc16() {
+    }
+}
@@ -0,0 +1,46 @@
+package tech.yaog.netty.serialportandroid.codec.modbus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import tech.yaog.netty.serialportandroid.codec.InterCharacterGapFrameDecoder;
+
+import java.util.List;
+
+/**
+ * Decodes complete Modbus RTU frames, as split by an {@link InterCharacterGapFrameDecoder} in front
+ * of it, into {@link ModbusRtuFrame}s. The CRC is verified and the payload is a retained slice of
+ * the received frame, so a decoded frame allocates nothing but pooled objects.
+ * <pre>
+ * pipeline.addLast(new InterCharacterGapFrameDecoder(3.5, 1750, TimeUnit.MICROSECONDS, 256))
+ *         .addLast(new ModbusRtuDecoder())
+ *         .addLast(new ModbusRtuEncoder());
+ * </pre>
+ * Frames with a wrong CRC or shorter than 4 bytes are discarded with a {@link CorruptedFrameException}.
+ */
+@ChannelHandler.Sharable
+public class ModbusRtuDecoder extends MessageToMessageDecoder<ByteBuf> {
+
+    private static final int MIN_FRAME_LENGTH = 4;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        int length = msg.readableBytes();
+        if (length < MIN_FRAME_LENGTH) {
+            throw new CorruptedFrameException("frame too short: " + length);
+        }
+        int start = msg.readerIndex();
+        int crc = ModbusCrc16.crc16(msg, start, length - 2);
+        int received = msg.getUnsignedShortLE(start + length - 2);
+        if (crc != received) {
+            throw new CorruptedFrameException("CRC mismatch: expected " + crc + ", received " + received);
+        }
+        out.add(ModbusRtuFrame.newInstance(
+                msg.getUnsignedByte(start),
+                msg.getUnsignedByte(start + 1),
+                msg.retainedSlice(start + 2, length - MIN_FRAME_LENGTH)));
+        msg.skipBytes(length);
+    }
+}
@@ -0,0 +1,30 @@
+package tech.yaog.netty.serialportandroid.codec.modbus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Encodes {@link ModbusRtuFrame}s into a single buffer with the CRC appended, so a frame leaves the
+ * UART in one write. The frame is released, and so returned to its pool, once encoded.
+ */
+@ChannelHandler.Sharable
+public class ModbusRtuEncoder extends MessageToByteEncoder<ModbusRtuFrame> {
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ModbusRtuFrame msg, boolean preferDirect) {
+        int length = 4 + msg.payload().readableBytes();
+        return preferDirect ? ctx.alloc().ioBuffer(length) : ctx.alloc().heapBuffer(length);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ModbusRtuFrame msg, ByteBuf out) throws Exception {
+        int start = out.writerIndex();
+        ByteBuf payload = msg.payload();
+        out.writeByte(msg.address());
+        out.writeByte(msg.functionCode());
+        out.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+        out.writeShortLE(ModbusCrc16.crc16(out, start, out.writerIndex() - start));
+    }
+}
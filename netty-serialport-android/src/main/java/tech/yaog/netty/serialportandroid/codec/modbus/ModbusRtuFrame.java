@@ -0,0 +1,127 @@
+package tech.yaog.netty.serialportandroid.codec.modbus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+
+/**
+ * A Modbus RTU application data unit without its CRC, used for requests and responses alike.
+ * Instances are pooled: they are obtained through {@link #newInstance(int, int, ByteBuf)} and
+ * returned to the pool, together with their payload, by the final {@link #release()}.
+ */
+public final class ModbusRtuFrame extends AbstractReferenceCounted {
+
+    private static final Recycler<ModbusRtuFrame> RECYCLER = new Recycler<ModbusRtuFrame>() {
+        @Override
+        protected ModbusRtuFrame newObject(Handle<ModbusRtuFrame> handle) {
+            return new ModbusRtuFrame(handle);
+        }
+    };
+
+    private final Recycler.Handle<ModbusRtuFrame> handle;
+    private int address;
+    private int functionCode;
+    private ByteBuf payload;
+
+    /**
+     * Returns a pooled frame that takes over the ownership of {@code payload}.
+     *
+     * @param address      the slave address, 0 for broadcast
+     * @param functionCode the function code, with bit 7 set for exception responses
+     * @param payload      the data following the function code
+     */
+    public static ModbusRtuFrame newInstance(int address, int functionCode, ByteBuf payload) {
+        if (address < 0 || address > 0xFF) {
+            throw new IllegalArgumentException("address must be in [0, 255]: " + address);
+        }
+        if (functionCode < 0 || functionCode > 0xFF) {
+            throw new IllegalArgumentException("functionCode must be in [0, 255]: " + functionCode);
+        }
+        if (payload == null) {
+            throw new NullPointerException("payload");
+        }
+        ModbusRtuFrame frame = RECYCLER.get();
+        frame.setRefCnt(1);
+        frame.address = address;
+        frame.functionCode = functionCode;
+        frame.payload = payload;
+        return frame;
+    }
+
+    private ModbusRtuFrame(Recycler.Handle<ModbusRtuFrame> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return the slave address, 0 for broadcast
+     */
+    public int address() {
+        return address;
+    }
+
+    /**
+     * @return the function code as sent, including the exception bit
+     */
+    public int functionCode() {
+        return functionCode;
+    }
+
+    /**
+     * @return true if this is an exception response
+     */
+    public boolean isException() {
+        return (functionCode & 0x80) != 0;
+    }
+
+    /**
+     * @return the exception code of an exception response
+     */
+    public int exceptionCode() {
+        return payload.isReadable() ? payload.getUnsignedByte(payload.readerIndex()) : 0;
+    }
+
+    /**
+     * @return the data following the function code. For decoded frames this is a slice of the
+     *     received buffer.
+     */
+    public ByteBuf payload() {
+        return payload;
+    }
+
+    @Override
+    public ModbusRtuFrame retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public ModbusRtuFrame retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public ModbusRtuFrame touch() {
+        super.touch();
+        return this;
+    }
+
+    @Override
+    public ModbusRtuFrame touch(Object hint) {
+        payload.touch(hint);
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        payload.release();
+        payload = null;
+        handle.recycle(this);
+    }
+
+    @Override
+    public String toString() {
+        return "ModbusRtuFrame(address: " + address + ", functionCode: " + functionCode
+                + ", payload: " + payload + ')';
+    }
+}
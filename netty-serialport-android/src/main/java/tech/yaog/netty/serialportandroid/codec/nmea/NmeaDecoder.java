@@ -0,0 +1,56 @@
+package tech.yaog.netty.serialportandroid.codec.nmea;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import tech.yaog.netty.serialportandroid.codec.LineFrameDecoder;
+
+import java.util.List;
+
+/**
+ * Decodes lines, as split by a {@link LineFrameDecoder} in front of it, into {@link NmeaSentence}s.
+ * The checksum is verified in the same pass that finds the fields, and the sentence is a retained
+ * slice of the line.
+ * <pre>
+ * pipeline.addLast(new LineFrameDecoder(82))
+ *         .addLast(new NmeaDecoder());
+ * </pre>
+ * Lines not starting with {@code '$'} or {@code '!'}, like the responses of a modem sharing the port,
+ * are passed on unchanged. Sentences with a wrong checksum are discarded with a
+ * {@link CorruptedFrameException}.
+ */
+@ChannelHandler.Sharable
+public class NmeaDecoder extends MessageToMessageDecoder<ByteBuf> {
+
+    private final boolean requireChecksum;
+
+    /**
+     * Creates a new instance which requires every sentence to carry a checksum.
+     */
+    public NmeaDecoder() {
+        this(true);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param requireChecksum false to accept sentences without a checksum, as some older receivers
+     *                        send them
+     */
+    public NmeaDecoder(boolean requireChecksum) {
+        this.requireChecksum = requireChecksum;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        byte start = msg.isReadable() ? msg.getByte(msg.readerIndex()) : 0;
+        if (start != '$' && start != '!') {
+            out.add(msg.retain());
+            return;
+        }
+        out.add(NmeaSentence.decode(msg, requireChecksum));
+        msg.skipBytes(msg.readableBytes());
+    }
+}
@@ -0,0 +1,328 @@
+package tech.yaog.netty.serialportandroid.codec.nmea;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ByteProcessor;
+import io.netty.util.CharsetUtil;
+import io.netty.util.Recycler;
+
+/**
+ * An NMEA 0183 sentence as decoded by {@link NmeaDecoder}, e.g.
+ * {@code $GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47}. Field {@code 0} is the
+ * address, {@code GPGGA} here, and the data fields follow from {@code 1}. Fields are slices of the
+ * received line and parsed in place, so reading a sentence creates no Strings.
+ * <p>
+ * Instances are pooled and returned to the pool, together with the line, by the final
+ * {@link #release()}.
+ */
+public final class NmeaSentence extends AbstractReferenceCounted {
+
+    private static final Recycler<NmeaSentence> RECYCLER = new Recycler<NmeaSentence>() {
+        @Override
+        protected NmeaSentence newObject(Handle<NmeaSentence> handle) {
+            return new NmeaSentence(handle);
+        }
+    };
+
+    private static final int NO_CHECKSUM = -1;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final Recycler.Handle<NmeaSentence> handle;
+    private final Scanner scanner = new Scanner();
+    private char startCharacter;
+    private ByteBuf content;
+    // Offsets of the field starts in content, followed by the offset a field after the last would start at.
+    private int[] bounds = new int[32];
+    private int fieldCount;
+    private int checksum;
+
+    private NmeaSentence(Recycler.Handle<NmeaSentence> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Verifies the readable line in {@code buf}, which starts with the start character, and returns
+     * the sentence in it as a retained slice.
+     *
+     * @throws CorruptedFrameException if the checksum does not match, or is missing and required
+     */
+    static NmeaSentence decode(ByteBuf buf, boolean requireChecksum) {
+        int start = buf.readerIndex();
+        int end = buf.writerIndex();
+        NmeaSentence sentence = RECYCLER.get();
+        sentence.fieldCount = 1;
+        sentence.scanner.offset = 0;
+        sentence.scanner.checksum = 0;
+        int star = buf.forEachByte(start + 1, end - start - 1, sentence.scanner);
+        int contentLength = (star < 0 ? end : star) - start - 1;
+        sentence.bounds[sentence.fieldCount] = contentLength + 1;
+        int checksum = NO_CHECKSUM;
+        if (star >= 0) {
+            checksum = end - star == 3 ? hex(buf.getByte(star + 1)) << 4 | hex(buf.getByte(star + 2)) : -1;
+            if (checksum != sentence.scanner.checksum) {
+                int expected = sentence.scanner.checksum;
+                sentence.handle.recycle(sentence);
+                throw new CorruptedFrameException("checksum mismatch: expected " + expected
+                        + ", received " + buf.toString(star, end - star, CharsetUtil.US_ASCII));
+            }
+        } else if (requireChecksum) {
+            sentence.handle.recycle(sentence);
+            throw new CorruptedFrameException("missing checksum");
+        }
+        sentence.setRefCnt(1);
+        sentence.startCharacter = (char) buf.getByte(start);
+        sentence.checksum = checksum;
+        sentence.content = buf.retainedSlice(start + 1, contentLength);
+        return sentence;
+    }
+
+    private static int hex(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        return -256;
+    }
+
+    private void addField(int start) {
+        if (fieldCount + 1 >= bounds.length) {
+            int[] newBounds = new int[bounds.length << 1];
+            System.arraycopy(bounds, 0, newBounds, 0, fieldCount);
+            bounds = newBounds;
+        }
+        bounds[fieldCount++] = start;
+    }
+
+    /**
+     * @return {@code '$'} for parametric sentences, {@code '!'} for encapsulated ones like AIS
+     */
+    public char startCharacter() {
+        return startCharacter;
+    }
+
+    /**
+     * @return the sentence between the start character and the checksum, a slice of the received line
+     */
+    public ByteBuf content() {
+        return content;
+    }
+
+    /**
+     * @return true if the sentence carried a checksum, which was verified
+     */
+    public boolean hasChecksum() {
+        return checksum != NO_CHECKSUM;
+    }
+
+    /**
+     * @return the number of fields, including the address
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    private int fieldStart(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("field " + index + " of " + fieldCount);
+        }
+        return content.readerIndex() + bounds[index];
+    }
+
+    /**
+     * @return the length of the field at {@code index}
+     */
+    public int fieldLength(int index) {
+        fieldStart(index);
+        // The next field starts after the comma.
+        return bounds[index + 1] - bounds[index] - 1;
+    }
+
+    /**
+     * @return true if the field at {@code index} is empty, e.g. a value the receiver does not know
+     */
+    public boolean isEmpty(int index) {
+        return fieldLength(index) == 0;
+    }
+
+    /**
+     * @return the field at {@code index} as a slice of {@link #content()}, not retained
+     */
+    public ByteBuf field(int index) {
+        return content.slice(fieldStart(index), fieldLength(index));
+    }
+
+    /**
+     * @return true if the field at {@code index} consists of the characters of {@code value}
+     */
+    public boolean fieldEquals(int index, CharSequence value) {
+        int start = fieldStart(index);
+        int length = fieldLength(index);
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (content.getByte(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the sentence formatter, the end of the address after the talker, is
+     * {@code formatter}, e.g. {@code "GGA"} for {@code GPGGA} and {@code GNGGA} alike
+     */
+    public boolean isFormatter(CharSequence formatter) {
+        int start = fieldStart(0);
+        int length = fieldLength(0);
+        int offset = length - formatter.length();
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < formatter.length(); i++) {
+            if (content.getByte(start + offset + i) != formatter.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the single character of the field at {@code index}, e.g. {@code 'N'} or {@code 'A'},
+     * {@code 0} if it is empty
+     */
+    public char charField(int index) {
+        int start = fieldStart(index);
+        return fieldLength(index) == 0 ? 0 : (char) content.getByte(start);
+    }
+
+    /**
+     * @return the integer in the field at {@code index}
+     * @throws NumberFormatException if it is empty or no integer
+     */
+    public long longField(int index) {
+        int start = fieldStart(index);
+        int end = start + fieldLength(index);
+        int i = start;
+        boolean negative = i < end && content.getByte(i) == '-';
+        if (negative || i < end && content.getByte(i) == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("no integer in field " + index);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = content.getByte(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("no integer in field " + index);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the decimal number in the field at {@code index}, e.g. {@code 4807.038}
+     * @throws NumberFormatException if it is empty or no decimal number
+     */
+    public double doubleField(int index) {
+        int start = fieldStart(index);
+        int end = start + fieldLength(index);
+        int i = start;
+        boolean negative = i < end && content.getByte(i) == '-';
+        if (negative || i < end && content.getByte(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = content.getByte(i);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || digits == 18) {
+                throw new NumberFormatException("no decimal number in field " + index);
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("no decimal number in field " + index);
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    @Override
+    public NmeaSentence retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public NmeaSentence retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public NmeaSentence touch() {
+        super.touch();
+        return this;
+    }
+
+    @Override
+    public NmeaSentence touch(Object hint) {
+        content.touch(hint);
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        content.release();
+        content = null;
+        handle.recycle(this);
+    }
+
+    @Override
+    public String toString() {
+        return "NmeaSentence(" + startCharacter
+                + (content == null ? "" : content.toString(CharsetUtil.US_ASCII)) + ')';
+    }
+
+    /**
+     * Sums up the checksum and finds the field separators in one pass, up to the {@code '*'}.
+     */
+    private final class Scanner implements ByteProcessor {
+        int offset;
+        int checksum;
+
+        @Override
+        public boolean process(byte value) {
+            if (value == '*') {
+                return false;
+            }
+            checksum ^= value & 0xFF;
+            if (value == ',') {
+                addField(offset + 1);
+            }
+            offset++;
+            return true;
+        }
+    }
+}
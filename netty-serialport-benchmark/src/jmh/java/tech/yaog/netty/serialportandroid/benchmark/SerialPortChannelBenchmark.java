@@ -0,0 +1,114 @@
+package tech.yaog.netty.serialportandroid.benchmark;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.oio.OioEventLoopGroup;
+import io.netty.util.concurrent.Promise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import tech.yaog.netty.serialportandroid.SerialPortChannel;
+import tech.yaog.netty.serialportandroid.SerialPortChannelOption;
+import tech.yaog.netty.serialportandroid.SerialPortDeviceAddress;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through a {@link SerialPortChannel} connected to a loopback device: {@code burst}
+ * messages of {@code size} bytes are written and flushed at once, and the operation completes when
+ * all of them were read back through the pipeline. Throughput mode gives the sustained rate,
+ * sample mode the latency distribution of a round trip.
+ * <p>
+ * The device is the in-memory loopback of the stand-in {@link tech.yaog.hardwares.serialport.SerialPort},
+ * which returns {@code -1} while empty, read with {@link SerialPortChannelOption#READ_TIMEOUT} of 1ms.
+ * So the numbers mostly show how fast the channel polls the stub, not a tty; use
+ * {@code PseudoTerminalChannelTest} for the real read path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerialPortChannelBenchmark {
+
+    @Param({"16", "256"})
+    public int size;
+
+    @Param({"1", "64"})
+    public int burst;
+
+    @Param({"false", "true"})
+    public boolean directBuffer;
+
+    private EventLoopGroup group;
+    private Channel channel;
+    private ByteBuf payload;
+    private ReadBackHandler handler;
+
+    @Setup
+    public void setup() {
+        group = new OioEventLoopGroup(1);
+        handler = new ReadBackHandler();
+        channel = new Bootstrap()
+                .group(group)
+                .channel(SerialPortChannel.class)
+                .option(SerialPortChannelOption.READ_TIMEOUT, 1)
+                .option(SerialPortChannelOption.DIRECT_BUFFER, directBuffer)
+                .handler(handler)
+                .connect(new SerialPortDeviceAddress("loopback"))
+                .syncUninterruptibly()
+                .channel();
+        payload = Unpooled.unreleasableBuffer(directBuffer
+                ? Unpooled.directBuffer(size).writeZero(size) : Unpooled.buffer(size).writeZero(size));
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.close().syncUninterruptibly();
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Benchmark
+    public void roundTrip() {
+        Promise<Void> done = handler.expect(channel.eventLoop().<Void>newPromise(), size * burst);
+        for (int i = 0; i < burst; i++) {
+            channel.write(payload.duplicate());
+        }
+        channel.flush();
+        done.syncUninterruptibly();
+    }
+
+    private static final class ReadBackHandler extends ChannelInboundHandlerAdapter {
+        private Promise<Void> done;
+        private int remaining;
+
+        /**
+         * Called before the writes are submitted, so the event loop sees both fields once it
+         * reads back the first byte.
+         */
+        Promise<Void> expect(Promise<Void> done, int bytes) {
+            this.done = done;
+            this.remaining = bytes;
+            return done;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf buf = (ByteBuf) msg;
+            remaining -= buf.readableBytes();
+            buf.release();
+            if (remaining <= 0) {
+                done.trySuccess(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package tech.yaog.netty.serialportandroid.benchmark;
+
+import io.netty.channel.ChannelOption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tech.yaog.netty.serialportandroid.SerialPortChannel;
+import tech.yaog.netty.serialportandroid.SerialPortChannelConfig;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.BAUD_RATE;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.IDLE_GAP_MICROS;
+import static tech.yaog.netty.serialportandroid.SerialPortChannelOption.STOP_BITS;
+
+/**
+ * Cost of looking up and applying options through the generic {@link ChannelOption} interface, the
+ * way a bootstrap does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerialPortChannelConfigBenchmark {
+
+    private SerialPortChannelConfig config;
+    private int baudrate;
+
+    @Setup
+    public void setup() {
+        config = new SerialPortChannel().config();
+    }
+
+    @Benchmark
+    public int getSerialOption() {
+        return config.getOption(BAUD_RATE);
+    }
+
+    @Benchmark
+    public int getIdleGapOption() {
+        return config.getOption(IDLE_GAP_MICROS);
+    }
+
+    @Benchmark
+    public Object getInheritedOption() {
+        return config.getOption(ChannelOption.WRITE_SPIN_COUNT);
+    }
+
+    @Benchmark
+    public boolean setSerialOption() {
+        baudrate = baudrate == 115200 ? 9600 : 115200;
+        return config.setOption(BAUD_RATE, baudrate);
+    }
+
+    @Benchmark
+    public boolean setEnumOption() {
+        return config.setOption(STOP_BITS, SerialPortChannelConfig.Stopbits.STOPBITS_1);
+    }
+
+    @Benchmark
+    public Map<ChannelOption<?>, Object> getOptions() {
+        return config.getOptions();
+    }
+}
@@ -0,0 +1,76 @@
+package tech.yaog.netty.serialportandroid.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.yaog.netty.serialportandroid.SerialPortInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads {@code size} bytes per operation from a source that never runs dry, either one byte at a
+ * time or in bulk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerialPortInputStreamBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int size;
+
+    private SerialPortInputStream in;
+    private byte[] dst;
+
+    @Setup
+    public void setup() {
+        in = new SerialPortInputStream(new EndlessInputStream(), 1000);
+        dst = new byte[size];
+    }
+
+    @Benchmark
+    public void singleByteRead(Blackhole bh) throws IOException {
+        for (int i = 0; i < size; i++) {
+            bh.consume(in.read());
+        }
+    }
+
+    @Benchmark
+    public void bulkRead(Blackhole bh) throws IOException {
+        int remaining = size;
+        while (remaining > 0) {
+            remaining -= in.read(dst, size - remaining, remaining);
+        }
+        bh.consume(dst);
+    }
+
+    private static final class EndlessInputStream extends InputStream {
+        private int next;
+
+        @Override
+        public int read() {
+            return next++ & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                b[i] = (byte) next++;
+            }
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return Integer.MAX_VALUE;
+        }
+    }
+}
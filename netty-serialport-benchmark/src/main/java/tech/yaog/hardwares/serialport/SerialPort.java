@@ -0,0 +1,172 @@
+package tech.yaog.hardwares.serialport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Stand-in for the serial-port library, which only runs on Android. An existing device, like the
+ * slave side of a {@code PseudoTerminal}, is opened as file, just as the library does after it
+ * configured the tty. Any other device is an in-memory loopback: whatever is written to it is read
+ * back. Reading it while empty returns {@code -1}, just like a tty opened with VMIN=0 does.
+ */
+public class SerialPort {
+
+    public static final int STOP_BIT_1 = 1;
+    public static final int STOP_BIT_2 = 2;
+    public static final int CSIZE_5 = 5;
+    public static final int CSIZE_6 = 6;
+    public static final int CSIZE_7 = 7;
+    public static final int CSIZE_8 = 8;
+    public static final int PARITY_NONE = 0;
+    public static final int PARITY_ODD = 1;
+    public static final int PARITY_EVEN = 2;
+    public static final int PARITY_SPACE = 3;
+
+    private final RandomAccessFile file;
+    private final Loopback loopback;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    public SerialPort(File device, int baudrate, int dataBits, int parity, int stopBits,
+                      boolean rts, boolean dtr, int flags) throws SecurityException, IOException {
+        if (device.exists()) {
+            file = new RandomAccessFile(device, "rw");
+            loopback = null;
+            inputStream = new FileInputStream(file.getFD());
+            outputStream = new FileOutputStream(file.getFD());
+        } else {
+            file = null;
+            loopback = new Loopback();
+            inputStream = new LoopbackInputStream(loopback);
+            outputStream = new LoopbackOutputStream(loopback);
+        }
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public void close() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        } else {
+            loopback.close();
+        }
+    }
+
+    private static final class Loopback {
+        private byte[] buffer = new byte[4096];
+        private int readerIndex;
+        private int writerIndex;
+        private boolean closed;
+
+        synchronized int read(byte[] b, int off, int len) {
+            int readable = writerIndex - readerIndex;
+            if (readable == 0 || closed) {
+                return -1;
+            }
+            int n = Math.min(len, readable);
+            System.arraycopy(buffer, readerIndex, b, off, n);
+            readerIndex += n;
+            if (readerIndex == writerIndex) {
+                readerIndex = writerIndex = 0;
+            }
+            return n;
+        }
+
+        synchronized int available() {
+            return writerIndex - readerIndex;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("closed");
+            }
+            if (buffer.length - writerIndex < len) {
+                int readable = writerIndex - readerIndex;
+                byte[] dst = buffer;
+                if (buffer.length - readable < len) {
+                    dst = new byte[Math.max(buffer.length << 1, readable + len)];
+                }
+                System.arraycopy(buffer, readerIndex, dst, 0, readable);
+                buffer = dst;
+                readerIndex = 0;
+                writerIndex = readable;
+            }
+            System.arraycopy(b, off, buffer, writerIndex, len);
+            writerIndex += len;
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+    }
+
+    private static final class LoopbackInputStream extends InputStream {
+        private final Loopback loopback;
+        private final byte[] single = new byte[1];
+
+        LoopbackInputStream(Loopback loopback) {
+            this.loopback = loopback;
+        }
+
+        @Override
+        public int read() {
+            return loopback.read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            return loopback.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return loopback.available();
+        }
+
+        @Override
+        public void close() {
+            loopback.close();
+        }
+    }
+
+    private static final class LoopbackOutputStream extends OutputStream {
+        private final Loopback loopback;
+
+        LoopbackOutputStream(Loopback loopback) {
+            this.loopback = loopback;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            loopback.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            loopback.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            loopback.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks the RS-485 bookkeeping of {@link HalfDuplex} which does not need a transceiver.
+ */
+public class HalfDuplexTest {
+
+    @Test
+    public void derivesDelaysFromTheBitTime() {
+        SerialPortChannelConfig config = config(9600, false);
+        config.setRs485DelayBeforeSendBits(35);
+        config.setRs485DelayAfterSendBits(10);
+        HalfDuplex halfDuplex = new HalfDuplex(config);
+        // 104166ns per bit at 9600 baud.
+        assertEquals(35 * 104166, halfDuplex.delayBeforeSendNanos());
+        assertEquals(10 * 104166, halfDuplex.delayAfterSendNanos());
+        config.setBaudrate(115200);
+        assertEquals(10 * 8680, halfDuplex.delayAfterSendNanos());
+        config.setRs485DelayAfterSendBits(0);
+        assertEquals(0, halfDuplex.delayAfterSendNanos());
+    }
+
+    @Test
+    public void roundsDelaysUpToMillis() {
+        assertEquals(0, HalfDuplex.toMillis(0));
+        assertEquals(1, HalfDuplex.toMillis(1));
+        assertEquals(1, HalfDuplex.toMillis(1000000));
+        assertEquals(2, HalfDuplex.toMillis(1000001));
+        assertEquals(4, HalfDuplex.toMillis(35 * 104166));
+        assertEquals(Integer.MAX_VALUE, HalfDuplex.toMillis(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void stripsTheEchoAcrossReads() {
+        HalfDuplex halfDuplex = new HalfDuplex(config(9600, true));
+        halfDuplex.reset();
+        halfDuplex.transmitted(5);
+        ByteBuf buf = Unpooled.copiedBuffer("head", CharsetUtil.US_ASCII);
+        buf.writeBytes("abc".getBytes(CharsetUtil.US_ASCII));
+        halfDuplex.stripEcho(buf, 4);
+        assertEquals("head", buf.toString(CharsetUtil.US_ASCII));
+        buf.writeBytes("deXY".getBytes(CharsetUtil.US_ASCII));
+        halfDuplex.stripEcho(buf, 4);
+        assertEquals("headXY", buf.toString(CharsetUtil.US_ASCII));
+        // Everything echoed, the rest is left alone.
+        buf.writeBytes("Z".getBytes(CharsetUtil.US_ASCII));
+        halfDuplex.stripEcho(buf, 6);
+        assertEquals("headXYZ", buf.toString(CharsetUtil.US_ASCII));
+        buf.release();
+    }
+
+    @Test
+    public void keepsEverythingWithoutEcho() {
+        HalfDuplex halfDuplex = new HalfDuplex(config(9600, false));
+        halfDuplex.reset();
+        halfDuplex.transmitted(3);
+        ByteBuf buf = Unpooled.copiedBuffer("abc", CharsetUtil.US_ASCII);
+        halfDuplex.stripEcho(buf, 0);
+        assertEquals("abc", buf.toString(CharsetUtil.US_ASCII));
+        buf.release();
+    }
+
+    @Test
+    public void neverWaitsWithoutSwitching() throws Exception {
+        SerialPortChannelConfig config = config(9600, false);
+        config.setRs485(false);
+        config.setRs485DelayBeforeSendBits(1000);
+        HalfDuplex halfDuplex = new HalfDuplex(config);
+        halfDuplex.reset();
+        assertEquals(0, halfDuplex.beginTransmitNanos(-1));
+        assertFalse(halfDuplex.isTransmitting());
+        assertEquals(0, halfDuplex.endTransmitNanos(-1));
+    }
+
+    private static SerialPortChannelConfig config(int baudrate, boolean echo) {
+        SerialPortChannelConfig config = new SerialPortChannel().config();
+        config.setBaudrate(baudrate);
+        config.setRs485(true);
+        config.setRs485Echo(echo);
+        return config;
+    }
+}
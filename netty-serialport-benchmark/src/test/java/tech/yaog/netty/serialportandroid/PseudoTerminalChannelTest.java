@@ -0,0 +1,643 @@
+package tech.yaog.netty.serialportandroid;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.oio.OioEventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs both transports end to end against a {@link PseudoTerminal}, with {@link PtyDriver} playing
+ * the device. {@link SerialPortChannel} runs a second time on a shared event loop.
+ */
+@RunWith(Parameterized.class)
+public class PseudoTerminalChannelTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> transports() {
+        return Arrays.asList(new Object[][] {{"oio"}, {"epoll"}, {"shared"}});
+    }
+
+    private final boolean epoll;
+    private final boolean shared;
+
+    private PseudoTerminal pty;
+    private PtyDriver driver;
+    private EventLoopGroup group;
+    private Channel channel;
+    private boolean modemLineEvents;
+    private SerialPortChannelConfig.FlowControl flowControl = SerialPortChannelConfig.FlowControl.NONE;
+    private boolean transmitComplete;
+    private int transmitQueueMicros;
+    private RecvByteBufAllocator recvAllocator;
+    private ByteBufAllocator allocator;
+    private boolean directBuffer;
+    private boolean rs485;
+    private final Sink sink = new Sink();
+
+    public PseudoTerminalChannelTest(String transport) {
+        epoll = "epoll".equals(transport);
+        shared = "shared".equals(transport);
+    }
+
+    @BeforeClass
+    public static void checkNative() {
+        assumeTrue("libnetty-serialport is not available", PseudoTerminal.isAvailable());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        pty = PseudoTerminal.open();
+        driver = new PtyDriver(pty);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (channel != null) {
+            channel.close().syncUninterruptibly();
+        }
+        if (group != null) {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+        pty.close();
+    }
+
+    private void connect(boolean echo, boolean autoRead) {
+        connect(echo, autoRead, false, pty.deviceAddress());
+    }
+
+    private void connect(boolean echo, boolean autoRead, boolean autoReconnect, SerialPortDeviceAddress address) {
+        sink.echo = echo;
+        channel = bootstrap(autoRead, autoReconnect)
+                .connect(address)
+                .syncUninterruptibly()
+                .channel();
+    }
+
+    private Bootstrap bootstrap(boolean autoRead, boolean autoReconnect) {
+        if (shared) {
+            group = new DefaultEventLoopGroup(1);
+        } else {
+            group = epoll ? new EpollSerialPortEventLoopGroup(1) : new OioEventLoopGroup();
+        }
+        return new Bootstrap()
+                .group(group)
+                .channel(epoll ? EpollSerialPortChannel.class : SerialPortChannel.class)
+                .option(SerialPortChannelOption.READ_TIMEOUT, 10)
+                .option(ChannelOption.AUTO_READ, autoRead)
+                .option(SerialPortChannelOption.AUTO_RECONNECT, autoReconnect)
+                .option(SerialPortChannelOption.RECONNECT_MAX_DELAY, 50)
+                .option(SerialPortChannelOption.MODEM_LINE_EVENTS, modemLineEvents)
+                .option(SerialPortChannelOption.FLOW_CONTROL, flowControl)
+                .option(SerialPortChannelOption.BAUD_RATE, 921600)
+                .option(SerialPortChannelOption.TRANSMIT_COMPLETE, transmitComplete)
+                .option(SerialPortChannelOption.TRANSMIT_QUEUE_MICROS, transmitQueueMicros)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, recvAllocator)
+                .option(ChannelOption.ALLOCATOR, allocator)
+                .option(SerialPortChannelOption.DIRECT_BUFFER, directBuffer)
+                .option(SerialPortChannelOption.RS485, rs485)
+                .handler(sink);
+    }
+
+    @Test
+    public void opensManyPortsAtOnce() throws Exception {
+        List<PseudoTerminal> ptys = new ArrayList<PseudoTerminal>();
+        List<SerialPortDeviceAddress> addresses = new ArrayList<SerialPortDeviceAddress>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                PseudoTerminal pty = PseudoTerminal.open();
+                ptys.add(pty);
+                addresses.add(pty.deviceAddress());
+            }
+            // One that cannot be opened, the others open regardless.
+            addresses.add(new SerialPortDeviceAddress(System.getProperty("java.io.tmpdir")));
+            SerialPortBulkConnect ports = SerialPortBulkConnect.connect(
+                    bootstrap(true, false).handler(new Discard()), addresses);
+            assertTrue(ports.future().awaitUninterruptibly(TIMEOUT_MILLIS));
+            assertFalse(ports.future().isSuccess());
+            List<Channel> channels = ports.channels();
+            assertEquals(8, channels.size());
+            for (int i = 0; i < channels.size(); i++) {
+                assertTrue(channels.get(i).isActive());
+                assertEquals(addresses.get(i), channels.get(i).remoteAddress());
+                channels.get(i).close().syncUninterruptibly();
+            }
+        } finally {
+            for (PseudoTerminal pty : ptys) {
+                pty.close();
+            }
+        }
+    }
+
+    @Test
+    public void echoLatency() throws Exception {
+        connect(true, true);
+        long[] nanos = new long[200];
+        byte[] ping = new byte[1];
+        for (int i = 0; i < nanos.length; i++) {
+            ping[0] = (byte) i;
+            long start = System.nanoTime();
+            assertEquals(1, driver.send(ping, 0, 1, TIMEOUT_MILLIS));
+            assertArrayEquals(ping, driver.receive(1, TIMEOUT_MILLIS));
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        long median = nanos[nanos.length / 2];
+        long p99 = nanos[nanos.length * 99 / 100];
+        // The read timeout must not sneak into the latency, the line wakes the reader up.
+        assertTrue("median round trip " + median + "ns", median < TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue("p99 round trip " + p99 + "ns", p99 < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void inboundThroughput() throws Exception {
+        connect(false, true);
+        byte[] data = randomBytes(256 * 1024);
+        sink.expect(data.length);
+        long start = System.nanoTime();
+        assertEquals(data.length, driver.send(data, 4 * 1024 * 1024, 64, TIMEOUT_MILLIS));
+        assertTrue("timed out", sink.await(TIMEOUT_MILLIS));
+        long elapsed = System.nanoTime() - start;
+        assertArrayEquals(data, sink.received());
+        assertKeepsUpWithTheLine(data.length, elapsed);
+        assertEquals(data.length, metrics().bytesRead());
+        assertTrue(metrics().messagesRead() > 0 && metrics().messagesRead() <= metrics().readCalls());
+    }
+
+    @Test
+    public void outboundThroughput() throws Exception {
+        connect(false, true);
+        byte[] data = randomBytes(256 * 1024);
+        long start = System.nanoTime();
+        ChannelFuture written = null;
+        for (int i = 0; i < data.length; i += 100) {
+            written = channel.write(Unpooled.wrappedBuffer(data, i, Math.min(100, data.length - i)));
+        }
+        channel.flush();
+        byte[] received = driver.receive(data.length, TIMEOUT_MILLIS);
+        long elapsed = System.nanoTime() - start;
+        assertTrue("write not completed", written.awaitUninterruptibly(TIMEOUT_MILLIS));
+        // The futures complete before the write loop counts the messages, let it finish.
+        channel.eventLoop().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).syncUninterruptibly();
+        assertArrayEquals(data, received);
+        assertKeepsUpWithTheLine(data.length, elapsed);
+        assertEquals(data.length, metrics().bytesWritten());
+        assertEquals((data.length + 99) / 100, metrics().messagesWritten());
+        assertEquals(0, metrics().pendingOutboundBytes());
+    }
+
+    @Test
+    public void gatheringWritesResumeAfterPartialWrites() throws Exception {
+        connect(false, true);
+        byte[] data = randomBytes(256 * 1024);
+        for (int i = 0; i < data.length; i += 100) {
+            channel.write(Unpooled.wrappedBuffer(data, i, Math.min(100, data.length - i)));
+        }
+        ChannelFuture written = channel.writeAndFlush(Unpooled.EMPTY_BUFFER);
+        // Nothing is read yet, the terminal fills up and the writes stop in the middle of a buffer.
+        Thread.sleep(100);
+        assertFalse(written.isDone());
+        assertArrayEquals(data, driver.receive(data.length, TIMEOUT_MILLIS));
+        assertTrue("write not completed", written.awaitUninterruptibly(TIMEOUT_MILLIS));
+        assertTrue(written.isSuccess());
+    }
+
+    @Test
+    public void heapWritesSurviveAnInterrupt() throws Exception {
+        assumeTrue(!epoll);
+        connect(false, true);
+        final byte[] data = randomBytes(1000);
+        final ChannelFuture[] written = new ChannelFuture[1];
+        channel.eventLoop().submit(new Runnable() {
+            @Override
+            public void run() {
+                // An interrupted FileChannel would close the port.
+                Thread.currentThread().interrupt();
+                written[0] = channel.writeAndFlush(Unpooled.wrappedBuffer(data));
+                Thread.interrupted();
+            }
+        }).syncUninterruptibly();
+        assertTrue(written[0].isSuccess());
+        assertArrayEquals(data, driver.receive(data.length, TIMEOUT_MILLIS));
+        assertTrue(channel.isActive());
+        ChannelFuture writtenAfter = channel.writeAndFlush(Unpooled.wrappedBuffer(data));
+        assertArrayEquals(data, driver.receive(data.length, TIMEOUT_MILLIS));
+        assertTrue(writtenAfter.awaitUninterruptibly(TIMEOUT_MILLIS) && writtenAfter.isSuccess());
+    }
+
+    @Test
+    public void pacedWritesCompleteWhenTransmitted() throws Exception {
+        transmitComplete = true;
+        transmitQueueMicros = 1000;
+        connect(false, true);
+        byte[] data = randomBytes(8 * 1024);
+        ChannelFuture written = null;
+        for (int i = 0; i < data.length; i += 100) {
+            written = channel.write(Unpooled.wrappedBuffer(data, i, Math.min(100, data.length - i)));
+        }
+        channel.flush();
+        assertArrayEquals(data, driver.receive(data.length, TIMEOUT_MILLIS));
+        assertTrue("write not completed", written.awaitUninterruptibly(TIMEOUT_MILLIS));
+        assertTrue(written.isSuccess());
+        channel.eventLoop().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).syncUninterruptibly();
+        assertEquals((data.length + 99) / 100, metrics().messagesWritten());
+        assertEquals(0, metrics().pendingOutboundBytes());
+    }
+
+    @Test
+    public void pacedWritesKeepTheEventLoopResponsive() throws Exception {
+        // A channel on a thread of its own may block it.
+        assumeTrue(epoll || shared);
+        transmitComplete = true;
+        transmitQueueMicros = 1000;
+        connect(false, true);
+        byte[] data = randomBytes(8 * 1024);
+        ChannelFuture written = channel.writeAndFlush(Unpooled.wrappedBuffer(data));
+        // Nothing is read off the terminal, so the tty stays full.
+        Thread.sleep(100);
+        assertFalse(written.isDone());
+        assertRunsPromptly(channel.eventLoop());
+        assertArrayEquals(data, driver.receive(data.length, TIMEOUT_MILLIS));
+        assertTrue(written.awaitUninterruptibly(TIMEOUT_MILLIS) && written.isSuccess());
+    }
+
+    @Test
+    public void serialAllocatorSizesBuffersToTheLine() throws Exception {
+        recvAllocator = new SerialPortRecvByteBufAllocator();
+        connect(false, true);
+        byte[] data = randomBytes(64 * 1024);
+        sink.expect(data.length);
+        assertEquals(data.length, driver.send(data, 64 * 1024, 64, TIMEOUT_MILLIS));
+        assertTrue("timed out", sink.await(TIMEOUT_MILLIS));
+        assertArrayEquals(data, sink.received());
+        // What the buffers are sized to is checked by SerialPortRecvByteBufAllocatorTest.
+        assertEquals(data.length, metrics().bytesRead());
+    }
+
+    @Test
+    public void directBufferKeepsTheConfiguredAllocator() throws Exception {
+        allocator = new UnpooledByteBufAllocator(false);
+        directBuffer = true;
+        connect(false, true);
+        assertSame(allocator, channel.config().getAllocator());
+        byte[] data = randomBytes(4096);
+        sink.expect(data.length);
+        assertEquals(data.length, driver.send(data, 0, 64, TIMEOUT_MILLIS));
+        assertTrue("timed out", sink.await(TIMEOUT_MILLIS));
+        assertArrayEquals(data, sink.received());
+        assertTrue(sink.direct);
+    }
+
+    @Test
+    public void stalledReaderLosesNothing() throws Exception {
+        connect(false, false);
+        byte[] data = randomBytes(1024 * 1024);
+        sink.expect(data.length);
+        // Nobody reads, the terminal fills up and pushes back instead of overrunning.
+        int accepted = driver.trySend(data);
+        assertTrue("accepted " + accepted, accepted > 0 && accepted < data.length);
+        channel.config().setAutoRead(true);
+        byte[] rest = Arrays.copyOfRange(data, accepted, data.length);
+        assertEquals(rest.length, driver.send(rest, 0, rest.length, TIMEOUT_MILLIS));
+        assertTrue("timed out", sink.await(TIMEOUT_MILLIS));
+        assertArrayEquals(data, sink.received());
+    }
+
+    @Test
+    public void changesBaudrateInOrderWithWrites() throws Exception {
+        connect(false, true);
+        channel.config().setOption(SerialPortChannelOption.BAUD_RATE, 9600);
+        byte[] handshake = randomBytes(64);
+        channel.writeAndFlush(Unpooled.wrappedBuffer(handshake));
+        channel.config().setOption(SerialPortChannelOption.BAUD_RATE, 460800);
+        ChannelFuture written = channel.writeAndFlush(Unpooled.wrappedBuffer(handshake));
+        assertArrayEquals(handshake, driver.receive(handshake.length, TIMEOUT_MILLIS));
+        assertTrue("write not completed", written.awaitUninterruptibly(TIMEOUT_MILLIS));
+        assertArrayEquals(handshake, driver.receive(handshake.length, TIMEOUT_MILLIS));
+        assertEquals(460800, pty.baudrate());
+        assertTrue(channel.isActive());
+    }
+
+    @Test
+    public void reconnectsAfterDeviceLoss() throws Exception {
+        // A link stands in for the device node, which comes back under the same name.
+        File dir = Files.createTempDirectory("pty").toFile();
+        File link = new File(dir, "ttyUSB0");
+        Files.createSymbolicLink(link.toPath(), new File(pty.deviceAddress().value()).toPath());
+        try {
+            connect(false, true, true, new SerialPortDeviceAddress(link.getPath()));
+            byte[] before = randomBytes(100);
+            byte[] after = randomBytes(200);
+            sink.expect(before.length);
+            assertEquals(before.length, driver.send(before, 0, before.length, TIMEOUT_MILLIS));
+            assertTrue("timed out", sink.await(TIMEOUT_MILLIS));
+
+            // Unplugged: the terminal hangs up and its node disappears for a while.
+            pty.close();
+            assertTrue(link.delete());
+            assertSame(SerialPortDeviceEvent.LOST, sink.events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertTrue(channel.isActive());
+            ChannelFuture queued = channel.writeAndFlush(Unpooled.wrappedBuffer(after));
+            Thread.sleep(100);
+            assertTrue(sink.events.isEmpty());
+
+            pty = PseudoTerminal.open();
+            driver = new PtyDriver(pty);
+            Files.createSymbolicLink(link.toPath(), new File(pty.deviceAddress().value()).toPath());
+            assertSame(SerialPortDeviceEvent.RESTORED, sink.events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertArrayEquals(after, driver.receive(after.length, TIMEOUT_MILLIS));
+            assertTrue(queued.awaitUninterruptibly(TIMEOUT_MILLIS) && queued.isSuccess());
+
+            sink.expect(before.length + after.length);
+            assertEquals(after.length, driver.send(after, 0, after.length, TIMEOUT_MILLIS));
+            assertTrue("timed out", sink.await(TIMEOUT_MILLIS));
+            assertArrayEquals(after, Arrays.copyOfRange(sink.received(), before.length, before.length + after.length));
+            assertEquals(1, metrics().reconnects());
+        } finally {
+            link.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void xonXoffHoldsBackWrites() throws Exception {
+        flowControl = SerialPortChannelConfig.FlowControl.XON_XOFF;
+        connect(false, true);
+        sink.expect(4);
+        assertEquals(3, driver.send(new byte[] {1, SoftwareFlowControl.XOFF, 2}, 0, 3, TIMEOUT_MILLIS));
+        assertSame(Boolean.FALSE, sink.events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(!channel.isWritable());
+
+        byte[] data = randomBytes(100);
+        ChannelFuture written = channel.writeAndFlush(Unpooled.wrappedBuffer(data));
+        assertTrue(!pty.awaitReadable(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(!written.isDone());
+
+        assertEquals(3, driver.send(new byte[] {3, SoftwareFlowControl.XON, 4}, 0, 3, TIMEOUT_MILLIS));
+        assertSame(Boolean.TRUE, sink.events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertArrayEquals(data, driver.receive(data.length, TIMEOUT_MILLIS));
+        assertTrue(written.awaitUninterruptibly(TIMEOUT_MILLIS) && written.isSuccess());
+        // The control characters never reach the pipeline.
+        assertTrue("timed out", sink.await(TIMEOUT_MILLIS));
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, sink.received());
+    }
+
+    @Test
+    public void changesBaudrateInOrderWithHeldBackWrites() throws Exception {
+        flowControl = SerialPortChannelConfig.FlowControl.XON_XOFF;
+        connect(false, true);
+        int baudrate = pty.baudrate();
+        assertEquals(1, driver.send(new byte[] {SoftwareFlowControl.XOFF}, 0, 1, TIMEOUT_MILLIS));
+        assertSame(Boolean.FALSE, sink.events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        byte[] before = randomBytes(64);
+        byte[] after = randomBytes(64);
+        ChannelFuture writtenBefore = channel.writeAndFlush(Unpooled.wrappedBuffer(before));
+        channel.config().setOption(SerialPortChannelOption.BAUD_RATE, 460800);
+        ChannelFuture writtenAfter = channel.writeAndFlush(Unpooled.wrappedBuffer(after));
+        // Waits behind the held back write.
+        assertTrue(!pty.awaitReadable(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertEquals(baudrate, pty.baudrate());
+
+        assertEquals(1, driver.send(new byte[] {SoftwareFlowControl.XON}, 0, 1, TIMEOUT_MILLIS));
+        assertSame(Boolean.TRUE, sink.events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertArrayEquals(before, driver.receive(before.length, TIMEOUT_MILLIS));
+        assertArrayEquals(after, driver.receive(after.length, TIMEOUT_MILLIS));
+        assertTrue(writtenBefore.awaitUninterruptibly(TIMEOUT_MILLIS) && writtenBefore.isSuccess());
+        assertTrue(writtenAfter.awaitUninterruptibly(TIMEOUT_MILLIS) && writtenAfter.isSuccess());
+        assertEquals(460800, pty.baudrate());
+        assertEquals(2, metrics().messagesWritten());
+    }
+
+    @Test
+    public void changesBaudrateWithoutFlushingWrites() throws Exception {
+        connect(false, true);
+        // Nothing pending, applied at once.
+        channel.config().setOption(SerialPortChannelOption.BAUD_RATE, 9600);
+        assertRunsPromptly(channel.eventLoop());
+        assertEquals(9600, pty.baudrate());
+
+        byte[] unflushed = randomBytes(64);
+        ChannelFuture written = channel.write(Unpooled.wrappedBuffer(unflushed));
+        channel.config().setOption(SerialPortChannelOption.BAUD_RATE, 460800);
+        // Waits behind the write, which waits for its flush.
+        assertTrue(!pty.awaitReadable(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(!written.isDone());
+        assertEquals(9600, pty.baudrate());
+
+        channel.flush();
+        assertArrayEquals(unflushed, driver.receive(unflushed.length, TIMEOUT_MILLIS));
+        assertTrue(written.awaitUninterruptibly(TIMEOUT_MILLIS) && written.isSuccess());
+        assertRunsPromptly(channel.eventLoop());
+        assertEquals(460800, pty.baudrate());
+    }
+
+    @Test
+    public void worksOnWithoutModemLines() throws Exception {
+        modemLineEvents = true;
+        connect(true, true);
+        // Pseudo terminals have no modem lines, the channel does without the events.
+        try {
+            modemLines();
+            fail();
+        } catch (IOException expected) {
+            // expected
+        }
+        channel.config().setOption(SerialPortChannelOption.DTR, true);
+        byte[] ping = randomBytes(10);
+        assertEquals(ping.length, driver.send(ping, 0, ping.length, TIMEOUT_MILLIS));
+        assertArrayEquals(ping, driver.receive(ping.length, TIMEOUT_MILLIS));
+        assertTrue(channel.close().awaitUninterruptibly(TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void closesThePortWhenSetUpFails() throws Exception {
+        // Pseudo terminals have no RTS line to switch the direction with.
+        rs485 = true;
+        int opened = openDescriptors(pty.deviceAddress().value());
+        ChannelFuture connected = bootstrap(true, false).connect(pty.deviceAddress());
+        channel = connected.channel();
+        assertTrue(connected.awaitUninterruptibly(TIMEOUT_MILLIS));
+        assertTrue(connected.cause() instanceof IOException);
+        assertEquals(opened, openDescriptors(pty.deviceAddress().value()));
+    }
+
+    @Test
+    public void closesThePortWithoutBlockingTheEventLoop() throws Exception {
+        int opened = openDescriptors(pty.deviceAddress().value());
+        connect(false, true);
+        assertTrue(openDescriptors(pty.deviceAddress().value()) > opened);
+        ChannelFuture closed = channel.close();
+        assertRunsPromptly(channel.eventLoop());
+        assertTrue(closed.awaitUninterruptibly(TIMEOUT_MILLIS));
+        // A reader of a shared event loop releases the port once it stopped.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (openDescriptors(pty.deviceAddress().value()) > opened && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(opened, openDescriptors(pty.deviceAddress().value()));
+    }
+
+    /**
+     * @return how many descriptors of this process refer to {@code path}
+     */
+    private static int openDescriptors(String path) throws IOException {
+        File device = new File(path).getCanonicalFile();
+        int count = 0;
+        File[] fds = new File("/proc/self/fd").listFiles();
+        if (fds != null) {
+            for (File fd : fds) {
+                try {
+                    if (device.equals(fd.getCanonicalFile())) {
+                        count++;
+                    }
+                } catch (IOException e) {
+                    // Closed while listed.
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Asserts that the bytes moved at least as fast as the configured 921600 baud 8N1 deliver them.
+     */
+    private void assertKeepsUpWithTheLine(int bytes, long elapsedNanos) {
+        long bytesPerSecond = bytes * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        assertTrue(bytesPerSecond + " B/s, " + metrics(), bytesPerSecond >= 921600 / 10);
+    }
+
+    private int modemLines() throws IOException {
+        return epoll ? ((EpollSerialPortChannel) channel).modemLines() : ((SerialPortChannel) channel).modemLines();
+    }
+
+    private SerialPortChannelMetrics metrics() {
+        return epoll ? ((EpollSerialPortChannel) channel).metrics() : ((SerialPortChannel) channel).metrics();
+    }
+
+    /**
+     * Fails unless {@code executor} runs a task within 500 ms, i.e. no channel blocks it.
+     */
+    private static void assertRunsPromptly(EventExecutor executor) {
+        assertTrue("event loop blocked", executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).awaitUninterruptibly(500));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    @ChannelHandler.Sharable
+    private static final class Discard extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private static final class Sink extends ChannelInboundHandlerAdapter {
+        volatile boolean echo;
+        final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+        private final ByteBuf received = Unpooled.buffer();
+        private int expected;
+        volatile boolean direct = true;
+
+        synchronized void expect(int bytes) {
+            expected = bytes;
+        }
+
+        synchronized boolean await(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining;
+            while (received.readableBytes() < expected
+                    && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            return received.readableBytes() >= expected;
+        }
+
+        synchronized byte[] received() {
+            byte[] data = new byte[received.readableBytes()];
+            received.getBytes(received.readerIndex(), data);
+            return data;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (echo) {
+                ctx.writeAndFlush(msg);
+                return;
+            }
+            ByteBuf buf = (ByteBuf) msg;
+            direct &= buf.isDirect();
+            synchronized (this) {
+                received.writeBytes(buf);
+                notifyAll();
+            }
+            buf.release();
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            events.add(evt);
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            events.add(ctx.channel().isWritable());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package tech.yaog.netty.serialportandroid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the master side of a {@link PseudoTerminal}, i.e. plays the device a channel under test is
+ * connected to.
+ */
+final class PtyDriver {
+
+    private final PseudoTerminal pty;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(4096);
+    private final ByteBuffer in = ByteBuffer.allocateDirect(4096);
+
+    PtyDriver(PseudoTerminal pty) {
+        this.pty = pty;
+    }
+
+    /**
+     * Sends {@code data} in bursts of {@code burstSize} bytes, paced to {@code bytesPerSecond} on
+     * average ({@code 0} sends as fast as the terminal takes it). Blocks while the terminal is full,
+     * at most {@code timeoutMillis} in total.
+     *
+     * @return the number of bytes sent, less than {@code data.length} only if the time elapsed
+     */
+    int send(byte[] data, int bytesPerSecond, int burstSize, long timeoutMillis) throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int sent = 0;
+        while (sent < data.length) {
+            if (bytesPerSecond > 0) {
+                long due = start + sent * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            int burstEnd = Math.min(data.length, sent + burstSize);
+            while (sent < burstEnd) {
+                out.clear();
+                out.put(data, sent, Math.min(out.capacity(), burstEnd - sent)).flip();
+                int written = pty.write(out);
+                sent += written;
+                if (written == 0 && !pty.awaitWritable(Math.max(0, deadline - System.nanoTime()))) {
+                    return sent;
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Sends as much of {@code data} as the terminal takes right now.
+     *
+     * @return the number of bytes sent
+     */
+    int trySend(byte[] data) throws IOException {
+        int sent = 0;
+        while (sent < data.length) {
+            out.clear();
+            out.put(data, sent, Math.min(out.capacity(), data.length - sent)).flip();
+            int written = pty.write(out);
+            if (written == 0) {
+                break;
+            }
+            sent += written;
+        }
+        return sent;
+    }
+
+    /**
+     * Receives {@code length} bytes, waiting at most {@code timeoutMillis} in total.
+     *
+     * @return the bytes received, fewer than {@code length} only if the time elapsed
+     */
+    byte[] receive(int length, long timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        byte[] data = new byte[length];
+        int received = 0;
+        while (received < length) {
+            in.clear();
+            in.limit(Math.min(in.capacity(), length - received));
+            int read = pty.read(in);
+            if (read == 0) {
+                if (!pty.awaitReadable(Math.max(0, deadline - System.nanoTime()))) {
+                    byte[] partial = new byte[received];
+                    System.arraycopy(data, 0, partial, 0, received);
+                    return partial;
+                }
+                continue;
+            }
+            in.flip();
+            in.get(data, received, read);
+            received += read;
+        }
+        return data;
+    }
+}
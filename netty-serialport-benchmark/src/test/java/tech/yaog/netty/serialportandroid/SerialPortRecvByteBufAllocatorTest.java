@@ -0,0 +1,76 @@
+package tech.yaog.netty.serialportandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the buffer sizes {@link SerialPortRecvByteBufAllocator} decides on, without a line.
+ */
+public class SerialPortRecvByteBufAllocatorTest {
+
+    @Test
+    public void sizesToWhatTheTtyHolds() {
+        SerialPortChannelConfig config = config(921600, SerialPortChannelConfig.Paritybit.NONE);
+        SerialPortRecvByteBufAllocator.SerialHandle handle = handle(new SerialPortRecvByteBufAllocator(), config);
+        assertEquals(16, handle.guess());
+        // 92 bytes arrive per millisecond at 921600 baud 8N1.
+        handle.available(1000);
+        assertEquals(1092, handle.guess());
+        handle.lastBytesRead(600);
+        assertEquals(492, handle.guess());
+        handle.available(100000);
+        assertEquals(65536, handle.guess());
+    }
+
+    @Test
+    public void followsTheAverageUpToTheLine() {
+        SerialPortChannelConfig config = config(921600, SerialPortChannelConfig.Paritybit.NONE);
+        SerialPortRecvByteBufAllocator.SerialHandle handle = handle(new SerialPortRecvByteBufAllocator(), config);
+        handle.lastBytesRead(600);
+        handle.readComplete();
+        // A quarter of the last read and three of the average before.
+        assertEquals((16 * 3 + 600) / 4, handle.guess());
+        for (int i = 0; i < 50; i++) {
+            handle.reset(config);
+            handle.lastBytesRead(65536);
+            handle.readComplete();
+        }
+        // No more than 100 ms of the line.
+        assertEquals(9216, handle.guess());
+    }
+
+    @Test
+    public void staysWithinTheBounds() {
+        SerialPortChannelConfig config = config(9600, SerialPortChannelConfig.Paritybit.EVEN);
+        SerialPortRecvByteBufAllocator.SerialHandle handle = handle(new SerialPortRecvByteBufAllocator(64, 1024), config);
+        assertEquals(64, handle.guess());
+        handle.available(10);
+        assertEquals(64, handle.guess());
+        handle.available(5000);
+        assertEquals(1024, handle.guess());
+        handle.readComplete();
+        for (int i = 0; i < 50; i++) {
+            handle.reset(config);
+            handle.lastBytesRead(1000);
+            handle.readComplete();
+        }
+        // 872 bytes per second at 9600 baud 8E1.
+        assertEquals(87, handle.guess());
+    }
+
+    private static SerialPortChannelConfig config(int baudrate, SerialPortChannelConfig.Paritybit paritybit) {
+        SerialPortChannelConfig config = new SerialPortChannel().config();
+        config.setBaudrate(baudrate);
+        config.setParitybit(paritybit);
+        return config;
+    }
+
+    private static SerialPortRecvByteBufAllocator.SerialHandle handle(SerialPortRecvByteBufAllocator allocator,
+                                                                     SerialPortChannelConfig config) {
+        SerialPortRecvByteBufAllocator.SerialHandle handle =
+                (SerialPortRecvByteBufAllocator.SerialHandle) allocator.newHandle();
+        handle.reset(config);
+        return handle;
+    }
+}
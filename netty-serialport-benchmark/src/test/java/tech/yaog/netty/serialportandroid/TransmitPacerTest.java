@@ -0,0 +1,63 @@
+package tech.yaog.netty.serialportandroid;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the durations {@link TransmitPacer} derives from the line settings.
+ */
+public class TransmitPacerTest {
+
+    @Test
+    public void derivesDurationsFromTheLine() {
+        TransmitPacer pacer = new TransmitPacer(config(9600, 1000));
+        // 10 bits per character at 9600 baud 8N1.
+        assertEquals(1041666, pacer.characterNanos());
+        assertEquals(5 * 1041666, pacer.drainNanos(10, 5));
+        assertEquals(0, pacer.drainNanos(5, 10));
+        // No character fits into less than a character time.
+        assertEquals(1, pacer.queueLimit());
+        assertEquals(Long.MAX_VALUE, new TransmitPacer(config(9600, 0)).queueLimit());
+        assertEquals(92, new TransmitPacer(config(921600, 1000)).queueLimit());
+    }
+
+    @Test
+    public void waitsForTheFifoIfTheDriverDoesNotTell() throws Exception {
+        assumeTrue("libnetty-serialport is not available", PseudoTerminal.isAvailable());
+        PseudoTerminal pty = PseudoTerminal.open();
+        FileInputStream slave = new FileInputStream(pty.deviceAddress().value());
+        try {
+            int fd = Native.getFd(slave.getFD());
+            // Pseudo terminals have no line status register.
+            assertEquals(-1, Native.transmitterEmpty(fd));
+            TransmitPacer pacer = new TransmitPacer(config(9600, 0));
+            long fifoNanos = 16 * pacer.characterNanos();
+            long first = pacer.transmitterNanos(fd);
+            assertTrue(first + "ns", first > fifoNanos / 2 && first <= fifoNanos);
+            // Counted from the first call on.
+            assertTrue(pacer.transmitterNanos(fd) <= first);
+            TimeUnit.NANOSECONDS.sleep(first);
+            assertEquals(0, pacer.transmitterNanos(fd));
+            assertEquals(0, pacer.transmitterNanos(fd));
+            // Starts over for what is written next.
+            pacer.written();
+            assertTrue(pacer.transmitterNanos(fd) > fifoNanos / 2);
+        } finally {
+            slave.close();
+            pty.close();
+        }
+    }
+
+    private static SerialPortChannelConfig config(int baudrate, int transmitQueueMicros) {
+        SerialPortChannelConfig config = new SerialPortChannel().config();
+        config.setBaudrate(baudrate);
+        config.setTransmitQueueMicros(transmitQueueMicros);
+        return config;
+    }
+}
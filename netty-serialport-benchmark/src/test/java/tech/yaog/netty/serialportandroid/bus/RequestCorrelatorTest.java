@@ -0,0 +1,270 @@
+package tech.yaog.netty.serialportandroid.bus;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Future;
+import org.junit.Test;
+import tech.yaog.netty.serialportandroid.codec.modbus.ModbusRtuFrame;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Correlates requests and responses on an {@link EmbeddedChannel}, with timeouts fired by hand.
+ */
+public class RequestCorrelatorTest {
+
+    @Test
+    public void pipelinesUpToMaxOutstanding() {
+        ManualTimer timer = new ManualTimer();
+        RequestCorrelator correlator = new RequestCorrelator(RequestCorrelator.MODBUS_RTU, 2, 1, TimeUnit.SECONDS, timer);
+        EmbeddedChannel channel = new EmbeddedChannel(correlator);
+        Future<Object> first = correlator.request(frame(1, 1));
+        Future<Object> second = correlator.request(frame(2, 1));
+        Future<Object> third = correlator.request(frame(1, 2));
+        assertWritten(channel, 1, 1);
+        assertWritten(channel, 2, 1);
+        assertNull(channel.readOutbound());
+        // Out of order, each response goes to its request and makes room for the next one.
+        respond(channel, 2, second);
+        assertFalse(first.isDone());
+        assertWritten(channel, 1, 2);
+        respond(channel, 1, first);
+        assertFalse(third.isDone());
+        respond(channel, 1, third);
+        // Nothing outstanding, a response continues down the pipeline.
+        channel.writeInbound(frame(1, 0x10));
+        ModbusRtuFrame unsolicited = channel.readInbound();
+        unsolicited.release();
+        assertEquals(2, correlator.latency(1).count());
+        assertEquals(1, correlator.latency(2).count());
+        assertNull(correlator.latency(3));
+        assertTrue(timer.pending().isEmpty());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void timesOutFromTheCompletedWrite() {
+        ManualTimer timer = new ManualTimer();
+        RequestCorrelator correlator = new RequestCorrelator(RequestCorrelator.MODBUS_RTU, 1, 100, TimeUnit.MILLISECONDS, timer);
+        HoldingWrites held = new HoldingWrites();
+        EmbeddedChannel channel = new EmbeddedChannel(held, correlator);
+        Future<Object> silent = correlator.request(frame(1, 1));
+        Future<Object> next = correlator.request(frame(2, 1), 5, TimeUnit.MILLISECONDS);
+        // Held back by the line, the timeout has not started yet.
+        assertTrue(timer.pending().isEmpty());
+        held.release();
+        assertWritten(channel, 1, 1);
+        assertEquals(1, timer.pending().size());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), timer.delayNanos.get(0).longValue());
+        timer.expire();
+        channel.runPendingTasks();
+        assertTrue(silent.cause() instanceof TimeoutException);
+        // The next request goes out with its own timeout.
+        held.release();
+        assertWritten(channel, 2, 1);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), timer.delayNanos.get(1).longValue());
+        respond(channel, 2, next);
+        assertTrue(timer.pending().isEmpty());
+        assertNull(correlator.latency(1));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void failsAllRequestsOnClose() {
+        ManualTimer timer = new ManualTimer();
+        RequestCorrelator correlator = new RequestCorrelator(RequestCorrelator.MODBUS_RTU, 1, 1, TimeUnit.SECONDS, timer);
+        EmbeddedChannel channel = new EmbeddedChannel(correlator);
+        Future<Object> outstanding = correlator.request(frame(1, 1));
+        Future<Object> queued = correlator.request(frame(2, 1));
+        assertWritten(channel, 1, 1);
+        channel.close();
+        assertTrue(outstanding.cause() instanceof ClosedChannelException);
+        assertTrue(queued.cause() instanceof ClosedChannelException);
+        assertTrue(timer.pending().isEmpty());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void bucketsWithinAnEighth() {
+        for (long micros = 0; micros < 1 << 20; micros++) {
+            int bucket = LatencyHistogram.bucket(micros);
+            long upperBound = LatencyHistogram.upperBound(bucket);
+            assertTrue(micros + " in " + upperBound, upperBound >= micros && upperBound <= micros + micros / 8);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < micros);
+        }
+        assertEquals(7, LatencyHistogram.upperBound(LatencyHistogram.bucket(7)));
+        assertTrue(LatencyHistogram.bucket(Long.MAX_VALUE) < 8 * 62);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileMicros(99));
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(50500, histogram.meanMicros());
+        assertEquals(100000, histogram.maxMicros());
+        long median = histogram.percentileMicros(50);
+        assertTrue(String.valueOf(median), median >= 50000 && median <= 50000 + 50000 / 8);
+        long p90 = histogram.percentileMicros(90);
+        assertTrue(String.valueOf(p90), p90 >= 90000 && p90 <= 90000 + 90000 / 8);
+        // Never more than the maximum.
+        assertEquals(100000, histogram.percentileMicros(100));
+        // The upper bound of the bucket of the fastest round trip.
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(1000)), histogram.percentileMicros(0));
+    }
+
+    private static ModbusRtuFrame frame(int address, int functionCode) {
+        return ModbusRtuFrame.newInstance(address, functionCode, Unpooled.EMPTY_BUFFER);
+    }
+
+    private static void assertWritten(EmbeddedChannel channel, int address, int functionCode) {
+        ModbusRtuFrame frame = channel.readOutbound();
+        assertEquals(address, frame.address());
+        assertEquals(functionCode, frame.functionCode());
+        frame.release();
+    }
+
+    private static void respond(EmbeddedChannel channel, int address, Future<Object> request) {
+        assertFalse(request.isDone());
+        channel.writeInbound(frame(address, 0x10));
+        assertNull(channel.readInbound());
+        ModbusRtuFrame response = (ModbusRtuFrame) request.getNow();
+        assertEquals(address, response.address());
+        response.release();
+    }
+
+    /**
+     * Holds back writes, like a line under flow control, until released.
+     */
+    private static final class HoldingWrites extends ChannelOutboundHandlerAdapter {
+        private final List<Object> msgs = new ArrayList<Object>();
+        private final List<ChannelPromise> promises = new ArrayList<ChannelPromise>();
+        private ChannelHandlerContext ctx;
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            msgs.add(msg);
+            promises.add(promise);
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+        }
+
+        void release() {
+            for (int i = 0; i < msgs.size(); i++) {
+                ctx.write(msgs.get(i), promises.get(i));
+            }
+            msgs.clear();
+            promises.clear();
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Fires its timeouts when told to.
+     */
+    private static final class ManualTimer implements Timer {
+        final List<Long> delayNanos = new ArrayList<Long>();
+        private final Set<ManualTimeout> timeouts = new HashSet<ManualTimeout>();
+
+        @Override
+        public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+            delayNanos.add(unit.toNanos(delay));
+            ManualTimeout timeout = new ManualTimeout(this, task);
+            timeouts.add(timeout);
+            return timeout;
+        }
+
+        @Override
+        public Set<Timeout> stop() {
+            Set<Timeout> pending = pending();
+            timeouts.clear();
+            return pending;
+        }
+
+        Set<Timeout> pending() {
+            return new HashSet<Timeout>(timeouts);
+        }
+
+        void expire() {
+            for (ManualTimeout timeout : new ArrayList<ManualTimeout>(timeouts)) {
+                timeouts.remove(timeout);
+                timeout.expired = true;
+                try {
+                    timeout.task.run(timeout);
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+    }
+
+    private static final class ManualTimeout implements Timeout {
+        private final ManualTimer timer;
+        final TimerTask task;
+        boolean expired;
+        private boolean cancelled;
+
+        ManualTimeout(ManualTimer timer, TimerTask task) {
+            this.timer = timer;
+            this.task = task;
+        }
+
+        @Override
+        public Timer timer() {
+            return timer;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (expired || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            timer.timeouts.remove(this);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package tech.yaog.netty.serialportandroid.bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.Future;
+import org.junit.Test;
+import tech.yaog.netty.serialportandroid.codec.modbus.ModbusRtuFrame;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shares an {@link EmbeddedChannel} between the sessions of a {@link SerialBusMultiplexer}.
+ */
+public class SerialBusMultiplexerTest {
+
+    @Test
+    public void takesTurnsRoundRobin() {
+        SerialBusMultiplexer bus = new SerialBusMultiplexer(SerialBusMultiplexer.MODBUS_RTU, 1, TimeUnit.MINUTES);
+        EmbeddedChannel channel = new EmbeddedChannel(bus);
+        SerialBusSession a = bus.session(1);
+        SerialBusSession b = bus.session(2);
+        assertSame(a, bus.session(1));
+        Future<Object> a1 = a.request(frame(1, 1));
+        Future<Object> a2 = a.request(frame(1, 2));
+        Future<Object> a3 = a.request(frame(1, 3));
+        Future<Object> b1 = b.request(frame(2, 1));
+        Future<Object> b2 = b.request(frame(2, 2));
+        // One transaction on the line at a time, the sessions alternate while both have requests.
+        assertWritten(channel, 1, 1);
+        assertNull(channel.readOutbound());
+        respond(channel, 1, a1);
+        assertWritten(channel, 2, 1);
+        respond(channel, 2, b1);
+        assertWritten(channel, 1, 2);
+        respond(channel, 1, a2);
+        assertWritten(channel, 2, 2);
+        respond(channel, 2, b2);
+        assertWritten(channel, 1, 3);
+        respond(channel, 1, a3);
+        assertNull(channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void passesOnWhatIsNoResponse() {
+        SerialBusMultiplexer bus = new SerialBusMultiplexer(SerialBusMultiplexer.MODBUS_RTU, 1, TimeUnit.MINUTES);
+        EmbeddedChannel channel = new EmbeddedChannel(bus);
+        Future<Object> request = bus.session(1).request(frame(1, 1));
+        assertWritten(channel, 1, 1);
+        // From another slave, the line stays reserved.
+        channel.writeInbound(frame(2, 1));
+        ModbusRtuFrame unsolicited = channel.readInbound();
+        assertEquals(2, unsolicited.address());
+        unsolicited.release();
+        assertFalse(request.isDone());
+        respond(channel, 1, request);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void completesSendsOnceWritten() {
+        SerialBusMultiplexer bus = new SerialBusMultiplexer(SerialBusMultiplexer.MODBUS_RTU, 1, TimeUnit.MINUTES);
+        EmbeddedChannel channel = new EmbeddedChannel(bus);
+        Future<Object> broadcast = bus.session(0).send(frame(0, 1));
+        Future<Object> request = bus.session(1).request(frame(1, 1));
+        assertTrue(broadcast.isSuccess());
+        assertNull(broadcast.getNow());
+        assertWritten(channel, 0, 1);
+        assertWritten(channel, 1, 1);
+        respond(channel, 1, request);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void timesOutPerTransaction() throws Exception {
+        SerialBusMultiplexer bus = new SerialBusMultiplexer(SerialBusMultiplexer.MODBUS_RTU, 10, TimeUnit.MILLISECONDS);
+        EmbeddedChannel channel = new EmbeddedChannel(bus);
+        Future<Object> silent = bus.session(1).request(frame(1, 1));
+        Future<Object> next = bus.session(2).request(frame(2, 1));
+        assertWritten(channel, 1, 1);
+        assertNull(channel.readOutbound());
+        Thread.sleep(50);
+        channel.runScheduledPendingTasks();
+        assertTrue(silent.cause() instanceof TimeoutException);
+        // The line is released for the next transaction, which gets a timeout of its own.
+        assertWritten(channel, 2, 1);
+        assertFalse(next.isDone());
+        respond(channel, 2, next);
+        // A late response continues down the pipeline.
+        channel.writeInbound(frame(1, 1));
+        ModbusRtuFrame late = channel.readInbound();
+        assertEquals(1, late.address());
+        late.release();
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void takesBackCancelledRequests() {
+        SerialBusMultiplexer bus = new SerialBusMultiplexer(SerialBusMultiplexer.MODBUS_RTU, 1, TimeUnit.MINUTES);
+        EmbeddedChannel channel = new EmbeddedChannel(bus);
+        Future<Object> first = bus.session(1).request(frame(1, 1));
+        ByteBuf payload = Unpooled.buffer(1).writeByte(2);
+        Future<Object> cancelled = bus.session(2).request(ModbusRtuFrame.newInstance(2, 2, payload));
+        Future<Object> last = bus.session(3).request(frame(3, 1));
+        assertWritten(channel, 1, 1);
+        assertTrue(cancelled.cancel(false));
+        respond(channel, 1, first);
+        // Skipped and released, the next session takes its turn.
+        assertEquals(0, payload.refCnt());
+        assertWritten(channel, 3, 1);
+        // Once on the line, a request cannot be taken back.
+        assertFalse(last.cancel(false));
+        respond(channel, 3, last);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void failsAllTransactionsOnClose() {
+        SerialBusMultiplexer bus = new SerialBusMultiplexer(SerialBusMultiplexer.MODBUS_RTU, 1, TimeUnit.MINUTES);
+        EmbeddedChannel channel = new EmbeddedChannel(bus);
+        Future<Object> current = bus.session(1).request(frame(1, 1));
+        ByteBuf payload = Unpooled.buffer(1).writeByte(2);
+        Future<Object> queued = bus.session(2).request(ModbusRtuFrame.newInstance(2, 2, payload));
+        assertWritten(channel, 1, 1);
+        channel.close();
+        assertTrue(current.cause() instanceof ClosedChannelException);
+        assertTrue(queued.cause() instanceof ClosedChannelException);
+        assertEquals(0, payload.refCnt());
+        // Nothing is queued once closed.
+        assertTrue(bus.session(1).request(frame(1, 2)).cause() instanceof ClosedChannelException);
+        assertFalse(channel.finish());
+    }
+
+    private static ModbusRtuFrame frame(int address, int functionCode) {
+        return ModbusRtuFrame.newInstance(address, functionCode, Unpooled.EMPTY_BUFFER);
+    }
+
+    private static void assertWritten(EmbeddedChannel channel, int address, int functionCode) {
+        ModbusRtuFrame frame = channel.readOutbound();
+        assertEquals(address, frame.address());
+        assertEquals(functionCode, frame.functionCode());
+        frame.release();
+    }
+
+    private static void respond(EmbeddedChannel channel, int address, Future<Object> request) {
+        assertFalse(request.isDone());
+        channel.writeInbound(frame(address, 0x10));
+        assertNull(channel.readInbound());
+        ModbusRtuFrame response = (ModbusRtuFrame) request.getNow();
+        assertEquals(address, response.address());
+        response.release();
+    }
+}
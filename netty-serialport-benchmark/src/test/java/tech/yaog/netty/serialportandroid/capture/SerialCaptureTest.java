@@ -0,0 +1,132 @@
+package tech.yaog.netty.serialportandroid.capture;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFactory;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records traffic into a {@link SerialCapture} and plays it back through {@link SerialReplayChannel}.
+ */
+public class SerialCaptureTest {
+
+    private File file;
+    private EventLoopGroup group;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("serial", ".scap");
+        group = new DefaultEventLoopGroup(1);
+    }
+
+    @After
+    public void tearDown() {
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        file.delete();
+    }
+
+    @Test
+    public void keepsTheNewestChunksWhenFull() throws Exception {
+        SerialCapture capture = SerialCapture.open(file, 1024);
+        for (int i = 0; i < 100; i++) {
+            capture.record(i % 2 == 0 ? SerialCapture.Direction.INBOUND : SerialCapture.Direction.OUTBOUND,
+                    Unpooled.wrappedBuffer(chunk(i)));
+        }
+        capture.close();
+
+        SerialCaptureReader reader = SerialCaptureReader.open(file);
+        assertTrue(reader.count() > 0 && reader.count() < 100);
+        long previousNanos = 0;
+        for (int i = (int) (100 - reader.count()); i < 100; i++) {
+            assertTrue(reader.next());
+            assertEquals(i % 2 == 0 ? SerialCapture.Direction.INBOUND : SerialCapture.Direction.OUTBOUND,
+                    reader.direction());
+            assertTrue(reader.nanos() >= previousNanos);
+            previousNanos = reader.nanos();
+            ByteBuf data = Unpooled.buffer();
+            reader.readData(data);
+            assertArrayEquals(chunk(i), toArray(data));
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void replaysInboundChunksWithTheirTiming() throws Exception {
+        SerialCapture capture = SerialCapture.open(file, 64 * 1024);
+        for (int i = 0; i < 5; i++) {
+            capture.record(SerialCapture.Direction.INBOUND, Unpooled.wrappedBuffer(chunk(i)));
+            capture.record(SerialCapture.Direction.OUTBOUND, Unpooled.wrappedBuffer(chunk(100 + i)));
+            Thread.sleep(20);
+        }
+        capture.close();
+
+        // Four gaps of 20 ms at double speed.
+        long start = System.nanoTime();
+        List<byte[]> received = replay(2);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(5, received.size());
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(chunk(i), received.get(i));
+        }
+        assertTrue("replayed in " + elapsedMillis + " ms", elapsedMillis >= 40);
+
+        assertEquals(5, replay(Double.POSITIVE_INFINITY).size());
+    }
+
+    private List<byte[]> replay(final double speed) {
+        final List<byte[]> received = new ArrayList<byte[]>();
+        Channel channel = new Bootstrap()
+                .group(group)
+                .channelFactory(new ChannelFactory<SerialReplayChannel>() {
+                    @Override
+                    public SerialReplayChannel newChannel() {
+                        return new SerialReplayChannel(speed);
+                    }
+                })
+                .handler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        received.add(toArray((ByteBuf) msg));
+                        ((ByteBuf) msg).release();
+                    }
+                })
+                .connect(new SerialCaptureAddress(file))
+                .syncUninterruptibly()
+                .channel();
+        assertTrue(channel.closeFuture().awaitUninterruptibly(10000));
+        return received;
+    }
+
+    private static byte[] chunk(int i) {
+        byte[] chunk = new byte[10 + i % 7];
+        for (int j = 0; j < chunk.length; j++) {
+            chunk[j] = (byte) (i + j);
+        }
+        return chunk;
+    }
+
+    private static byte[] toArray(ByteBuf buf) {
+        byte[] data = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), data);
+        return data;
+    }
+}
@@ -0,0 +1,175 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips frames through the COBS and SLIP encoders and decoders.
+ */
+public class ByteStuffingCodecTest {
+
+    @Test
+    public void encodesCobsLikeTheReference() {
+        assertEncoded(new CobsFrameEncoder(), bytes(0x00), bytes(0x01, 0x01, 0x00));
+        assertEncoded(new CobsFrameEncoder(), bytes(0x11, 0x22, 0x00, 0x33), bytes(0x03, 0x11, 0x22, 0x02, 0x33, 0x00));
+        assertEncoded(new CobsFrameEncoder(), bytes(0x11, 0x00, 0x00, 0x00), bytes(0x02, 0x11, 0x01, 0x01, 0x01, 0x00));
+        byte[] block = new byte[254];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) (i + 1);
+        }
+        ByteBuf encoded = encode(new CobsFrameEncoder(), block);
+        assertEquals(256, encoded.readableBytes());
+        assertEquals(0xFF, encoded.getUnsignedByte(0));
+        assertEquals(0, encoded.getByte(255));
+        encoded.release();
+    }
+
+    @Test
+    public void encodesSlipLikeTheReference() {
+        assertEncoded(new SlipFrameEncoder(), bytes(0x01, 0xC0, 0x02, 0xDB, 0x03),
+                bytes(0xC0, 0x01, 0xDB, 0xDC, 0x02, 0xDB, 0xDD, 0x03, 0xC0));
+    }
+
+    @Test
+    public void roundTripsCobsAcrossPartialReads() {
+        roundTrip(new CobsFrameEncoder(), new CobsFrameDecoder(4096));
+    }
+
+    @Test
+    public void roundTripsSlipAcrossPartialReads() {
+        roundTrip(new SlipFrameEncoder(), new SlipFrameDecoder(4096));
+    }
+
+    @Test
+    public void discardsTooLongFramesAndRecovers() {
+        EmbeddedChannel channel = new EmbeddedChannel(new SlipFrameDecoder(4));
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(bytes(0x01, 0x02, 0x03, 0x04, 0x05)));
+            fail();
+        } catch (TooLongFrameException expected) {
+        }
+        channel.writeInbound(Unpooled.wrappedBuffer(bytes(0x06, 0xC0, 0x07, 0xC0)));
+        assertFrame(channel, bytes(0x07));
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void rejectsTruncatedBlocks() {
+        EmbeddedChannel channel = new EmbeddedChannel(new CobsFrameDecoder());
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(bytes(0x05, 0x11, 0x22, 0x00)));
+            fail();
+        } catch (DecoderException e) {
+            assertTrue(e instanceof CorruptedFrameException);
+        }
+        channel.writeInbound(Unpooled.wrappedBuffer(bytes(0x02, 0x11, 0x00)));
+        assertFrame(channel, bytes(0x11));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void decodesReadOnlyBuffers() {
+        EmbeddedChannel channel = new EmbeddedChannel(new SlipFrameDecoder());
+        ByteBuf in = Unpooled.wrappedBuffer(bytes(0xC0, 0x01, 0xDB, 0xDC, 0xC0)).asReadOnly();
+        channel.writeInbound(in);
+        assertFrame(channel, bytes(0x01, 0xC0));
+        assertEquals(0, in.refCnt());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void leavesSharedBuffersUnchanged() {
+        byte[] wire = bytes(0xC0, 0x01, 0xDB, 0xDC, 0x02, 0xDB, 0xDD, 0xC0);
+        EmbeddedChannel channel = new EmbeddedChannel(new SlipFrameDecoder());
+        ByteBuf shared = Unpooled.wrappedBuffer(wire.clone());
+        channel.writeInbound(shared.retain());
+        assertFrame(channel, bytes(0x01, 0xC0, 0x02, 0xDB));
+        assertEquals(1, shared.refCnt());
+        assertEquals(Unpooled.wrappedBuffer(wire), shared);
+        ByteBuf sliced = shared.retainedSlice();
+        channel.writeInbound(sliced);
+        assertFrame(channel, bytes(0x01, 0xC0, 0x02, 0xDB));
+        assertEquals(Unpooled.wrappedBuffer(wire), shared);
+        shared.release();
+        assertEquals(0, shared.refCnt());
+        assertFalse(channel.finish());
+    }
+
+    private static void roundTrip(ChannelHandler encoder, ChannelHandler decoder) {
+        Random random = new Random(24);
+        EmbeddedChannel out = new EmbeddedChannel(encoder);
+        EmbeddedChannel in = new EmbeddedChannel(decoder);
+        byte[][] frames = new byte[200][];
+        ByteBuf wire = Unpooled.buffer();
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new byte[random.nextInt(1000) + 1];
+            random.nextBytes(frames[i]);
+            // Plenty of the bytes to stuff.
+            for (int j = 0; j < frames[i].length; j += random.nextInt(8) + 1) {
+                frames[i][j] = (byte) (random.nextBoolean() ? 0x00 : random.nextBoolean() ? 0xC0 : 0xDB);
+            }
+            out.writeOutbound(Unpooled.wrappedBuffer(frames[i]));
+            ByteBuf encoded = out.readOutbound();
+            wire.writeBytes(encoded);
+            encoded.release();
+        }
+        while (wire.isReadable()) {
+            in.writeInbound(wire.readRetainedSlice(Math.min(wire.readableBytes(), random.nextInt(300) + 1)));
+        }
+        wire.release();
+        for (byte[] frame : frames) {
+            assertFrame(in, frame);
+        }
+        assertNull(in.readInbound());
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    private static ByteBuf encode(ChannelHandler encoder, byte[] frame) {
+        EmbeddedChannel channel = new EmbeddedChannel(encoder);
+        channel.writeOutbound(Unpooled.wrappedBuffer(frame));
+        ByteBuf encoded = channel.readOutbound();
+        assertFalse(channel.finish());
+        return encoded;
+    }
+
+    private static void assertEncoded(ChannelHandler encoder, byte[] frame, byte[] expected) {
+        ByteBuf encoded = encode(encoder, frame);
+        byte[] actual = new byte[encoded.readableBytes()];
+        encoded.readBytes(actual);
+        encoded.release();
+        assertArrayEquals(expected, actual);
+    }
+
+    private static void assertFrame(EmbeddedChannel channel, byte[] expected) {
+        ByteBuf frame = channel.readInbound();
+        byte[] actual = new byte[frame.readableBytes()];
+        frame.readBytes(actual);
+        frame.release();
+        assertArrayEquals(expected, actual);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,122 @@
+package tech.yaog.netty.serialportandroid.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+import tech.yaog.netty.serialportandroid.SerialPortChannel;
+import tech.yaog.netty.serialportandroid.SerialPortChannelConfig;
+import tech.yaog.netty.serialportandroid.SerialPortIdleEvent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Splits frames with {@link InterCharacterGapFrameDecoder} on idle events and gaps between reads.
+ */
+public class InterCharacterGapFrameDecoderTest {
+
+    @Test
+    public void splitsOnTheIdleEvent() {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new InterCharacterGapFrameDecoder(3.5, 1, TimeUnit.MINUTES, 256));
+        channel.writeInbound(ascii("ab"));
+        channel.writeInbound(ascii("cd"));
+        assertNull(channel.readInbound());
+        channel.pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        assertFrame(channel, "abcd");
+        // Nothing received since, nothing to emit.
+        channel.pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void splitsOnAGapBetweenReads() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new InterCharacterGapFrameDecoder(3.5, 1, TimeUnit.MILLISECONDS, 256));
+        channel.writeInbound(ascii("ab"));
+        Thread.sleep(10);
+        channel.writeInbound(ascii("cd"));
+        assertFrame(channel, "ab");
+        assertNull(channel.readInbound());
+        // The last frame is emitted when the channel goes away.
+        assertTrue(channel.finish());
+        assertFrame(channel, "cd");
+    }
+
+    @Test
+    public void discardsTooLongFramesUpToTheGap() {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new InterCharacterGapFrameDecoder(3.5, 1, TimeUnit.MINUTES, 4));
+        try {
+            channel.writeInbound(ascii("abcde"));
+            fail();
+        } catch (TooLongFrameException expected) {
+        }
+        channel.writeInbound(ascii("fg"));
+        channel.pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        assertNull(channel.readInbound());
+        channel.writeInbound(ascii("hi"));
+        channel.pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        assertFrame(channel, "hi");
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void keepsTheIdleGapOfTheChannelInSync() throws Exception {
+        EventLoopGroup group = new DefaultEventLoopGroup(1);
+        final SerialPortChannel channel = new SerialPortChannel();
+        try {
+            final SerialPortChannelConfig config = channel.config();
+            config.setBaudrate(9600);
+            config.setParitybit(SerialPortChannelConfig.Paritybit.EVEN);
+            config.setIdleGapMicros(100000);
+            group.register(channel).syncUninterruptibly();
+            channel.pipeline().addLast(new InterCharacterGapFrameDecoder());
+            // 3.5 characters of 11 bits at 9600 baud, overwriting what was set.
+            assertEquals(4011, idleGapMicros(channel));
+            config.setBaudrate(19200);
+            channel.eventLoop().submit(new Runnable() {
+                @Override
+                public void run() {
+                    channel.pipeline().fireChannelRead(ascii("ab"));
+                }
+            }).syncUninterruptibly();
+            assertEquals(2006, idleGapMicros(channel));
+        } finally {
+            channel.close().syncUninterruptibly();
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    private static int idleGapMicros(final SerialPortChannel channel) throws Exception {
+        // Read on the event loop, after the handler was added there.
+        return channel.eventLoop().submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return channel.config().getIdleGapMicros();
+            }
+        }).get();
+    }
+
+    private static ByteBuf ascii(String s) {
+        return Unpooled.copiedBuffer(s, CharsetUtil.US_ASCII);
+    }
+
+    private static void assertFrame(EmbeddedChannel channel, String expected) {
+        ByteBuf frame = channel.readInbound();
+        assertEquals(expected, frame.toString(CharsetUtil.US_ASCII));
+        frame.release();
+    }
+}
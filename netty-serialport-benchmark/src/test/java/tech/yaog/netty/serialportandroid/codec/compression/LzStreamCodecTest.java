@@ -0,0 +1,199 @@
+package tech.yaog.netty.serialportandroid.codec.compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compresses streams with {@link LzStreamEncoder} and decompresses them with {@link LzStreamDecoder}.
+ */
+public class LzStreamCodecTest {
+
+    @Test
+    public void compressesTelemetryPerFrameSeveralFold() {
+        EmbeddedChannel out = new EmbeddedChannel(new LzStreamEncoder());
+        EmbeddedChannel in = new EmbeddedChannel(new LzStreamDecoder());
+        Random random = new Random(25);
+        long raw = 0;
+        long compressed = 0;
+        for (int i = 0; i < 1000; i++) {
+            byte[] record = String.format(Locale.ROOT,
+                    "{\"seq\":%d,\"temp\":%.1f,\"volt\":%.2f,\"state\":\"RUNNING\",\"alarms\":[]}\n",
+                    i, 20 + random.nextInt(3) / 10.0, 12 + random.nextInt(2) / 100.0).getBytes(CharsetUtil.US_ASCII);
+            raw += record.length;
+            out.writeOutbound(Unpooled.wrappedBuffer(record));
+            ByteBuf frame = out.readOutbound();
+            compressed += frame.readableBytes();
+            // Each frame decompresses on its own, in one piece.
+            in.writeInbound(frame);
+            assertDecompressed(in, record);
+        }
+        assertTrue(raw + " bytes compressed to " + compressed, compressed * 4 < raw);
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    @Test
+    public void roundTripsPerFrameAcrossPartialReads() {
+        roundTrip(new LzStreamEncoder(), new LzStreamDecoder(), false);
+    }
+
+    @Test
+    public void roundTripsHeldBackLiteralsOnFlush() {
+        roundTrip(new LzStreamEncoder(12, false), new LzStreamDecoder(), true);
+    }
+
+    @Test
+    public void staysWithinASmallWindow() {
+        // The decoder rejects matches further back than its window.
+        roundTrip(new LzStreamEncoder(8, true), new LzStreamDecoder(8), false);
+    }
+
+    @Test
+    public void compressesRunsToOverlappingMatches() {
+        EmbeddedChannel out = new EmbeddedChannel(new LzStreamEncoder());
+        out.writeOutbound(Unpooled.wrappedBuffer(new byte[10000]));
+        ByteBuf compressed = out.readOutbound();
+        assertTrue(compressed.readableBytes() < 50);
+        EmbeddedChannel in = new EmbeddedChannel(new LzStreamDecoder());
+        in.writeInbound(compressed);
+        assertArrayEquals(new byte[10000], decompressed(in));
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    @Test
+    public void passesOnLargeExpansionsInBoundedBuffers() {
+        EmbeddedChannel out = new EmbeddedChannel(new LzStreamEncoder());
+        out.writeOutbound(Unpooled.wrappedBuffer(new byte[1 << 20]));
+        ByteBuf compressed = out.readOutbound();
+        assertTrue(compressed.readableBytes() < 8192);
+        EmbeddedChannel in = new EmbeddedChannel(new LzStreamDecoder());
+        in.writeInbound(compressed);
+        assertTrue(in.inboundMessages().size() >= (1 << 20) / LzStream.MAX_OUTPUT);
+        assertArrayEquals(new byte[1 << 20], decompressed(in));
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    @Test
+    public void writesHeldBackLiteralsWhenRemoved() {
+        LzStreamEncoder encoder = new LzStreamEncoder(12, false);
+        EmbeddedChannel out = new EmbeddedChannel(encoder);
+        byte[] record = "held back".getBytes(CharsetUtil.US_ASCII);
+        out.write(Unpooled.wrappedBuffer(record));
+        out.pipeline().remove(encoder);
+        out.flush();
+        ByteBuf wire = Unpooled.buffer();
+        drain(out, wire);
+        EmbeddedChannel in = new EmbeddedChannel(new LzStreamDecoder());
+        in.writeInbound(wire);
+        assertDecompressed(in, record);
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    @Test
+    public void rejectsMatchesBeyondTheHistory() {
+        EmbeddedChannel in = new EmbeddedChannel(new LzStreamDecoder());
+        try {
+            in.writeInbound(Unpooled.wrappedBuffer(new byte[] {0x01, 'a', 'b', (byte) 0x80, 0x02}));
+            fail();
+        } catch (CorruptedFrameException expected) {
+        }
+        assertDecompressed(in, new byte[] {'a', 'b'});
+        assertFalse(in.finish());
+    }
+
+    private static void roundTrip(LzStreamEncoder encoder, LzStreamDecoder decoder, boolean flushed) {
+        Random random = new Random(25);
+        EmbeddedChannel out = new EmbeddedChannel(encoder);
+        EmbeddedChannel in = new EmbeddedChannel(decoder);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteBuf wire = Unpooled.buffer();
+        for (int i = 0; i < 2000; i++) {
+            byte[] chunk = new byte[random.nextInt(300) + 1];
+            if (random.nextBoolean()) {
+                random.nextBytes(chunk);
+            } else {
+                // Repeat a piece of the recent past.
+                byte[] past = expected.toByteArray();
+                for (int j = 0; j < chunk.length; j++) {
+                    chunk[j] = past.length == 0 ? (byte) j : past[Math.max(0, past.length - 300) + j % Math.min(past.length, 300)];
+                }
+            }
+            expected.write(chunk, 0, chunk.length);
+            out.write(Unpooled.wrappedBuffer(chunk));
+            if (!flushed || random.nextInt(10) == 0) {
+                out.flush();
+            }
+            drain(out, wire);
+        }
+        out.flush();
+        drain(out, wire);
+        ByteBuf decompressed = Unpooled.buffer();
+        while (wire.isReadable()) {
+            in.writeInbound(wire.readRetainedSlice(Math.min(wire.readableBytes(), random.nextInt(200) + 1)));
+            ByteBuf buf;
+            while ((buf = in.readInbound()) != null) {
+                decompressed.writeBytes(buf);
+                buf.release();
+            }
+        }
+        wire.release();
+        byte[] actual = new byte[decompressed.readableBytes()];
+        decompressed.readBytes(actual);
+        decompressed.release();
+        assertArrayEquals(expected.toByteArray(), actual);
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    private static void drain(EmbeddedChannel out, ByteBuf wire) {
+        ByteBuf buf;
+        while ((buf = out.readOutbound()) != null) {
+            wire.writeBytes(buf);
+            buf.release();
+        }
+    }
+
+    /**
+     * Reads all the decompressed buffers, none larger than the decoder passes on at once.
+     */
+    private static byte[] decompressed(EmbeddedChannel in) {
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        ByteBuf buf;
+        while ((buf = in.readInbound()) != null) {
+            assertTrue(buf.readableBytes() < LzStream.MAX_OUTPUT + LzStream.MAX_LITERALS);
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            buf.release();
+            decompressed.write(bytes, 0, bytes.length);
+        }
+        return decompressed.toByteArray();
+    }
+
+    private static void assertDecompressed(EmbeddedChannel in, byte[] expected) {
+        ByteBuf buf = in.readInbound();
+        byte[] actual = new byte[buf.readableBytes()];
+        buf.readBytes(actual);
+        buf.release();
+        assertArrayEquals(expected, actual);
+        assertNull(in.readInbound());
+        assertEquals(0, buf.refCnt());
+    }
+}
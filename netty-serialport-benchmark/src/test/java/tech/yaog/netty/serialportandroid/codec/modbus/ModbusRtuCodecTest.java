@@ -0,0 +1,143 @@
+package tech.yaog.netty.serialportandroid.codec.modbus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+import tech.yaog.netty.serialportandroid.SerialPortIdleEvent;
+import tech.yaog.netty.serialportandroid.codec.InterCharacterGapFrameDecoder;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Encodes and decodes Modbus RTU frames, split from the byte stream by an
+ * {@link InterCharacterGapFrameDecoder}.
+ */
+public class ModbusRtuCodecTest {
+
+    // Read 10 holding registers from address 0 of slave 1.
+    private static final byte[] READ_REQUEST = bytes(0x01, 0x03, 0x00, 0x00, 0x00, 0x0A, 0xC5, 0xCD);
+
+    @Test
+    public void computesTheCrcLikeTheReference() {
+        assertCrc(0x4B37, "123456789".getBytes(CharsetUtil.US_ASCII));
+        assertCrc(0xCDC5, bytes(0x01, 0x03, 0x00, 0x00, 0x00, 0x0A));
+        assertCrc(0xCAD5, bytes(0x01, 0x03, 0x00, 0x01, 0x00, 0x01));
+        assertCrc(0xFFFF, new byte[0]);
+    }
+
+    @Test
+    public void roundTripsFrames() {
+        EmbeddedChannel out = new EmbeddedChannel(new ModbusRtuEncoder());
+        out.writeOutbound(ModbusRtuFrame.newInstance(1, 3, Unpooled.wrappedBuffer(bytes(0x00, 0x00, 0x00, 0x0A))));
+        ByteBuf encoded = out.readOutbound();
+        assertArrayEquals(READ_REQUEST, ByteBufUtil.getBytes(encoded));
+
+        EmbeddedChannel in = new EmbeddedChannel(new ModbusRtuDecoder());
+        in.writeInbound(encoded);
+        ModbusRtuFrame frame = in.readInbound();
+        assertEquals(1, frame.address());
+        assertEquals(3, frame.functionCode());
+        assertFalse(frame.isException());
+        assertArrayEquals(bytes(0x00, 0x00, 0x00, 0x0A), ByteBufUtil.getBytes(frame.payload()));
+        frame.release();
+        assertEquals(0, encoded.refCnt());
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    @Test
+    public void decodesExceptionResponses() {
+        EmbeddedChannel out = new EmbeddedChannel(new ModbusRtuEncoder());
+        out.writeOutbound(ModbusRtuFrame.newInstance(1, 0x83, Unpooled.wrappedBuffer(bytes(0x02))));
+        EmbeddedChannel in = new EmbeddedChannel(new ModbusRtuDecoder());
+        in.writeInbound((ByteBuf) out.readOutbound());
+        ModbusRtuFrame frame = in.readInbound();
+        assertTrue(frame.isException());
+        assertEquals(2, frame.exceptionCode());
+        frame.release();
+        assertFalse(out.finish());
+        assertFalse(in.finish());
+    }
+
+    @Test
+    public void reassemblesFramesSplitAcrossReads() {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new InterCharacterGapFrameDecoder(3.5, 1, TimeUnit.MINUTES, 256), new ModbusRtuDecoder());
+        for (byte b : READ_REQUEST) {
+            channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {b}));
+        }
+        assertNull(channel.readInbound());
+        // The silence after the last byte ends the frame.
+        channel.pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        assertReadRequest(channel);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void splitsFramesOnTheGapBetweenReads() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new InterCharacterGapFrameDecoder(3.5, 1, TimeUnit.MILLISECONDS, 256), new ModbusRtuDecoder());
+        channel.writeInbound(Unpooled.wrappedBuffer(READ_REQUEST, 0, 5));
+        channel.writeInbound(Unpooled.wrappedBuffer(READ_REQUEST, 5, 3));
+        Thread.sleep(10);
+        // The next frame arrives after the gap, which ends the one before.
+        channel.writeInbound(Unpooled.wrappedBuffer(READ_REQUEST));
+        assertReadRequest(channel);
+        assertNull(channel.readInbound());
+        channel.pipeline().fireUserEventTriggered(SerialPortIdleEvent.INSTANCE);
+        assertReadRequest(channel);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void rejectsCorruptedFrames() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ModbusRtuDecoder());
+        byte[] corrupted = READ_REQUEST.clone();
+        corrupted[3] ^= 0x01;
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(corrupted));
+            fail();
+        } catch (CorruptedFrameException expected) {
+        }
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(bytes(0x01, 0x03, 0xFF)));
+            fail();
+        } catch (CorruptedFrameException expected) {
+        }
+        // The next frame is decoded as usual.
+        channel.writeInbound(Unpooled.wrappedBuffer(READ_REQUEST));
+        assertReadRequest(channel);
+        assertFalse(channel.finish());
+    }
+
+    private static void assertReadRequest(EmbeddedChannel channel) {
+        ModbusRtuFrame frame = channel.readInbound();
+        assertEquals(1, frame.address());
+        assertEquals(3, frame.functionCode());
+        assertArrayEquals(bytes(0x00, 0x00, 0x00, 0x0A), ByteBufUtil.getBytes(frame.payload()));
+        frame.release();
+    }
+
+    private static void assertCrc(int expected, byte[] data) {
+        assertEquals(expected, ModbusCrc16.crc16(Unpooled.wrappedBuffer(data), 0, data.length));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
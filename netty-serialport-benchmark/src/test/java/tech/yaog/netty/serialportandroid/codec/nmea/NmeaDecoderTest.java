@@ -0,0 +1,95 @@
+package tech.yaog.netty.serialportandroid.codec.nmea;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+import tech.yaog.netty.serialportandroid.codec.LineFrameDecoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Feeds NMEA and AT traffic through {@link LineFrameDecoder} and {@link NmeaDecoder}.
+ */
+public class NmeaDecoderTest {
+
+    private static final String GGA = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47";
+
+    @Test
+    public void decodesSentencesArrivingByteByByte() {
+        EmbeddedChannel channel = new EmbeddedChannel(new LineFrameDecoder(82), new NmeaDecoder());
+        for (byte b : (GGA + "\r\n").getBytes(CharsetUtil.US_ASCII)) {
+            channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {b}));
+        }
+        NmeaSentence sentence = channel.readInbound();
+        assertTrue(sentence.hasChecksum());
+        assertTrue(sentence.isFormatter("GGA"));
+        assertTrue(sentence.fieldEquals(0, "GPGGA"));
+        assertEquals(15, sentence.fieldCount());
+        assertEquals(123519, sentence.longField(1));
+        assertEquals(4807.038, sentence.doubleField(2), 0);
+        assertEquals('N', sentence.charField(3));
+        assertEquals(1131.0, sentence.doubleField(4), 0);
+        assertTrue(sentence.isEmpty(13));
+        assertTrue(sentence.isEmpty(14));
+        assertEquals("545.4", sentence.field(9).toString(CharsetUtil.US_ASCII));
+        sentence.release();
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void passesOtherLinesOnAndSkipsEmptyOnes() {
+        EmbeddedChannel channel = new EmbeddedChannel(new LineFrameDecoder(), new NmeaDecoder());
+        channel.writeInbound(Unpooled.copiedBuffer("AT+CSQ\r\r\n\r\n+CSQ: 21,0\r\n\r\nOK\r\n" + GGA + "\n",
+                CharsetUtil.US_ASCII));
+        assertLine(channel, "AT+CSQ");
+        assertLine(channel, "+CSQ: 21,0");
+        assertLine(channel, "OK");
+        NmeaSentence sentence = channel.readInbound();
+        assertTrue(sentence.isFormatter("GGA"));
+        sentence.release();
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void rejectsWrongChecksums() {
+        EmbeddedChannel channel = new EmbeddedChannel(new LineFrameDecoder(), new NmeaDecoder());
+        try {
+            channel.writeInbound(Unpooled.copiedBuffer(GGA.replace("*47", "*48") + "\r\n", CharsetUtil.US_ASCII));
+            fail();
+        } catch (CorruptedFrameException expected) {
+        }
+        channel.writeInbound(Unpooled.copiedBuffer(GGA + "\r\n", CharsetUtil.US_ASCII));
+        ((NmeaSentence) channel.readInbound()).release();
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void discardsTooLongLinesUpToTheirEnd() {
+        EmbeddedChannel channel = new EmbeddedChannel(new LineFrameDecoder(8));
+        try {
+            channel.writeInbound(Unpooled.copiedBuffer("0123456789", CharsetUtil.US_ASCII));
+            fail();
+        } catch (DecoderException expected) {
+            assertTrue(expected instanceof TooLongFrameException);
+        }
+        channel.writeInbound(Unpooled.copiedBuffer("abc\nOK\n", CharsetUtil.US_ASCII));
+        assertLine(channel, "OK");
+        assertFalse(channel.finish());
+    }
+
+    private static void assertLine(EmbeddedChannel channel, String expected) {
+        ByteBuf line = channel.readInbound();
+        assertEquals(expected, line.toString(CharsetUtil.US_ASCII));
+        line.release();
+    }
+}